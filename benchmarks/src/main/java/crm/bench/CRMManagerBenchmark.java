@@ -0,0 +1,97 @@
+package crm.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Throughput and latency of the in-memory operations on a loaded manager.
+// The manager runs in the default JOURNAL mode, so addCommunicationToCustomer
+// includes the journal append.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class CRMManagerBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    int customers;
+
+    // Communications and tasks per customer
+    @Param({"1", "10"})
+    int historyDepth;
+
+    private Path dir;
+    private Object crm;
+    private String[] keywords;
+
+    // Each benchmark thread walks its own random sequence of ids and keywords
+    @State(Scope.Thread)
+    public static class Cursor {
+        final SplittableRandom random = new SplittableRandom(42);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Quiet.on();
+        dir = Files.createTempDirectory("crm-bench");
+        Path dataFile = dir.resolve("customers.txt");
+        Dataset.write(dataFile, customers, historyDepth);
+        crm = Crm.newManager(dataFile.toString(), Crm.JOURNAL, Crm.TEXT);
+        // A name shared by many customers, an exact email, a phone fragment,
+        // a keyword too short for the index and one that matches nothing
+        keywords = new String[] {
+                Dataset.LAST_NAMES[0], Dataset.email(customers / 2), "555-100", "jo", "nobody-matches-this"
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        crm = null;
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        Quiet.off();
+    }
+
+    @Benchmark
+    public Object findCustomerById(Cursor cursor) {
+        return Crm.findCustomerById(crm, 1 + cursor.random.nextInt(customers));
+    }
+
+    @Benchmark
+    public List<?> searchCustomers(Cursor cursor) {
+        return Crm.searchCustomers(crm, keywords[cursor.random.nextInt(keywords.length)]);
+    }
+
+    @Benchmark
+    public void addCommunicationToCustomer(Cursor cursor) {
+        int customerId = 1 + cursor.random.nextInt(customers);
+        Crm.addCommunicationToCustomer(crm, customerId,
+                Crm.newCommunication(customerId, "email", "Benchmark follow-up", "bench"));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void generateOverallReport() {
+        Crm.generateOverallReport(crm);
+    }
+}
@@ -0,0 +1,55 @@
+package crm.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+
+// Writes a data file in the same pipe-delimited format as Customer.toFileString:
+// every customer followed by its communications and tasks. The content only
+// depends on the sizes, so runs with the same parameters load the same data.
+final class Dataset {
+    static final String[] FIRST_NAMES = {"John", "Jane", "Ahmet", "Zeynep", "Maria", "Wei", "Olga", "Omar", "Lucia", "Kenji"};
+    static final String[] LAST_NAMES = {"Doe", "Smith", "Yilmaz", "Garcia", "Chen", "Ivanova", "Haddad", "Rossi", "Tanaka", "Brown"};
+    private static final String[] TYPES = {"phone", "email", "meeting"};
+    private static final String[] PRIORITIES = {"high", "medium", "low"};
+    private static final DateTimeFormatter FILE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 9, 0);
+
+    private Dataset() {
+    }
+
+    static void write(Path file, int customers, int historyDepth) throws IOException {
+        SplittableRandom random = new SplittableRandom(customers * 31L + historyDepth);
+        int commId = 1;
+        int taskId = 1;
+        try (BufferedWriter out = Files.newBufferedWriter(file, Charset.defaultCharset())) {
+            for (int id = 1; id <= customers; id++) {
+                String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+                String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+                out.write("CUSTOMER|" + id + "|" + first + " " + last + "|" + email(id) + "|"
+                        + "555-" + (1000000 + id) + "|Customer since " + (2000 + id % 25) + "\n");
+                for (int i = 0; i < historyDepth; i++) {
+                    LocalDateTime time = START.plusMinutes(random.nextInt(525600));
+                    out.write("COMMUNICATION|" + commId++ + "|" + id + "|" + TYPES[random.nextInt(TYPES.length)]
+                            + "|Follow-up about order " + random.nextInt(100000) + "|" + time.format(FILE_FORMAT)
+                            + "|sales,followup\n");
+                }
+                for (int i = 0; i < historyDepth; i++) {
+                    LocalDateTime due = START.plusHours(random.nextInt(24 * 730));
+                    out.write("TASK|" + taskId++ + "|" + id + "|Call back about quote " + random.nextInt(100000)
+                            + "|" + due.format(FILE_FORMAT) + "|" + PRIORITIES[random.nextInt(PRIORITIES.length)]
+                            + "|" + (random.nextInt(4) == 0) + "\n");
+                }
+            }
+        }
+    }
+
+    static String email(int id) {
+        return "user" + id + "@example.com";
+    }
+}
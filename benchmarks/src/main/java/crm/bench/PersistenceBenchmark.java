@@ -0,0 +1,76 @@
+package crm.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Full loads and saves of the data file in both storage formats. Each call
+// takes from milliseconds to seconds, so they are timed one call at a time.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class PersistenceBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    int customers;
+
+    @Param({"1", "10"})
+    int historyDepth;
+
+    @Param({"TEXT", "BINARY"})
+    String format;
+
+    private Path dir;
+    private String dataFile;
+    private Object storageFormat;
+    private Object crm;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Quiet.on();
+        dir = Files.createTempDirectory("crm-bench");
+        dataFile = dir.resolve("customers.txt").toString();
+        Dataset.write(dir.resolve("customers.txt"), customers, historyDepth);
+        storageFormat = "BINARY".equals(format) ? Crm.BINARY : Crm.TEXT;
+        // Loads the text file; in the binary format the first save writes customers.bin
+        crm = Crm.newManager(dataFile, Crm.SNAPSHOT, storageFormat);
+        Crm.saveToFile(crm);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        crm = null;
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        Quiet.off();
+    }
+
+    @Benchmark
+    public Object loadFromFile() {
+        return Crm.newManager(dataFile, Crm.SNAPSHOT, storageFormat);
+    }
+
+    @Benchmark
+    public void saveToFile() {
+        Crm.saveToFile(crm);
+    }
+}
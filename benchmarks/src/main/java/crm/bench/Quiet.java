@@ -0,0 +1,28 @@
+package crm.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// The manager reports loads, saves and reports on System.out; printing that
+// for every invocation would dominate the measurements, so it is discarded
+// while a benchmark trial runs.
+final class Quiet {
+    private static PrintStream original;
+
+    private Quiet() {
+    }
+
+    static synchronized void on() {
+        if (original == null) {
+            original = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+    }
+
+    static synchronized void off() {
+        if (original != null) {
+            System.setOut(original);
+            original = null;
+        }
+    }
+}
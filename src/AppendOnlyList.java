@@ -0,0 +1,63 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+// List that only grows at the end. Writers are serialised by a lock, while
+// readers take snapshot() without locking: a snapshot is the array and size
+// at that moment, and later appends never touch the slots it can see.
+public class AppendOnlyList<E> {
+    private static final Object[] EMPTY = new Object[0];
+
+    private volatile Snapshot<E> current = new Snapshot<>(EMPTY, 0);
+
+    public synchronized void add(E element) {
+        Snapshot<E> snapshot = current;
+        Object[] elements = snapshot.elements;
+        int size = snapshot.size;
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(4, size + (size >> 1)));
+        }
+        elements[size] = element;
+        current = new Snapshot<>(elements, size + 1);
+    }
+
+    public synchronized void ensureCapacity(int capacity) {
+        Snapshot<E> snapshot = current;
+        if (capacity > snapshot.elements.length) {
+            current = new Snapshot<>(Arrays.copyOf(snapshot.elements, capacity), snapshot.size);
+        }
+    }
+
+    public int size() {
+        return current.size;
+    }
+
+    // Read-only view of the elements present now
+    public List<E> snapshot() {
+        return current;
+    }
+
+    private static final class Snapshot<E> extends AbstractList<E> {
+        private final Object[] elements;
+        private final int size;
+
+        Snapshot(Object[] elements, int size) {
+            this.elements = elements;
+            this.size = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return (E) elements[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Delivers observer messages on background dispatcher threads so a slow
+// observer does not hold up the thread that made the change.
+//
+// Every observer has its own bounded ring buffer and is served by one of the
+// dispatcher threads. When an observer's buffer is full the policy decides
+// what happens to the publisher:
+//   BLOCK       wait until the observer catches up
+//   DROP_OLDEST discard the observer's oldest pending message
+//   COALESCE    append the message as a new line of the newest pending one,
+//               so nothing is lost but the observer receives fewer, larger
+//               messages
+// Repeated messages are always folded together and delivered as "message (xN)";
+// in a coalesced message that applies to its last line.
+public class AsyncEventBus implements Subject {
+    public enum BackpressurePolicy { BLOCK, DROP_OLDEST, COALESCE }
+
+    // Point-in-time delivery figures for one observer
+    public static class ObserverStats {
+        public final Observer observer;
+        public final int pending;
+        public final long delivered;
+        public final long dropped;
+        public final long coalesced;
+        public final long oldestPendingMillis;
+
+        ObserverStats(Observer observer, int pending, long delivered, long dropped, long coalesced, long oldestPendingMillis) {
+            this.observer = observer;
+            this.pending = pending;
+            this.delivered = delivered;
+            this.dropped = dropped;
+            this.coalesced = coalesced;
+            this.oldestPendingMillis = oldestPendingMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pending=%d delivered=%d dropped=%d coalesced=%d lag=%dms",
+                    pending, delivered, dropped, coalesced, oldestPendingMillis);
+        }
+    }
+
+    private final int capacity;
+    private final int maxBatchSize;
+    private final BackpressurePolicy policy;
+    private final Dispatcher[] dispatchers;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+    private int nextDispatcher;
+
+    public AsyncEventBus(int capacity, int dispatcherThreads, int maxBatchSize, BackpressurePolicy policy) {
+        if (capacity < 1 || dispatcherThreads < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("capacity, dispatcherThreads and maxBatchSize must be positive");
+        }
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+        this.policy = policy;
+        this.dispatchers = new Dispatcher[dispatcherThreads];
+        for (int i = 0; i < dispatcherThreads; i++) {
+            dispatchers[i] = new Dispatcher("crm-event-dispatcher-" + i);
+            dispatchers[i].thread.start();
+        }
+    }
+
+    @Override
+    public synchronized void addObserver(Observer observer) {
+        Dispatcher dispatcher = dispatchers[nextDispatcher++ % dispatchers.length];
+        Subscription subscription = new Subscription(observer, dispatcher, capacity);
+        dispatcher.lock.lock();
+        try {
+            dispatcher.subscriptions.add(subscription);
+        } finally {
+            dispatcher.lock.unlock();
+        }
+        subscriptions.add(subscription);
+    }
+
+    @Override
+    public synchronized void removeObserver(Observer observer) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.observer == observer) {
+                subscriptions.remove(subscription);
+                Dispatcher dispatcher = subscription.dispatcher;
+                dispatcher.lock.lock();
+                try {
+                    dispatcher.subscriptions.remove(subscription);
+                    dispatcher.notFull.signalAll();
+                } finally {
+                    dispatcher.lock.unlock();
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void notifyObservers(String message) {
+        if (!publish(message)) {
+            throw new IllegalStateException("Event bus is closed");
+        }
+    }
+
+    // Queues the message for every observer; false once the bus is closed
+    boolean publish(String message) {
+        if (closed) {
+            return false;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.publish(message);
+        }
+        return true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public List<ObserverStats> getStats() {
+        List<ObserverStats> stats = new ArrayList<>();
+        for (Subscription subscription : subscriptions) {
+            stats.add(subscription.stats());
+        }
+        return stats;
+    }
+
+    // Waits until every message published so far has been delivered
+    public boolean awaitDelivery(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.awaitEmpty(deadline)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Delivers what is pending, then stops the dispatcher threads
+    public void close() {
+        closed = true;
+        for (Dispatcher dispatcher : dispatchers) {
+            dispatcher.lock.lock();
+            try {
+                dispatcher.stopping = true;
+                dispatcher.work.signalAll();
+            } finally {
+                dispatcher.lock.unlock();
+            }
+        }
+        for (Dispatcher dispatcher : dispatchers) {
+            try {
+                dispatcher.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // One dispatcher thread and the observers it serves. Its lock guards the
+    // ring buffers of those observers.
+    private final class Dispatcher implements Runnable {
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition work = lock.newCondition();
+        final Condition notFull = lock.newCondition();
+        final List<Subscription> subscriptions = new ArrayList<>();
+        final Thread thread;
+        boolean stopping;
+
+        Dispatcher(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<String> batch = new ArrayList<>(maxBatchSize);
+            while (true) {
+                Subscription next = null;
+                lock.lock();
+                try {
+                    while ((next = pendingSubscription()) == null) {
+                        if (stopping) {
+                            return;
+                        }
+                        work.awaitUninterruptibly();
+                    }
+                    next.drainTo(batch, maxBatchSize);
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                next.deliver(batch);
+                batch.clear();
+            }
+        }
+
+        // Picks the observer with the oldest pending message
+        private Subscription pendingSubscription() {
+            Subscription oldest = null;
+            for (Subscription subscription : subscriptions) {
+                if (subscription.size() > 0 && (oldest == null
+                        || subscription.oldestPublishedAt() < oldest.oldestPublishedAt())) {
+                    oldest = subscription;
+                }
+            }
+            return oldest;
+        }
+    }
+
+    private final class Subscription {
+        final Observer observer;
+        final Dispatcher dispatcher;
+        // Ring buffer of pending messages, guarded by the dispatcher's lock.
+        // A slot holds its last line and how often it repeated; the lines
+        // coalesced before it are kept, already rendered, in merged.
+        final String[] messages;
+        final int[] repeats;
+        final StringBuilder[] merged;
+        final long[] publishedAt;
+        long head;
+        long tail;
+        boolean delivering;
+        long delivered;
+        long dropped;
+        long coalesced;
+
+        Subscription(Observer observer, Dispatcher dispatcher, int capacity) {
+            this.observer = observer;
+            this.dispatcher = dispatcher;
+            this.messages = new String[capacity];
+            this.repeats = new int[capacity];
+            this.merged = new StringBuilder[capacity];
+            this.publishedAt = new long[capacity];
+        }
+
+        int size() {
+            return (int) (head - tail);
+        }
+
+        long oldestPublishedAt() {
+            return publishedAt[slot(tail)];
+        }
+
+        private int slot(long sequence) {
+            return (int) (sequence % messages.length);
+        }
+
+        void publish(String message) {
+            dispatcher.lock.lock();
+            try {
+                if (head > tail) {
+                    int newest = slot(head - 1);
+                    if (messages[newest].equals(message)) {
+                        repeats[newest]++;
+                        coalesced++;
+                        return;
+                    }
+                }
+                while (size() == messages.length) {
+                    if (policy == BackpressurePolicy.DROP_OLDEST) {
+                        messages[slot(tail)] = null;
+                        merged[slot(tail)] = null;
+                        tail++;
+                        dropped++;
+                    } else if (policy == BackpressurePolicy.COALESCE) {
+                        int newest = slot(head - 1);
+                        if (merged[newest] == null) {
+                            merged[newest] = new StringBuilder();
+                        }
+                        merged[newest].append(render(messages[newest], repeats[newest])).append('\n');
+                        messages[newest] = message;
+                        repeats[newest] = 1;
+                        coalesced++;
+                        return;
+                    } else if (!dispatcher.subscriptions.contains(this) || dispatcher.stopping) {
+                        return;
+                    } else {
+                        dispatcher.notFull.awaitUninterruptibly();
+                    }
+                }
+                int slot = slot(head);
+                messages[slot] = message;
+                repeats[slot] = 1;
+                publishedAt[slot] = System.nanoTime();
+                head++;
+                dispatcher.work.signal();
+            } finally {
+                dispatcher.lock.unlock();
+            }
+        }
+
+        // Moves up to max pending messages into batch; called with the lock held
+        void drainTo(List<String> batch, int max) {
+            while (tail < head && batch.size() < max) {
+                int slot = slot(tail);
+                String last = render(messages[slot], repeats[slot]);
+                batch.add(merged[slot] == null ? last : merged[slot].append(last).toString());
+                messages[slot] = null;
+                merged[slot] = null;
+                tail++;
+            }
+            delivering = true;
+        }
+
+        private String render(String message, int repeats) {
+            return repeats > 1 ? message + " (x" + repeats + ")" : message;
+        }
+
+        void deliver(List<String> batch) {
+            try {
+                if (batch.size() == 1) {
+                    observer.update(batch.get(0));
+                } else {
+                    observer.updateBatch(batch);
+                }
+            } catch (RuntimeException e) {
+                System.out.println("Observer failed: " + e.getMessage());
+            } finally {
+                dispatcher.lock.lock();
+                try {
+                    delivered += batch.size();
+                    delivering = false;
+                    dispatcher.notFull.signalAll();
+                } finally {
+                    dispatcher.lock.unlock();
+                }
+            }
+        }
+
+        boolean awaitEmpty(long deadline) throws InterruptedException {
+            dispatcher.lock.lock();
+            try {
+                while (size() > 0 || delivering) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    dispatcher.notFull.awaitNanos(remaining);
+                }
+                return true;
+            } finally {
+                dispatcher.lock.unlock();
+            }
+        }
+
+        ObserverStats stats() {
+            dispatcher.lock.lock();
+            try {
+                long lag = size() == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldestPublishedAt());
+                return new ObserverStats(observer, size(), delivered, dropped, coalesced, lag);
+            } finally {
+                dispatcher.lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+// Compact binary snapshot. Layout:
+//   header:   magic "CRMB", version, customer/communication/task counts
+//   customer: id, name, email, phone, notes, communication count, task count,
+//             then its communications and tasks
+// Strings are length-prefixed UTF-8 (-1 for null) and timestamps are epoch
+// seconds in UTC, the same precision the text format keeps. Communication
+// type and task priority are one code byte each (-1 for null), followed by
+// the stored label for OTHER; version 1 files, which stored them as strings,
+// can still be read.
+public class BinarySnapshotStore implements SnapshotStore {
+    private static final int MAGIC = 0x43524D42;
+    private static final int VERSION = 2;
+    private static final int STRING_LABELS_VERSION = 1;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final String path;
+
+    public BinarySnapshotStore(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public boolean exists() {
+        return new File(path).exists();
+    }
+
+    @Override
+    public void save(List<Customer> customers) throws IOException {
+        int communications = 0;
+        int tasks = 0;
+        for (Customer customer : customers) {
+            communications += customer.getCommunications().size();
+            tasks += customer.getTasks().size();
+        }
+
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile()), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(customers.size());
+            out.writeInt(communications);
+            out.writeInt(tasks);
+            for (Customer customer : customers) {
+                List<Communication> comms = customer.getCommunications();
+                List<Task> customerTasks = customer.getTasks();
+                out.writeInt(customer.getId());
+                writeString(out, customer.getName());
+                writeString(out, customer.getEmail());
+                writeString(out, customer.getPhone());
+                writeString(out, customer.getNotes());
+                out.writeInt(comms.size());
+                out.writeInt(customerTasks.size());
+                for (Communication comm : comms) {
+                    out.writeInt(comm.getId());
+                    out.writeByte(comm.getType() == null ? -1 : comm.getType().code());
+                    if (comm.getType() == CommunicationType.OTHER) {
+                        writeString(out, comm.getTypeLabel());
+                    }
+                    writeString(out, comm.getDescription());
+                    out.writeLong(toEpoch(comm.getTimestamp()));
+                    writeString(out, comm.getTags());
+                }
+                for (Task task : customerTasks) {
+                    out.writeInt(task.getId());
+                    writeString(out, task.getDescription());
+                    out.writeLong(toEpoch(task.getDueDate()));
+                    out.writeByte(task.getPriority() == null ? -1 : task.getPriority().code());
+                    if (task.getPriority() == TaskPriority.OTHER) {
+                        writeString(out, task.getPriorityLabel());
+                    }
+                    out.writeBoolean(task.isCompleted());
+                }
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public int[] load(CRMManager manager) throws IOException {
+        int[] maxIds = new int[3];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a binary CRM snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION && version != STRING_LABELS_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + path);
+            }
+            int customerCount = in.readInt();
+            int communicationCount = in.readInt();
+            int taskCount = in.readInt();
+            manager.ensureCapacity(customerCount, communicationCount, taskCount);
+
+            boolean labels = version == STRING_LABELS_VERSION;
+            byte[] scratch = new byte[256];
+            for (int c = 0; c < customerCount; c++) {
+                int customerId = in.readInt();
+                Customer customer = new Customer(customerId, readString(in, scratch), readString(in, scratch),
+                        readString(in, scratch), readString(in, scratch));
+                int comms = in.readInt();
+                int tasks = in.readInt();
+                customer.ensureHistoryCapacity(comms, tasks);
+                manager.restoreCustomer(customer);
+                if (customerId > maxIds[0]) maxIds[0] = customerId;
+
+                for (int i = 0; i < comms; i++) {
+                    int id = in.readInt();
+                    CommunicationType type;
+                    String label;
+                    if (labels) {
+                        label = readString(in, scratch);
+                        type = label == null ? null : CommunicationType.fromStoredLabel(label);
+                    } else {
+                        int code = in.readByte();
+                        type = code < 0 ? null : CommunicationType.fromCode(code);
+                        label = type == CommunicationType.OTHER ? readString(in, scratch) : null;
+                    }
+                    String description = readString(in, scratch);
+                    LocalDateTime timestamp = fromEpoch(in.readLong());
+                    String tags = readString(in, scratch);
+                    if (id > maxIds[1]) maxIds[1] = id;
+                    manager.restoreCommunication(new Communication(id, customerId, type, label, description, timestamp, tags));
+                }
+                for (int i = 0; i < tasks; i++) {
+                    int id = in.readInt();
+                    String description = readString(in, scratch);
+                    LocalDateTime dueDate = fromEpoch(in.readLong());
+                    TaskPriority priority;
+                    String label;
+                    if (labels) {
+                        label = readString(in, scratch);
+                        priority = label == null ? null : TaskPriority.fromStoredLabel(label);
+                    } else {
+                        int code = in.readByte();
+                        priority = code < 0 ? null : TaskPriority.fromCode(code);
+                        label = priority == TaskPriority.OTHER ? readString(in, scratch) : null;
+                    }
+                    boolean completed = in.readBoolean();
+                    if (id > maxIds[2]) maxIds[2] = id;
+                    manager.restoreTask(new Task(id, customerId, description, dueDate, priority, label, completed));
+                }
+            }
+        }
+        return maxIds;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, byte[] scratch) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] buffer = length <= scratch.length ? scratch : new byte[length];
+        in.readFully(buffer, 0, length);
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static long toEpoch(LocalDateTime time) {
+        return time == null ? NO_DATE : time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime fromEpoch(long seconds) {
+        return seconds == NO_DATE ? null : LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+    }
+}
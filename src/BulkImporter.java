@@ -0,0 +1,366 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Imports customers and their history from CSV files in bulk. Each file is
+// streamed through a pipeline: a reader thread parses and validates rows into
+// batches, and the calling thread inserts each batch with ids reserved as one
+// block and the search index updated once per batch. Nothing is persisted per
+// row; the data file is saved once at the end and observers get one summary.
+//
+// Files need a header row; columns are matched by name and may come in any order:
+//   customers.csv       id,name,email,phone,notes
+//   communications.csv  customer_id,type,description,timestamp,tags
+//   tasks.csv           customer_id,description,due_date,priority,completed
+// customer_id refers to the id column of the customers file, or to an
+// existing customer's id when no imported customer has that id.
+//
+//   java BulkImporter --customers customers.csv --communications communications.csv --tasks tasks.csv
+public class BulkImporter {
+    static final int BATCH_SIZE = 5000;
+    // Rejected rows beyond this are counted but not described
+    private static final int MAX_ERRORS = 100;
+    private static final DateTimeFormatter SPACED = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm[:ss]");
+
+    public static class Result {
+        public long customers;
+        public long communications;
+        public long tasks;
+        public long rejected;
+        public final List<String> errors = new ArrayList<>();
+        public long elapsedMillis;
+
+        void reject(String file, long line, String reason) {
+            rejected++;
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(file + " line " + line + ": " + reason);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Imported " + customers + " customers, " + communications + " communications and "
+                    + tasks + " tasks (" + rejected + " rows rejected) in " + elapsedMillis + " ms";
+        }
+    }
+
+    private final CRMManager crm;
+    // Customer ids from the customers file mapped to the ids they were given
+    private final Map<String, Integer> importedIds = new HashMap<>();
+    private final Result result = new Result();
+
+    public BulkImporter(CRMManager crm) {
+        this.crm = crm;
+    }
+
+    // Imports whichever of the readers are not null, then saves and notifies once
+    public Result importAll(Reader customers, Reader communications, Reader tasks) throws IOException {
+        long start = System.nanoTime();
+        if (customers != null) {
+            run("customers", customers, new String[] {"name"}, this::validateCustomer, this::insertCustomers);
+        }
+        if (communications != null) {
+            run("communications", communications, new String[] {"customer_id", "type", "description"},
+                    this::validateCommunication, this::insertCommunications);
+        }
+        if (tasks != null) {
+            run("tasks", tasks, new String[] {"customer_id", "description", "due_date", "priority"},
+                    this::validateTask, this::insertTasks);
+        }
+        result.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        if (result.customers + result.communications + result.tasks > 0) {
+            crm.saveToFile();
+        }
+        crm.notifyObservers(result.toString());
+        return result;
+    }
+
+    // Turns one row into a validated record, or throws IllegalArgumentException
+    private interface Validator {
+        Object validate(Map<String, Integer> columns, String[] row);
+    }
+
+    private interface Inserter {
+        void insert(List<Object> batch);
+    }
+
+    private static final List<Object> END = Collections.emptyList();
+
+    private void run(String file, Reader input, String[] required, Validator validator, Inserter inserter) throws IOException {
+        CsvReader csv = new CsvReader(input);
+        String[] header = csv.readRecord();
+        if (header == null) {
+            return;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            columns.put(header[i].trim().toLowerCase(), i);
+        }
+        for (String column : required) {
+            if (!columns.containsKey(column)) {
+                throw new IOException(file + ": missing column " + column);
+            }
+        }
+
+        // A few batches in flight keep the reader ahead without buffering the whole file
+        BlockingQueue<List<Object>> batches = new ArrayBlockingQueue<>(4);
+        IOException[] failure = new IOException[1];
+        Thread reader = new Thread(() -> {
+            List<Object> batch = new ArrayList<>(BATCH_SIZE);
+            try {
+                String[] row;
+                while ((row = csv.readRecord()) != null) {
+                    try {
+                        batch.add(validator.validate(columns, row));
+                    } catch (IllegalArgumentException e) {
+                        // Only this thread records rejections until it is joined
+                        result.reject(file, csv.getLineNumber(), e.getMessage());
+                    }
+                    if (batch.size() == BATCH_SIZE) {
+                        batches.put(batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batches.put(batch);
+                }
+            } catch (IOException e) {
+                failure[0] = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    batches.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "crm-import-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            List<Object> batch;
+            while ((batch = batches.take()) != END) {
+                inserter.insert(batch);
+            }
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } finally {
+            // Stops the reader if inserting failed part way
+            reader.interrupt();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    // Validated rows waiting for their ids
+    private static class CustomerRow {
+        String sourceId;
+        String name;
+        String email;
+        String phone;
+        String notes;
+    }
+
+    private static class CommunicationRow {
+        int customerId;
+        CommunicationType type;
+        String description;
+        LocalDateTime timestamp;
+        String tags;
+    }
+
+    private static class TaskRow {
+        int customerId;
+        String description;
+        LocalDateTime dueDate;
+        TaskPriority priority;
+        boolean completed;
+    }
+
+    // Source ids seen so far; only touched by the reader thread
+    private final Set<String> seenSourceIds = new HashSet<>();
+
+    private Object validateCustomer(Map<String, Integer> columns, String[] row) {
+        CustomerRow customer = new CustomerRow();
+        customer.sourceId = field(columns, row, "id");
+        customer.name = required(columns, row, "name");
+        customer.email = field(columns, row, "email");
+        customer.phone = field(columns, row, "phone");
+        customer.notes = field(columns, row, "notes");
+        if (!customer.email.isEmpty() && customer.email.indexOf('@') < 0) {
+            throw new IllegalArgumentException("invalid email " + customer.email);
+        }
+        if (!customer.sourceId.isEmpty() && !seenSourceIds.add(customer.sourceId)) {
+            throw new IllegalArgumentException("duplicate id " + customer.sourceId);
+        }
+        return customer;
+    }
+
+    private Object validateCommunication(Map<String, Integer> columns, String[] row) {
+        CommunicationRow comm = new CommunicationRow();
+        comm.customerId = customerId(required(columns, row, "customer_id"));
+        comm.type = CommunicationType.fromLabel(required(columns, row, "type"));
+        comm.description = required(columns, row, "description");
+        String timestamp = field(columns, row, "timestamp");
+        comm.timestamp = timestamp.isEmpty() ? LocalDateTime.now() : dateTime(timestamp);
+        comm.tags = field(columns, row, "tags");
+        return comm;
+    }
+
+    private Object validateTask(Map<String, Integer> columns, String[] row) {
+        TaskRow task = new TaskRow();
+        task.customerId = customerId(required(columns, row, "customer_id"));
+        task.description = required(columns, row, "description");
+        task.dueDate = dateTime(required(columns, row, "due_date"));
+        task.priority = TaskPriority.fromLabel(required(columns, row, "priority"));
+        String completed = field(columns, row, "completed");
+        if (!completed.isEmpty() && !completed.equalsIgnoreCase("true") && !completed.equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException("completed must be true or false");
+        }
+        task.completed = completed.equalsIgnoreCase("true");
+        return task;
+    }
+
+    private void insertCustomers(List<Object> batch) {
+        int id = Customer.reserveIds(batch.size());
+        List<Customer> customers = new ArrayList<>(batch.size());
+        for (Object row : batch) {
+            CustomerRow r = (CustomerRow) row;
+            Customer customer = new Customer(id++, r.name, r.email, r.phone, r.notes);
+            if (!r.sourceId.isEmpty()) {
+                importedIds.put(r.sourceId, customer.getId());
+            }
+            customers.add(customer);
+        }
+        crm.addBatch(customers, Collections.emptyList(), Collections.emptyList());
+        result.customers += customers.size();
+    }
+
+    private void insertCommunications(List<Object> batch) {
+        int id = Communication.reserveIds(batch.size());
+        List<Communication> comms = new ArrayList<>(batch.size());
+        for (Object row : batch) {
+            CommunicationRow r = (CommunicationRow) row;
+            comms.add(new Communication(id++, r.customerId, r.type, r.description, r.timestamp, r.tags));
+        }
+        crm.addBatch(Collections.emptyList(), comms, Collections.emptyList());
+        result.communications += comms.size();
+    }
+
+    private void insertTasks(List<Object> batch) {
+        int id = Task.reserveIds(batch.size());
+        List<Task> tasks = new ArrayList<>(batch.size());
+        for (Object row : batch) {
+            TaskRow r = (TaskRow) row;
+            tasks.add(new Task(id++, r.customerId, r.description, r.dueDate, r.priority, r.completed));
+        }
+        crm.addBatch(Collections.emptyList(), Collections.emptyList(), tasks);
+        result.tasks += tasks.size();
+    }
+
+    // Imported ids are complete by the time history files are read, since
+    // files are imported one after another
+    private int customerId(String value) {
+        Integer id = importedIds.get(value);
+        if (id != null) {
+            return id;
+        }
+        try {
+            int existing = Integer.parseInt(value);
+            if (crm.findCustomerById(existing) != null) {
+                return existing;
+            }
+        } catch (NumberFormatException e) {
+            // Falls through to the error below
+        }
+        throw new IllegalArgumentException("unknown customer " + value);
+    }
+
+    private static String required(Map<String, Integer> columns, String[] row, String column) {
+        String value = field(columns, row, column);
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("missing " + column);
+        }
+        return value;
+    }
+
+    // Values are stored in the pipe-delimited data file, one record per line
+    private static String field(Map<String, Integer> columns, String[] row, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= row.length) {
+            return "";
+        }
+        String value = row[index].trim();
+        if (value.indexOf('|') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException(column + " contains '|' or a line break");
+        }
+        return value;
+    }
+
+    // Accepts 2024-05-01, 2024-05-01 14:30[:00] and 2024-05-01T14:30[:00]
+    private static LocalDateTime dateTime(String value) {
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay();
+            }
+            if (value.indexOf('T') >= 0) {
+                return LocalDateTime.parse(value);
+            }
+            return LocalDateTime.parse(value, SPACED);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("invalid date " + value);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String customers = null;
+        String communications = null;
+        String tasks = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--customers": customers = args[i + 1]; break;
+                case "--communications": communications = args[i + 1]; break;
+                case "--tasks": tasks = args[i + 1]; break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+        if (customers == null && communications == null && tasks == null) {
+            System.out.println("Usage: java BulkImporter [--customers file.csv] [--communications file.csv] [--tasks file.csv]");
+            return;
+        }
+
+        CRMManager crm = CRMManager.getInstance();
+        crm.addObserver(new NotificationManager("Import"));
+        try (Reader c = open(customers); Reader m = open(communications); Reader t = open(tasks)) {
+            Result result = new BulkImporter(crm).importAll(c, m, t);
+            for (String error : result.errors) {
+                System.out.println("Rejected: " + error);
+            }
+        }
+        crm.close();
+    }
+
+    private static Reader open(String path) throws IOException {
+        return path == null ? null : new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8);
+    }
+}
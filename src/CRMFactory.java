@@ -1,16 +1,17 @@
 import java.time.LocalDateTime;
 
+// Entry points for user input. Type and priority labels are checked here and
+// an IllegalArgumentException names the accepted values.
 public class CRMFactory {
     public static Customer createCustomer(String name, String email, String phone, String notes) {
         return new Customer(name, email, phone, notes);
     }
 
     public static Communication createCommunication(int customerId, String type, String description, String tags) {
-        return new Communication(customerId, type, description, tags);
+        return new Communication(customerId, CommunicationType.fromLabel(type.trim()), description, tags);
     }
 
     public static Task createTask(int customerId, String description, LocalDateTime dueDate, String priority) {
-        return new Task(customerId, description, dueDate, priority);
+        return new Task(customerId, description, dueDate, TaskPriority.fromLabel(priority.trim()));
     }
 }
-
@@ -1,45 +1,281 @@
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.io.*;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime; 
 import java.time.format.DateTimeFormatter;
 
 public class CRMManager implements Subject {
-    private static CRMManager instance;
-    private List<Customer> customers;
+    // SNAPSHOT rewrites the whole data file on every change,
+    // JOURNAL appends each change to a log that is folded back in the background,
+    // WRITE_BEHIND marks changed customers dirty and saves them in batches later
+    public enum PersistenceMode { SNAPSHOT, JOURNAL, WRITE_BEHIND }
+
+    // File format of the snapshot: pipe-delimited text, the binary format,
+    // text split into shard files that are saved and loaded in parallel, or
+    // text in compressed blocks that can be read one customer at a time
+    public enum StorageFormat { TEXT, BINARY, SHARDED, COMPRESSED }
+
+    // Customers in id order
+    private ConcurrentSkipListMap<Integer, Customer> customers;
+    // Primary key indexes, kept in sync by every add path and by loading
+    private StripedIntMap<Customer> customerIndex;
+    private StripedIntMap<Communication> communicationIndex;
+    private StripedIntMap<Task> taskIndex;
+    // Tasks by priority and status. Kept in step by the add paths and
+    // completion changes, and rebuilt in one pass at the end of a load.
+    private TaskStatusIndex taskStatusIndex;
+    private TrigramIndex searchIndex;
+    // Every customer's communications by time
+    private CommunicationTimeline timeline;
+    // While histories are paged, the customer each communication belongs to,
+    // so the timeline and tag search can read one back in by id
+    private StripedIntMap<Customer> communicationOwners;
+    // Communication ids by tag. Rebuilt in one pass at the end of a load
+    // instead of being updated record by record while loading.
+    private TagIndex tagIndex;
+    private volatile boolean loading;
+    // Open tasks by due date, for due soon / overdue alerts
+    private TaskScheduler taskScheduler;
+    // Running totals for the overall report. Only changed inside a version, so
+    // a snapshot reads them as they were at its version.
+    private volatile long totalCustomers;
+    private volatile long totalCommunications;
+    private volatile long totalTasks;
+    private volatile long completedTasks;
+    // Ids of customers whose details changed while an older snapshot was open,
+    // by the version of the change. The search index only has current values,
+    // so a snapshot search checks these customers as well.
+    private final ConcurrentSkipListMap<Long, Integer> detailChanges = new ConcurrentSkipListMap<>();
+    // Versions this manager's changes for snapshot reads. Only the versioned
+    // state and the totals change under it; the indexes are updated outside,
+    // so writes to different customers run side by side.
+    private final VersionClock clock = new VersionClock();
+    // Counts a completion change inside its version and updates the indexes
+    // once it is published. Also used when Task.setCompleted is called
+    // directly on an indexed task.
+    private final Task.CompletionListener taskListener = new Task.CompletionListener() {
+        @Override
+        public void completionCounted(Task task, boolean completed) {
+            completedTasks += completed ? 1 : -1;
+        }
+
+        @Override
+        public void taskCompletionChanged(Task task, boolean completed) {
+            taskCompletionIndexed(task, completed);
+        }
+    };
     private List<Observer> observers;
-    private String currentUser;
+    // When set, observers are notified on the bus's threads instead of the caller's
+    private volatile AsyncEventBus eventBus;
+    private volatile String currentUser;
     private static final String DATA_FILE = "customers.txt";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final long DEFAULT_COMPACTION_THRESHOLD = 4 * 1024 * 1024;
+    // A write-behind flush starts once this many customers are dirty or the delay has passed
+    private static final int WRITE_BEHIND_MAX_DIRTY = 1000;
+    private static final long WRITE_BEHIND_DELAY_MILLIS = 1000;
+    private static final Duration DUE_SOON_WINDOW = Duration.ofHours(24);
+    // Communications listed in a customer report; older ones are only counted
+    private static final int REPORT_COMMUNICATIONS = 50;
+    private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final String dataFile;
+    private final PersistenceMode persistenceMode;
+    private final SnapshotStore store;
+    private final Journal journal;
+    private final WriteBehindPersister writeBehind;
+    // When set, communications are kept off the heap and the indexes hold flyweights
+    private final OffHeapCommunicationStore offHeapHistory;
+    // Guards writing the snapshot and starting a compaction
+    private final Object saveLock = new Object();
+    private Thread compactionThread;
+    private volatile long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    // Set before loading, so the first load is measured too
+    private final CrmMetrics metrics = new CrmMetrics(this);
 
     private CRMManager() {
-        customers = new ArrayList<>();
-        observers = new ArrayList<>();
+        this(DATA_FILE, PersistenceMode.valueOf(System.getProperty("crm.persistence", "journal").toUpperCase()),
+                StorageFormat.valueOf(System.getProperty("crm.format", "text").toUpperCase()),
+                Boolean.getBoolean("crm.offHeap"), Long.getLong("crm.lazyHistory", 0));
+    }
+
+    CRMManager(String dataFile, PersistenceMode persistenceMode) {
+        this(dataFile, persistenceMode, StorageFormat.TEXT);
+    }
+
+    CRMManager(String dataFile, PersistenceMode persistenceMode, StorageFormat format) {
+        this(dataFile, persistenceMode, format, false);
+    }
+
+    CRMManager(String dataFile, PersistenceMode persistenceMode, StorageFormat format, boolean offHeap) {
+        this(dataFile, persistenceMode, format, offHeap, 0);
+    }
+
+    // A positive lazyHistoryRecords loads histories on demand and keeps about
+    // that many communications and tasks in memory
+    CRMManager(String dataFile, PersistenceMode persistenceMode, StorageFormat format, boolean offHeap,
+               long lazyHistoryRecords) {
+        this.dataFile = dataFile;
+        this.offHeapHistory = offHeap ? new OffHeapCommunicationStore() : null;
+        this.persistenceMode = persistenceMode;
+        boolean lazy = lazyHistoryRecords > 0;
+        if (lazy && (format != StorageFormat.TEXT || persistenceMode == PersistenceMode.WRITE_BEHIND)) {
+            System.out.println("Lazy history needs the text format without write-behind; loading all history");
+            lazy = false;
+        }
+        if (lazy) {
+            this.store = new LazyHistoryStore(dataFile, lazyHistoryRecords);
+        } else if (format == StorageFormat.SHARDED) {
+            this.store = new ShardedSnapshotStore(shardDirectory(dataFile),
+                    Integer.getInteger("crm.shards", ShardedSnapshotStore.DEFAULT_SHARDS));
+        } else if (format == StorageFormat.COMPRESSED) {
+            this.store = new CompressedSnapshotStore(compressedPath(dataFile));
+        } else {
+            this.store = format == StorageFormat.BINARY
+                    ? new BinarySnapshotStore(binaryPath(dataFile))
+                    : new TextSnapshotStore(dataFile);
+        }
+        this.journal = new Journal(dataFile + JOURNAL_SUFFIX);
+        customers = new ConcurrentSkipListMap<>();
+        customerIndex = new StripedIntMap<>();
+        communicationIndex = new StripedIntMap<>();
+        taskIndex = new StripedIntMap<>();
+        taskStatusIndex = new TaskStatusIndex();
+        searchIndex = new TrigramIndex();
+        if (lazy) {
+            communicationOwners = new StripedIntMap<>();
+            timeline = new CommunicationTimeline(this::findCommunication);
+        } else {
+            timeline = new CommunicationTimeline();
+        }
+        tagIndex = new TagIndex();
+        taskScheduler = new TaskScheduler(this, DUE_SOON_WINDOW);
+        observers = new CopyOnWriteArrayList<>();
         currentUser = "Default User";
         loadFromFile();
+        if (persistenceMode == PersistenceMode.WRITE_BEHIND) {
+            writeBehind = new WriteBehindPersister(this, store, WRITE_BEHIND_MAX_DIRTY, WRITE_BEHIND_DELAY_MILLIS);
+            foldJournalIntoSnapshot();
+        } else {
+            writeBehind = null;
+        }
+    }
+
+    // customers.txt is stored as customers.bin in the binary format,
+    static String binaryPath(String dataFile) {
+        return baseName(dataFile) + ".bin";
+    }
+
+    // in the directory customers.shards when sharded
+    static String shardDirectory(String dataFile) {
+        return baseName(dataFile) + ".shards";
+    }
+
+    // and as customers.crmz when compressed
+    static String compressedPath(String dataFile) {
+        return baseName(dataFile) + ".crmz";
+    }
+
+    private static String baseName(String dataFile) {
+        return dataFile.endsWith(".txt") ? dataFile.substring(0, dataFile.length() - 4) : dataFile;
+    }
+
+    // Created on first use; the JVM guarantees the holder is initialised once
+    private static class Holder {
+        static final CRMManager INSTANCE = new CRMManager();
     }
 
     public static CRMManager getInstance() {
-        if (instance == null) {
-            instance = new CRMManager();
-        }
-        return instance;
+        return Holder.INSTANCE;
     }
 
     @Override
-    public void addObserver(Observer observer) {
+    public synchronized void addObserver(Observer observer) {
         observers.add(observer);
+        if (eventBus != null) {
+            eventBus.addObserver(observer);
+        }
     }
 
     @Override
-    public void removeObserver(Observer observer) {
+    public synchronized void removeObserver(Observer observer) {
         observers.remove(observer);
+        if (eventBus != null) {
+            eventBus.removeObserver(observer);
+        }
     }
 
     @Override
     public void notifyObservers(String message) {
-        for (Observer observer : observers) {
-            observer.update(message);
+        long start = System.nanoTime();
+        try {
+            AsyncEventBus bus = eventBus;
+            if (bus != null) {
+                if (bus.publish(message)) {
+                    return;
+                }
+                // The bus was closed; observers are called directly again
+                detachAsyncDispatch(bus);
+            }
+            for (Observer observer : observers) {
+                observer.update(message);
+            }
+        } finally {
+            metrics.record(CrmMetrics.Operation.NOTIFY, start);
+        }
+    }
+
+    // Switches observer notification to the given bus; registered observers move over to it.
+    // With null, observers are called directly on the notifying thread again.
+    public synchronized void setAsyncDispatch(AsyncEventBus bus) {
+        if (bus != null) {
+            for (Observer observer : observers) {
+                bus.addObserver(observer);
+            }
         }
+        eventBus = bus;
+    }
+
+    private synchronized void detachAsyncDispatch(AsyncEventBus bus) {
+        if (eventBus == bus) {
+            eventBus = null;
+        }
+    }
+
+    public AsyncEventBus getAsyncDispatch() {
+        return eventBus;
+    }
+
+    public TaskScheduler getTaskScheduler() {
+        return taskScheduler;
+    }
+
+    VersionClock getVersionClock() {
+        return clock;
+    }
+
+    public CrmMetrics getMetrics() {
+        return metrics;
     }
 
     public void setCurrentUser(String user) {
@@ -50,179 +286,1050 @@ public class CRMManager implements Subject {
         return currentUser;
     }
 
+    // Writes to one customer hold that customer's lock, so its records reach the
+    // journal in the same order they are applied in memory
     public void addCustomer(Customer customer) {
-        customers.add(customer);
-        saveToFile();
+        long start = System.nanoTime();
+        synchronized (customer) {
+            indexCustomer(customer);
+            recordChange(customer, customer::toFileString);
+        }
         notifyObservers("New customer added: " + customer.getName());
+        metrics.record(CrmMetrics.Operation.ADD_CUSTOMER, start);
     }
 
     public List<Customer> getAllCustomers() {
-        return new ArrayList<>(customers);
+        long start = System.nanoTime();
+        List<Customer> all = new ArrayList<>(customers.values());
+        metrics.record(CrmMetrics.Operation.LIST_CUSTOMERS, start);
+        return all;
     }
 
     public Customer findCustomerById(int id) {
-        return customers.stream()
-                .filter(c -> c.getId() == id)
-                .findFirst()
-                .orElse(null);
+        long start = System.nanoTime();
+        Customer customer = customerIndex.get(id);
+        metrics.record(CrmMetrics.Operation.FIND_CUSTOMER, start);
+        return customer;
+    }
+
+    public Communication findCommunicationById(int id) {
+        long start = System.nanoTime();
+        Communication comm = findCommunication(id);
+        metrics.record(CrmMetrics.Operation.FIND_COMMUNICATION, start);
+        return comm;
+    }
+
+    // An indexed communication, or one in a paged-out history read in through its customer
+    private Communication findCommunication(int id) {
+        Communication comm = communicationIndex.get(id);
+        Customer owner = comm == null && communicationOwners != null ? communicationOwners.get(id) : null;
+        if (owner != null) {
+            // Paging the history in indexes it; the search covers an eviction in between
+            List<Communication> history = owner.getCommunications();
+            comm = communicationIndex.get(id);
+            for (int i = 0; comm == null && i < history.size(); i++) {
+                if (history.get(i).getId() == id) {
+                    comm = history.get(i);
+                }
+            }
+        }
+        return comm;
+    }
+
+    public Task findTaskById(int id) {
+        long start = System.nanoTime();
+        Task task = findTask(id, taskStatusIndex.customerOf(id));
+        metrics.record(CrmMetrics.Operation.FIND_TASK, start);
+        return task;
+    }
+
+    // An indexed task, or one in a paged-out history read in through its customer
+    private Task findTask(int taskId, int customerId) {
+        Task task = taskIndex.get(taskId);
+        Customer customer = task == null ? customerIndex.get(customerId) : null;
+        if (customer != null) {
+            for (Task candidate : customer.getTasks()) {
+                if (candidate.getId() == taskId) {
+                    return candidate;
+                }
+            }
+        }
+        return task;
+    }
+
+    private List<Task> findTasks(Map<Integer, Integer> ids) {
+        List<Task> tasks = new ArrayList<>(ids.size());
+        for (Map.Entry<Integer, Integer> entry : ids.entrySet()) {
+            Task task = findTask(entry.getKey(), entry.getValue());
+            if (task != null) {
+                tasks.add(task);
+            }
+        }
+        return tasks;
+    }
+
+    // Customers in id order, read straight from the map without copying it
+    public Stream<Customer> streamCustomers() {
+        return recorded(customers.values().stream(), CrmMetrics.Operation.STREAM_CUSTOMERS, System.nanoTime());
+    }
+
+    // A stream is recorded once it has been read to the end, or closed if that
+    // comes first, so the time covers the reading and not just building it
+    private <T> Stream<T> recorded(Stream<T> stream, CrmMetrics.Operation op, long start) {
+        Spliterator<T> source = stream.spliterator();
+        AtomicBoolean done = new AtomicBoolean();
+        Runnable finish = () -> {
+            if (done.compareAndSet(false, true)) {
+                metrics.record(op, start);
+            }
+        };
+        Spliterator<T> recording = new Spliterators.AbstractSpliterator<T>(source.estimateSize(),
+                source.characteristics() & ~Spliterator.SORTED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (source.tryAdvance(action)) {
+                    return true;
+                }
+                finish.run();
+                return false;
+            }
+
+            @Override
+            public void forEachRemaining(Consumer<? super T> action) {
+                source.forEachRemaining(action);
+                finish.run();
+            }
+        };
+        return StreamSupport.stream(recording, false).onClose(stream::close).onClose(finish);
+    }
+
+    // A consistent view of every customer and total as of now, read without
+    // locking. Close it when done: changes made while it is open keep the
+    // state it needs.
+    public CrmSnapshot openSnapshot() {
+        long start = System.nanoTime();
+        long[] totals = new long[4];
+        long version = clock.pin(() -> {
+            totals[0] = totalCustomers;
+            totals[1] = totalCommunications;
+            totals[2] = totalTasks;
+            totals[3] = completedTasks;
+        });
+        metrics.record(CrmMetrics.Operation.OPEN_SNAPSHOT, start);
+        return new CrmSnapshot(this, version, totals[0], totals[1], totals[2], totals[3]);
     }
 
     public List<Customer> searchCustomers(String keyword) {
-        return customers.stream()
-                .filter(c -> c.getName().toLowerCase().contains(keyword.toLowerCase()) ||
-                           c.getEmail().toLowerCase().contains(keyword.toLowerCase()) ||
-                           c.getPhone().contains(keyword))
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        long start = System.nanoTime();
+        List<Customer> results = searchAfter(keyword, 0, VersionClock.LATEST).collect(Collectors.toList());
+        metrics.record(CrmMetrics.Operation.SEARCH, start);
+        return results;
+    }
+
+    // Matching customers in id order, found as the stream is read
+    public Stream<Customer> streamSearch(String keyword) {
+        long start = System.nanoTime();
+        return recorded(searchAfter(keyword, 0, VersionClock.LATEST), CrmMetrics.Operation.STREAM_SEARCH, start);
+    }
+
+    // The page of customers that follows the customer with id afterId in the
+    // given order; an afterId of 0 starts from the beginning
+    public CustomerPage getCustomerPage(int afterId, int limit, CustomerPage.Sort sort) {
+        long start = System.nanoTime();
+        CustomerPage page = customerPage(afterId, limit, sort, VersionClock.LATEST);
+        metrics.record(CrmMetrics.Operation.CUSTOMER_PAGE, start);
+        return page;
+    }
+
+    public CustomerPage searchCustomerPage(String keyword, int afterId, int limit, CustomerPage.Sort sort) {
+        long start = System.nanoTime();
+        CustomerPage page = searchCustomerPage(keyword, afterId, limit, sort, VersionClock.LATEST);
+        metrics.record(CrmMetrics.Operation.SEARCH_PAGE, start);
+        return page;
+    }
+
+    // The methods below read live customers at LATEST, or copies as a snapshot
+    // at an earlier version sees them
+    CustomerPage customerPage(int afterId, int limit, CustomerPage.Sort sort, long version) {
+        boolean byId = sort == CustomerPage.Sort.ID;
+        return CustomerPage.select(customersAfter(byId ? afterId : 0, version),
+                cursor(afterId, sort, version), limit, sort);
+    }
+
+    CustomerPage searchCustomerPage(String keyword, int afterId, int limit, CustomerPage.Sort sort, long version) {
+        boolean byId = sort == CustomerPage.Sort.ID;
+        return CustomerPage.select(searchAfter(keyword, byId ? afterId : 0, version),
+                cursor(afterId, sort, version), limit, sort);
+    }
+
+    Customer findCustomerById(int id, long version) {
+        Customer customer = customerIndex.get(id);
+        return customer == null || version == VersionClock.LATEST ? customer : customer.at(version);
+    }
+
+    Stream<Customer> customersAfter(int afterId, long version) {
+        return at(customers.tailMap(afterId, false).values().stream(), version);
+    }
+
+    Stream<Customer> searchAfter(String keyword, int afterId, long version) {
+        String lowerKeyword = keyword.toLowerCase();
+        PostingList candidates = searchIndex.candidates(keyword);
+        Stream<Customer> scan;
+        if (candidates == null) {
+            // Too short for the trigram index
+            scan = customers.tailMap(afterId, false).values().stream();
+        } else {
+            PostingList ids = version == VersionClock.LATEST ? candidates : candidates.union(changedSince(version));
+            scan = IntStream.range(ids.indexAfter(afterId), ids.size())
+                    .mapToObj(i -> customerIndex.get(ids.get(i)))
+                    .filter(Objects::nonNull);
+        }
+        // Trigram hits are only candidates, so confirm the substring match
+        return at(scan, version).filter(customer -> matches(customer, keyword, lowerKeyword));
+    }
+
+    private static Stream<Customer> at(Stream<Customer> live, long version) {
+        if (version == VersionClock.LATEST) {
+            return live;
+        }
+        return live.map(customer -> customer.at(version)).filter(Objects::nonNull);
+    }
+
+    // Customers whose details changed after the version; their old values may match a search
+    private PostingList changedSince(long version) {
+        int[] changed = detailChanges.tailMap(version, false).values().stream().mapToInt(Integer::intValue).toArray();
+        return PostingList.fromUnsorted(changed, changed.length);
+    }
+
+    // The customer a name or email page carries on after, as seen at the version
+    private Customer cursor(int afterId, CustomerPage.Sort sort, long version) {
+        if (afterId == 0 || sort == CustomerPage.Sort.ID) {
+            return null;
+        }
+        Customer cursor = findCustomerById(afterId, version);
+        if (cursor == null) {
+            throw new IllegalArgumentException("Unknown customer id in cursor: " + afterId);
+        }
+        return cursor;
+    }
+
+    private static boolean matches(Customer c, String keyword, String lowerKeyword) {
+        return c.getName().toLowerCase().contains(lowerKeyword) ||
+               c.getEmail().toLowerCase().contains(lowerKeyword) ||
+               c.getPhone().contains(keyword);
     }
 
     public void addCommunicationToCustomer(int customerId, Communication comm) {
-        Customer customer = findCustomerById(customerId);
+        long start = System.nanoTime();
+        Customer customer = customerIndex.get(customerId);
         if (customer != null) {
-            customer.addCommunication(comm);
-            saveToFile();
+            synchronized (customer) {
+                Communication stored = store(comm);
+                // Paged in first, so the version lock is not held while the disk is read
+                customer.pinHistory();
+                clock.publish((version, oldestReader) -> {
+                    customer.addCommunication(stored);
+                    totalCommunications++;
+                });
+                indexCommunication(stored);
+                recordChange(customer, stored::toFileString);
+            }
             notifyObservers("Communication logged for " + customer.getName());
         }
+        metrics.record(CrmMetrics.Operation.ADD_COMMUNICATION, start);
     }
 
     public void addTaskToCustomer(int customerId, Task task) {
-        Customer customer = findCustomerById(customerId);
+        long start = System.nanoTime();
+        Customer customer = customerIndex.get(customerId);
         if (customer != null) {
-            customer.addTask(task);
-            saveToFile();
+            synchronized (customer) {
+                customer.pinHistory();
+                clock.publish((version, oldestReader) -> addTaskTotals(customer, task));
+                indexTask(task);
+                recordChange(customer, task::toFileString);
+            }
             notifyObservers("Task created for " + customer.getName() + ": " + task.getDescription());
         }
+        metrics.record(CrmMetrics.Operation.ADD_TASK, start);
     }
 
-    public void generateCustomerReport(int customerId) {
-        Customer customer = findCustomerById(customerId);
+    public boolean completeTask(int customerId, int taskId) {
+        long start = System.nanoTime();
+        try {
+            return complete(customerId, taskId);
+        } finally {
+            metrics.record(CrmMetrics.Operation.COMPLETE_TASK, start);
+        }
+    }
+
+    // Completes a task found by its id alone
+    public boolean completeTask(int taskId) {
+        int customerId = taskStatusIndex.customerOf(taskId);
+        return customerId >= 0 && completeTask(customerId, taskId);
+    }
+
+    // Open or completed tasks of one priority across all customers, in id order
+    public List<Task> findTasks(TaskPriority priority, boolean completed) {
+        return findTasks(priority, completed, 0, Integer.MAX_VALUE);
+    }
+
+    // The page of up to limit such tasks after the task afterId. Only the
+    // tasks on the page are looked up, so a paged-out one is read in only
+    // when it is returned.
+    public List<Task> findTasks(TaskPriority priority, boolean completed, int afterId, int limit) {
+        long start = System.nanoTime();
+        List<Task> tasks = findTasks(taskStatusIndex.find(priority, completed, afterId, limit));
+        metrics.record(CrmMetrics.Operation.TASK_QUERY, start);
+        return tasks;
+    }
+
+    // Every open or completed task, highest priority first, then by id
+    public List<Task> findTasks(boolean completed) {
+        return findTasks(completed, 0, Integer.MAX_VALUE);
+    }
+
+    public List<Task> findTasks(boolean completed, int afterId, int limit) {
+        long start = System.nanoTime();
+        List<Task> tasks = findTasks(taskStatusIndex.find(completed, afterId, limit));
+        metrics.record(CrmMetrics.Operation.TASK_QUERY, start);
+        return tasks;
+    }
+
+    public int countTasks(TaskPriority priority, boolean completed) {
+        long start = System.nanoTime();
+        int count = taskStatusIndex.count(priority, completed);
+        metrics.record(CrmMetrics.Operation.COUNT_TASKS, start);
+        return count;
+    }
+
+    public int countTasks(boolean completed) {
+        long start = System.nanoTime();
+        int count = taskStatusIndex.count(completed);
+        metrics.record(CrmMetrics.Operation.COUNT_TASKS, start);
+        return count;
+    }
+
+    private boolean complete(int customerId, int taskId) {
+        Customer customer = customerIndex.get(customerId);
+        if (customer == null) {
+            return false;
+        }
+        Task task;
+        synchronized (customer) {
+            // Pages a lazily loaded history in and keeps it, so its tasks are indexed and the change is not lost
+            customer.pinHistory();
+            task = taskIndex.get(taskId);
+            if (task == null || task.getCustomerId() != customerId) {
+                return false;
+            }
+            task.setCompleted(true);
+            recordChange(customer, () -> taskStatusRecord(task));
+        }
+        notifyObservers("Task completed for " + customer.getName() + ": " + task.getDescription());
+        return true;
+    }
+
+    // Adds an import batch: new customers, and history for customers that are
+    // already indexed. Nothing is persisted and observers are not told; the
+    // importer saves and notifies once when all batches are in.
+    void addBatch(List<Customer> newCustomers, List<Communication> comms, List<Task> tasks) {
+        customerIndex.ensureCapacity(customerIndex.size() + newCustomers.size());
+        for (Customer customer : newCustomers) {
+            customer.setCreated(VersionClock.LATEST);
+            customers.put(customer.getId(), customer);
+            customerIndex.put(customer.getId(), customer);
+            customer.setChangeListener(this::customerChanged, clock);
+            markDirty(customer);
+        }
+        searchIndex.addAll(newCustomers);
+        clock.publish((version, oldestReader) -> {
+            for (Customer customer : newCustomers) {
+                customer.setCreated(version);
+            }
+            totalCustomers += newCustomers.size();
+        });
+
+        communicationIndex.ensureCapacity(communicationIndex.size() + comms.size());
+        if (offHeapHistory != null) {
+            List<Communication> stored = new ArrayList<>(comms.size());
+            for (Communication comm : comms) {
+                stored.add(store(comm));
+            }
+            comms = stored;
+        }
+        // Each customer's rows are published together, under its lock taken once
+        Map<Integer, List<Communication>> commsByCustomer = new LinkedHashMap<>();
+        for (Communication comm : comms) {
+            commsByCustomer.computeIfAbsent(comm.getCustomerId(), k -> new ArrayList<>()).add(comm);
+        }
+        Map<Integer, List<Task>> tasksByCustomer = new LinkedHashMap<>();
+        for (Task task : tasks) {
+            tasksByCustomer.computeIfAbsent(task.getCustomerId(), k -> new ArrayList<>()).add(task);
+        }
+        Set<Integer> customerIds = new LinkedHashSet<>(commsByCustomer.keySet());
+        customerIds.addAll(tasksByCustomer.keySet());
+        for (int customerId : customerIds) {
+            Customer customer = customerIndex.get(customerId);
+            List<Communication> customerComms = commsByCustomer.getOrDefault(customerId, Collections.emptyList());
+            List<Task> customerTasks = tasksByCustomer.getOrDefault(customerId, Collections.emptyList());
+            synchronized (customer) {
+                clock.publish((version, oldestReader) -> {
+                    for (Communication comm : customerComms) {
+                        customer.addCommunication(comm);
+                    }
+                    totalCommunications += customerComms.size();
+                    for (Task task : customerTasks) {
+                        addTaskTotals(customer, task);
+                    }
+                });
+            }
+            markDirty(customer);
+        }
+
+        for (Communication comm : comms) {
+            communicationIndex.put(comm.getId(), comm);
+            noteOwner(comm.getId(), customerIndex.get(comm.getCustomerId()));
+        }
+        timeline.addAll(comms);
+        tagIndex.addAll(comms);
+
+        taskIndex.ensureCapacity(taskIndex.size() + tasks.size());
+        for (Task task : tasks) {
+            taskIndex.put(task.getId(), task);
+            task.setCompletionListener(taskListener, clock);
+        }
+        taskStatusIndex.addAll(tasks);
+        taskScheduler.tasksOpened(tasks);
+    }
+
+    // Adds a customer and any history it already carries to the indexes, then
+    // publishes it with a version. Snapshots skip it until then.
+    private void indexCustomer(Customer customer) {
+        customer.setCreated(VersionClock.LATEST);
+        customers.put(customer.getId(), customer);
+        customerIndex.put(customer.getId(), customer);
+        searchIndex.add(customer);
+        customer.setChangeListener(this::customerChanged, clock);
+        List<Communication> comms = customer.getCommunications();
+        List<Task> tasks = customer.getTasks();
+        long completed = tasks.stream().filter(Task::isCompleted).count();
+        clock.publish((version, oldestReader) -> {
+            customer.setCreated(version);
+            totalCustomers++;
+            totalCommunications += comms.size();
+            totalTasks += tasks.size();
+            completedTasks += completed;
+        });
+        for (Communication comm : comms) {
+            indexCommunication(comm);
+        }
+        for (Task task : tasks) {
+            indexTask(task);
+        }
+    }
+
+    // Adds the task to the customer and the totals; called inside its version
+    private void addTaskTotals(Customer customer, Task task) {
+        customer.addTask(task);
+        totalTasks++;
+        if (task.isCompleted()) {
+            completedTasks++;
+        }
+    }
+
+    // The communication to keep: a flyweight over the off-heap copy, or comm itself
+    // An OTHER type stays on the heap, since the off-heap row has no room for its label
+    private Communication store(Communication comm) {
+        return offHeapHistory == null || comm.getType() == CommunicationType.OTHER ? comm : offHeapHistory.append(comm);
+    }
+
+    SnapshotStore getStore() {
+        return store;
+    }
+
+    OffHeapCommunicationStore getOffHeapHistory() {
+        return offHeapHistory;
+    }
+
+    // The index updates for a record already published; the totals are kept by the caller
+    private void indexCommunication(Communication comm) {
+        communicationIndex.put(comm.getId(), comm);
+        noteOwner(comm.getId(), customerIndex.get(comm.getCustomerId()));
+        timeline.add(comm);
+        if (!loading) {
+            tagIndex.add(comm);
+        }
+    }
+
+    private void noteOwner(int communicationId, Customer customer) {
+        if (communicationOwners != null) {
+            communicationOwners.put(communicationId, customer);
+        }
+    }
+
+    private void indexTask(Task task) {
+        taskIndex.put(task.getId(), task);
+        if (!loading) {
+            taskStatusIndex.add(task);
+        }
+        task.setCompletionListener(taskListener, clock);
+        if (!task.isCompleted()) {
+            taskScheduler.taskOpened(task);
+        }
+    }
+
+    // Runs after the completion change is published, holding the task's lock
+    private void taskCompletionIndexed(Task task, boolean completed) {
+        taskStatusIndex.statusChanged(task, completed);
+        markDirty(customerIndex.get(task.getCustomerId()));
+        if (completed) {
+            taskScheduler.taskClosed(task);
+        } else {
+            taskScheduler.taskOpened(task);
+        }
+    }
+
+    // Called after the change is published, holding the customer's lock
+    private void customerChanged(Customer customer, String field, String oldValue) {
+        long oldestReader = clock.oldestReader();
+        if (!detailChanges.isEmpty()) {
+            detailChanges.headMap(oldestReader, true).clear();
+        }
+        // Logged before the index drops the old value, so a snapshot search finds it one way or the other
+        if (oldestReader < customer.detailsVersion()) {
+            detailChanges.put(customer.detailsVersion(), customer.getId());
+        }
+        searchIndex.update(customer, field, oldValue);
+        markDirty(customer);
+    }
+
+    private void markDirty(Customer customer) {
         if (customer == null) {
-            System.out.println("Customer not found!");
             return;
         }
+        store.changed(customer);
+        if (writeBehind != null) {
+            writeBehind.markDirty(customer);
+        }
+    }
+
+    // Communications across all customers from from (inclusive) to to (exclusive), oldest first
+    public List<Communication> getCommunicationsBetween(LocalDateTime from, LocalDateTime to) {
+        long start = System.nanoTime();
+        List<Communication> results = timeline.between(from, to);
+        metrics.record(CrmMetrics.Operation.COMMUNICATIONS_BETWEEN, start);
+        return results;
+    }
+
+    public List<Communication> getCommunicationsOn(LocalDate day) {
+        long start = System.nanoTime();
+        List<Communication> results = timeline.between(day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+        metrics.record(CrmMetrics.Operation.COMMUNICATIONS_ON, start);
+        return results;
+    }
+
+    // The n most recent communications across all customers, newest first
+    public List<Communication> getLatestCommunications(int n) {
+        long start = System.nanoTime();
+        List<Communication> results = timeline.latest(n);
+        metrics.record(CrmMetrics.Operation.LATEST_COMMUNICATIONS, start);
+        return results;
+    }
 
-        System.out.println("\n=== CUSTOMER REPORT ===");
-        System.out.println(customer);
-        System.out.println("\nCommunications (" + customer.getCommunications().size() + "):");
-        for (Communication comm : customer.getCommunications()) {
-            System.out.println("  " + comm);
+    // Communications carrying all of the tags, or any of them, in id order
+    public List<Communication> findCommunicationsByTags(Collection<String> tags, boolean matchAll) {
+        long start = System.nanoTime();
+        PostingList ids = matchAll ? tagIndex.all(tags) : tagIndex.any(tags);
+        List<Communication> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Communication comm = findCommunication(ids.get(i));
+            if (comm != null) {
+                results.add(comm);
+            }
         }
-        System.out.println("\nTasks (" + customer.getTasks().size() + "):");
-        for (Task task : customer.getTasks()) {
-            System.out.println("  " + task);
+        metrics.record(CrmMetrics.Operation.TAG_SEARCH, start);
+        return results;
+    }
+
+    public int getTagFrequency(String tag) {
+        long start = System.nanoTime();
+        int frequency = tagIndex.frequency(tag);
+        metrics.record(CrmMetrics.Operation.TAG_FREQUENCY, start);
+        return frequency;
+    }
+
+    // The n most used tags and how many communications carry each
+    public Map<String, Integer> getTopTags(int n) {
+        long start = System.nanoTime();
+        Map<String, Integer> top = tagIndex.topTags(n);
+        metrics.record(CrmMetrics.Operation.TOP_TAGS, start);
+        return top;
+    }
+
+    // Reports read a snapshot, so they add up even while writes go on and never hold writers up
+    public void generateCustomerReport(int customerId) {
+        long start = System.nanoTime();
+        try (CrmSnapshot snapshot = openSnapshot()) {
+            Customer customer = snapshot.findCustomerById(customerId);
+            if (customer == null) {
+                System.out.println("Customer not found!");
+                return;
+            }
+
+            System.out.println("\n=== CUSTOMER REPORT ===");
+            System.out.println(customer);
+            int communicationCount = customer.getCommunications().size();
+            System.out.println("\nCommunications (" + communicationCount + "), newest first:");
+            List<Communication> latest = customer.getLatestCommunications(REPORT_COMMUNICATIONS);
+            for (Communication comm : latest) {
+                System.out.println("  " + comm);
+            }
+            if (communicationCount > latest.size()) {
+                System.out.println("  ... " + (communicationCount - latest.size()) + " older");
+            }
+            List<Task> tasks = customer.getTasks();
+            System.out.println("\nTasks (" + tasks.size() + "):");
+            for (Task task : tasks) {
+                System.out.println("  " + task);
+            }
+        } finally {
+            metrics.record(CrmMetrics.Operation.CUSTOMER_REPORT, start);
         }
     }
 
     public void generateOverallReport() {
-        System.out.println("\n=== OVERALL CRM REPORT ===");
-        System.out.println("Total Customers: " + customers.size());
-        
-        int totalCommunications = customers.stream()
-                .mapToInt(c -> c.getCommunications().size())
-                .sum();
-        System.out.println("Total Communications: " + totalCommunications);
-        
-        long totalTasks = customers.stream()
-                .mapToLong(c -> c.getTasks().size())
-                .sum();
-        System.out.println("Total Tasks: " + totalTasks);
-        
-        long completedTasks = customers.stream()
-                .flatMap(c -> c.getTasks().stream())
-                .filter(Task::isCompleted)
-                .count();
-        System.out.println("Completed Tasks: " + completedTasks);
-        
+        long start = System.nanoTime();
+        long totalTasks;
+        long completedTasks;
+        try (CrmSnapshot snapshot = openSnapshot()) {
+            totalTasks = snapshot.getTotalTasks();
+            completedTasks = snapshot.getCompletedTasks();
+            System.out.println("\n=== OVERALL CRM REPORT ===");
+            System.out.println("Total Customers: " + snapshot.getCustomerCount());
+            System.out.println("Total Communications: " + snapshot.getTotalCommunications());
+            System.out.println("Total Tasks: " + totalTasks);
+            System.out.println("Completed Tasks: " + completedTasks);
+        }
+
         if (totalTasks > 0) {
             double completionRate = (double) completedTasks / totalTasks * 100;
             System.out.printf("Task Completion Rate: %.1f%%\n", completionRate);
         }
+        Map<String, Integer> topTags = tagIndex.topTags(5);
+        if (!topTags.isEmpty()) {
+            StringBuilder line = new StringBuilder("Top Tags:");
+            for (Map.Entry<String, Integer> entry : topTags.entrySet()) {
+                line.append(' ').append(entry.getKey()).append(" (").append(entry.getValue()).append(')');
+            }
+            System.out.println(line);
+        }
+        metrics.record(CrmMetrics.Operation.OVERALL_REPORT, start);
+    }
+
+    public int getCustomerCount() {
+        return customerIndex.size();
+    }
+
+    int communicationIndexSize() {
+        return communicationIndex.size();
+    }
+
+    int taskIndexSize() {
+        return taskIndex.size();
+    }
+
+    int timelineSize() {
+        return timeline.size();
+    }
+
+    int tagCount() {
+        return tagIndex.size();
+    }
+
+    int trigramCount() {
+        return searchIndex.size();
+    }
+
+    public long getTotalCommunications() {
+        return totalCommunications;
+    }
+
+    public long getTotalTasks() {
+        return totalTasks;
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    // Persists a single change to the customer according to the persistence mode.
+    // The record is only built when the journal needs it.
+    private void recordChange(Customer customer, Supplier<String> record) {
+        markDirty(customer);
+        if (persistenceMode == PersistenceMode.SNAPSHOT) {
+            saveToFile();
+            return;
+        }
+        if (persistenceMode == PersistenceMode.WRITE_BEHIND) {
+            return;
+        }
+        try {
+            journal.append(record.get());
+        } catch (IOException e) {
+            System.out.println("Error writing journal: " + e.getMessage());
+            saveToFile();
+            return;
+        }
+        if (journal.size() > compactionThreshold) {
+            compactInBackground();
+        }
+    }
+
+    // Journal size in bytes that triggers a background compaction
+    void setCompactionThreshold(long bytes) {
+        this.compactionThreshold = bytes;
+    }
+
+    private String taskStatusRecord(Task task) {
+        return "TASK_STATUS|" + task.getId() + "|" + task.getCustomerId() + "|" + task.isCompleted() + "\n";
+    }
+
+    // Folds the journal back into the data file without blocking the caller on I/O.
+    // The journal is rotated first so new changes go to a fresh log. Every record
+    // in the rotated log was applied in memory before it was written, so the
+    // snapshot taken afterwards covers it.
+    private void compactInBackground() {
+        synchronized (saveLock) {
+            if (compactionThread != null && compactionThread.isAlive()) {
+                return;
+            }
+            File rotated;
+            try {
+                rotated = journal.rotate();
+            } catch (IOException e) {
+                System.out.println("Error compacting journal: " + e.getMessage());
+                return;
+            }
+            List<Customer> snapshot = new ArrayList<>(customers.values());
+            compactionThread = new Thread(() -> {
+                try {
+                    long start = System.nanoTime();
+                    store.save(snapshot);
+                    metrics.recordSave(start, store.size());
+                    rotated.delete();
+                } catch (IOException e) {
+                    System.out.println("Error compacting journal: " + e.getMessage());
+                }
+            }, "crm-journal-compaction");
+            compactionThread.setDaemon(true);
+            compactionThread.start();
+        }
+    }
+
+    void awaitCompaction() {
+        if (compactionThread == null) {
+            return;
+        }
+        try {
+            compactionThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public void saveToFile() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(DATA_FILE))) {
-            for (Customer customer : customers) {
-                writer.print(customer.toFileString());
+        synchronized (saveLock) {
+            awaitCompaction();
+            try {
+                long start = System.nanoTime();
+                if (writeBehind != null) {
+                    writeBehind.flush();
+                } else if (persistenceMode == PersistenceMode.JOURNAL) {
+                    File rotated = journal.rotate();
+                    store.save(new ArrayList<>(customers.values()));
+                    rotated.delete();
+                } else {
+                    store.save(new ArrayList<>(customers.values()));
+                }
+                metrics.recordSave(start, store.size());
+                System.out.println("Data saved to " + store.getPath());
+            } catch (IOException e) {
+                System.out.println("Error saving data: " + e.getMessage());
             }
-            System.out.println("Data saved to " + DATA_FILE);
+        }
+    }
+
+    // Saves anything still pending and stops background persistence; used on exit
+    public void close() {
+        synchronized (saveLock) {
+            awaitCompaction();
+            if (writeBehind != null) {
+                try {
+                    writeBehind.close();
+                } catch (IOException e) {
+                    System.out.println("Error saving data: " + e.getMessage());
+                }
+            }
+            journal.close();
+        }
+    }
+
+    // A journal left by an earlier JOURNAL run is written into the snapshot once,
+    // since write-behind does not use it
+    private void foldJournalIntoSnapshot() {
+        File rotated = journal.getRotatedFile();
+        File log = journal.getFile();
+        if (!rotated.exists() && !log.exists()) {
+            return;
+        }
+        try {
+            writeBehind.flush();
+            journal.close();
+            rotated.delete();
+            log.delete();
         } catch (IOException e) {
             System.out.println("Error saving data: " + e.getMessage());
         }
     }
 
-        
+    WriteBehindPersister getWriteBehind() {
+        return writeBehind;
+    }
+
+    // Loads the data file in parallel, then replays any journal entries written after it
     public void loadFromFile() {
-        File file = new File(DATA_FILE);
-        if (!file.exists()) {
+        SnapshotStore snapshot = store;
+        if (!snapshot.exists() && new File(dataFile).exists()) {
+            // No snapshot in the configured format yet, so start from the text file
+            snapshot = new TextSnapshotStore(dataFile);
+        }
+        File rotated = journal.getRotatedFile();
+        File log = journal.getFile();
+        if (!snapshot.exists() && !rotated.exists() && !log.exists()) {
             System.out.println("No data file found. Starting fresh.");
             return;
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(DATA_FILE))) {
-            String line;
-            int maxCustomerId = 0;
-            int maxCommId = 0;
-            int maxTaskId = 0;
-
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                
-                if (parts[0].equals("CUSTOMER")) {
-                    int id = Integer.parseInt(parts[1]);
-                    String name = parts[2];
-                    String email = parts[3];
-                    String phone = parts[4];
-                    String notes = parts[5];
-                    
-                    Customer customer = new Customer(name, email, phone, notes);
-                    customers.add(customer);
-                    
-                    if (id > maxCustomerId) maxCustomerId = id;
-                    
-                } else if (parts[0].equals("COMMUNICATION")) {
-                    int id = Integer.parseInt(parts[1]);
-                    int customerId = Integer.parseInt(parts[2]);
-                    String type = parts[3];
-                    String description = parts[4];
-                    String timestamp = parts[5];
-                    String tags = parts[6];
-                    
-                    Communication comm = new Communication(customerId, type, description, tags);
-                    Customer customer = findCustomerById(customerId);
-                    if (customer != null) {
-                        customer.addCommunication(comm);
-                    }
-                    
-                    if (id > maxCommId) maxCommId = id;
-                    
-                } else if (parts[0].equals("TASK")) {
-                    int id = Integer.parseInt(parts[1]);
-                    int customerId = Integer.parseInt(parts[2]);
-                    String description = parts[3];
-                    String dueDateStr = parts[4];
-                    String priority = parts[5];
-                    boolean completed = Boolean.parseBoolean(parts[6]);
-                    
-                    LocalDateTime dueDate = LocalDateTime.parse(dueDateStr, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                    
-                    Task task = new Task(customerId, description, dueDate, priority);
-                    task.setCompleted(completed);
-                    Customer customer = findCustomerById(customerId);
-                    if (customer != null) {
-                        customer.addTask(task);
-                    }
-                    
-                    if (id > maxTaskId) maxTaskId = id;
-                }
+        long start = System.nanoTime();
+        loading = true;
+        try {
+            int[] maxIds = new int[3];
+            if (snapshot.exists()) {
+                maxIds = snapshot.load(this);
             }
+            replay(rotated, maxIds);
+            replay(log, maxIds);
+
+            Customer.setNextId(maxIds[0] + 1);
+            Communication.setNextId(maxIds[1] + 1);
+            Task.setNextId(maxIds[2] + 1);
             
-            Customer.setNextId(maxCustomerId + 1);
-            Communication.setNextId(maxCommId + 1);
-            Task.setNextId(maxTaskId + 1);
-            
-            System.out.println("Loaded " + customers.size() + " customers from " + DATA_FILE);
+            System.out.println("Loaded " + customerIndex.size() + " customers from " + snapshot.getPath());
             
         } catch (IOException e) {
             System.out.println("Error loading data: " + e.getMessage());
+        } finally {
+            loading = false;
+            tagIndex.rebuild(customers.values());
+            taskStatusIndex.addAll(taskIndex);
+        }
+        metrics.recordLoad(start, snapshot.size() + rotated.length() + log.length());
+    }
+
+    private void replay(File file, int[] maxIds) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    applyRecord(line, maxIds);
+                }
+            }
+        }
+    }
+
+    // Lets a loader that knows the record counts size the collections up front
+    void ensureCapacity(int customerCount, int communicationCount, int taskCount) {
+        customerIndex.ensureCapacity(customerCount);
+        communicationIndex.ensureCapacity(communicationCount);
+        taskIndex.ensureCapacity(taskCount);
+    }
+
+    // A customer whose history stays in the data file until it is needed
+    void restoreCustomerHeader(Customer customer) {
+        if (!customerIndex.containsKey(customer.getId())) {
+            customer.setCreated(VersionClock.LATEST);
+            customers.put(customer.getId(), customer);
+            customerIndex.put(customer.getId(), customer);
+            searchIndex.add(customer);
+            customer.setChangeListener(this::customerChanged, clock);
+            clock.publish((version, oldestReader) -> {
+                customer.setCreated(version);
+                totalCustomers++;
+            });
+        }
+    }
+
+    // Totals counted by a loader that does not restore the records themselves
+    void addStoredTotals(long communications, long tasks, long completed) {
+        clock.publish((version, oldestReader) -> {
+            totalCommunications += communications;
+            totalTasks += tasks;
+            completedTasks += completed;
+        });
+    }
+
+    // A communication whose history stays in the data file, noted by a loader.
+    // The timeline and tag index keep its id, and findCommunication reads it
+    // in through its customer when a query returns it.
+    void restoreStoredCommunication(Customer customer, int id, LocalDateTime timestamp, String tags) {
+        communicationOwners.put(id, customer);
+        timeline.add(id, timestamp);
+        tagIndex.addStored(id, tags);
+    }
+
+    // A task whose history stays in the data file, noted by a loader so task
+    // queries and due-date alerts can find it. The due date is only read for
+    // open tasks.
+    void restoreStoredTask(int taskId, int customerId, LocalDateTime dueDate, TaskPriority priority,
+                           boolean completed) {
+        taskStatusIndex.add(taskId, customerId, priority, completed);
+        if (!completed) {
+            taskScheduler.taskStored(taskId, customerId, dueDate);
+        }
+    }
+
+    // Drops what a loader noted with the two methods above when it falls back
+    // to restoring every record. Only called while loading.
+    void discardStoredHistory() {
+        communicationOwners = new StripedIntMap<>();
+        timeline = new CommunicationTimeline(this::findCommunication);
+        tagIndex = new TagIndex();
+        taskStatusIndex = new TaskStatusIndex();
+        taskScheduler = new TaskScheduler(this, DUE_SOON_WINDOW);
+    }
+
+    // A paged-in history is indexed by id while it is in memory. It is already
+    // counted in the totals, the status index, the scheduler, the timeline and
+    // the tag index from the loader's scan.
+    void historyPagedIn(Customer.History history) {
+        for (Communication comm : history.communications()) {
+            communicationIndex.put(comm.getId(), comm);
+        }
+        for (Task task : history.tasks()) {
+            taskIndex.put(task.getId(), task);
+            task.setCompletionListener(taskListener, clock);
+        }
+    }
+
+    void historyPagedOut(Customer.History history) {
+        for (Communication comm : history.communications()) {
+            communicationIndex.remove(comm.getId());
+        }
+        for (Task task : history.tasks()) {
+            taskIndex.remove(task.getId());
+        }
+    }
+
+    // Loaders hand every record to these methods so the indexes stay in sync.
+    // Records already present are ignored.
+    void restoreCustomer(Customer customer) {
+        if (!customerIndex.containsKey(customer.getId())) {
+            indexCustomer(customer);
+        }
+    }
+
+    void restoreCommunication(Communication comm) {
+        Customer customer = customerIndex.get(comm.getCustomerId());
+        if (customer != null && !customer.isHistoryLoaded()) {
+            // Indexes a paged-out history's ids so a record already in it is not added twice
+            customer.getCommunications();
+        }
+        if (customer != null && !communicationIndex.containsKey(comm.getId())) {
+            Communication stored = store(comm);
+            customer.pinHistory();
+            clock.publish((version, oldestReader) -> {
+                customer.addCommunication(stored);
+                totalCommunications++;
+            });
+            indexCommunication(stored);
+        }
+    }
+
+    void restoreTask(Task task) {
+        Customer customer = customerIndex.get(task.getCustomerId());
+        if (customer != null && !customer.isHistoryLoaded()) {
+            customer.getTasks();
+        }
+        if (customer != null && !taskIndex.containsKey(task.getId())) {
+            customer.pinHistory();
+            clock.publish((version, oldestReader) -> addTaskTotals(customer, task));
+            indexTask(task);
+        }
+    }
+
+    // Applies one data file or journal line. Records already present are skipped,
+    // so a journal that overlaps the snapshot can be replayed safely.
+    private void applyRecord(String line, int[] maxIds) {
+        String[] parts = line.split("\\|", -1);
+
+        if (parts[0].equals("CUSTOMER")) {
+            int id = Integer.parseInt(parts[1]);
+            String name = parts[2];
+            String email = parts[3];
+            String phone = parts[4];
+            String notes = parts[5];
+
+            restoreCustomer(new Customer(id, name, email, phone, notes));
+
+            if (id > maxIds[0]) maxIds[0] = id;
+
+        } else if (parts[0].equals("COMMUNICATION")) {
+            int id = Integer.parseInt(parts[1]);
+            int customerId = Integer.parseInt(parts[2]);
+            String description = parts[4];
+            LocalDateTime timestamp = LocalDateTime.parse(parts[5], FILE_DATE_FORMAT);
+            String tags = parts[6];
+
+            if (id > maxIds[1]) maxIds[1] = id;
+
+            CommunicationType type = CommunicationType.fromStoredLabel(parts[3]);
+            restoreCommunication(new Communication(id, customerId, type, parts[3], description, timestamp, tags));
+
+        } else if (parts[0].equals("TASK")) {
+            int id = Integer.parseInt(parts[1]);
+            int customerId = Integer.parseInt(parts[2]);
+            String description = parts[3];
+            LocalDateTime dueDate = LocalDateTime.parse(parts[4], FILE_DATE_FORMAT);
+            boolean completed = Boolean.parseBoolean(parts[6]);
+
+            if (id > maxIds[2]) maxIds[2] = id;
+
+            TaskPriority priority = TaskPriority.fromStoredLabel(parts[5]);
+            restoreTask(new Task(id, customerId, description, dueDate, priority, parts[5], completed));
+
+        } else if (parts[0].equals("TASK_STATUS")) {
+            int id = Integer.parseInt(parts[1]);
+            boolean completed = Boolean.parseBoolean(parts[3]);
+
+            Customer customer = customerIndex.get(Integer.parseInt(parts[2]));
+            if (customer != null) {
+                customer.pinHistory();
+            }
+            Task task = taskIndex.get(id);
+            if (task != null) {
+                task.setCompleted(completed);
+            }
+        }
+
+        // Journal records are newer than the snapshot, so the next save has to write their customer
+        int customerField = parts[0].equals("CUSTOMER") ? 1 : 2;
+        Customer changed = parts.length > customerField ? customerIndex.get(Integer.parseInt(parts[customerField])) : null;
+        if (changed != null) {
+            store.changed(changed);
         }
     }
     
@@ -1,17 +1,21 @@
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Communication {
-    private static int nextId = 1;
+    private static final DateTimeFormatter FILE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final AtomicInteger nextId = new AtomicInteger(1);
     private int id;
-    private String type; // phone, email, meeting
+    private CommunicationType type;
+    // The stored label of an OTHER type, written back as it was read
+    private String otherType;
     private String description;
     private LocalDateTime timestamp;
     private String tags;
     private int customerId;
 
-    public Communication(int customerId, String type, String description, String tags) {
-        this.id = nextId++;
+    public Communication(int customerId, CommunicationType type, String description, String tags) {
+        this.id = nextId.getAndIncrement();
         this.customerId = customerId;
         this.type = type;
         this.description = description;
@@ -19,8 +23,34 @@ public class Communication {
         this.timestamp = LocalDateTime.now();
     }
 
+    // Used when restoring a saved communication so the stored id and time are kept
+    public Communication(int id, int customerId, CommunicationType type, String description, LocalDateTime timestamp, String tags) {
+        this(id, customerId, type, null, description, timestamp, tags);
+    }
+
+    // Also keeps the stored label when the type is OTHER
+    public Communication(int id, int customerId, CommunicationType type, String typeLabel, String description,
+                         LocalDateTime timestamp, String tags) {
+        this.id = id;
+        this.customerId = customerId;
+        this.type = type;
+        this.otherType = type == CommunicationType.OTHER ? typeLabel : null;
+        this.description = description;
+        this.tags = tags;
+        this.timestamp = timestamp;
+    }
+
+    // For subclasses that keep the fields elsewhere and override every getter
+    protected Communication() {
+    }
+
     public static void setNextId(int id) {
-        nextId = id;
+        nextId.set(id);
+    }
+
+    // Reserves a block of count ids and returns the first one
+    static int reserveIds(int count) {
+        return nextId.getAndAdd(count);
     }
 
     public int getCustomerId() { 
@@ -28,23 +58,27 @@ public class Communication {
 
     // Getters
     public int getId() { return id; }
-    public String getType() { return type; }
+    public CommunicationType getType() { return type; }
     public String getDescription() { return description; }
     public LocalDateTime getTimestamp() { return timestamp; }
     public String getTags() { return tags; }
 
+    // The label as stored: the type's own, or the original one of an OTHER type
+    public String getTypeLabel() {
+        return otherType != null ? otherType : String.valueOf(getType());
+    }
+
     // Convert to string for file saving
     public String toFileString() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        return "COMMUNICATION|" + id + "|" + customerId + "|" + type + "|" + 
-            description + "|" + timestamp.format(formatter) + "|" + tags + "\n";
+        return "COMMUNICATION|" + getId() + "|" + getCustomerId() + "|" + getTypeLabel() + "|" + 
+            getDescription() + "|" + getTimestamp().format(FILE_FORMAT) + "|" + getTags() + "\n";
     }
 
     @Override
     public String toString() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
         return String.format("ID: %d | Type: %s | Time: %s | Description: %s | Tags: %s",
-                id, type, timestamp.format(formatter), description, tags);
+                getId(), getTypeLabel(), getTimestamp().format(formatter), getDescription(), getTags());
     }
     
 }
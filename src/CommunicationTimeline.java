@@ -0,0 +1,260 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+// Communications ordered by timestamp, for "latest N" and time range queries
+// that only touch the entries they return.
+//
+// Entries are kept in parallel arrays of time keys and communications. New
+// communications are normally the newest, so adding is an append. Entries that
+// arrive out of order (loading a file grouped by customer, importing old
+// history) are appended too and the arrays are sorted once, by the next query,
+// instead of shifting on every insert. Like AppendOnlyList, writers are
+// serialised and readers work on an immutable view without locking: a sort
+// builds new arrays rather than reordering the ones a view may be reading.
+//
+// A timeline made with a resolver keeps ids instead of communications, and
+// views look each one up when it is read. The manager uses one while
+// histories are paged, so the timeline covers histories left in the data file.
+public class CommunicationTimeline {
+    private final IntFunction<Communication> resolver;
+    private volatile State current;
+
+    public CommunicationTimeline() {
+        this(null);
+    }
+
+    CommunicationTimeline(IntFunction<Communication> resolver) {
+        this.resolver = resolver;
+        current = resolver == null
+                ? new State(new long[0], null, new Communication[0], 0, true)
+                : new State(new long[0], new int[0], null, 0, true);
+    }
+
+    public void add(Communication comm) {
+        add(key(comm.getTimestamp()), comm.getId(), comm);
+    }
+
+    // A communication known only by id and time, read later through the resolver
+    void add(int id, LocalDateTime timestamp) {
+        if (resolver == null) {
+            throw new IllegalStateException("This timeline keeps communications, not ids");
+        }
+        add(key(timestamp), id, null);
+    }
+
+    private synchronized void add(long key, int id, Communication comm) {
+        State state = withRoom(current, 1);
+        state.set(state.size, key, id, comm);
+        boolean sorted = state.sorted && (state.size == 0 || key >= state.keys[state.size - 1]);
+        current = new State(state.keys, state.ids, state.items, state.size + 1, sorted);
+    }
+
+    // Adds a batch under one lock, growing the arrays at most once
+    public synchronized void addAll(List<Communication> comms) {
+        State state = withRoom(current, comms.size());
+        int size = state.size;
+        boolean sorted = state.sorted;
+        for (Communication comm : comms) {
+            long key = key(comm.getTimestamp());
+            sorted &= size == 0 || key >= state.keys[size - 1];
+            state.set(size++, key, comm.getId(), comm);
+        }
+        current = new State(state.keys, state.ids, state.items, size, sorted);
+    }
+
+    // The state itself, or a copy with room for that many more entries
+    private static State withRoom(State state, int extra) {
+        int size = state.size;
+        if (size + extra <= state.keys.length) {
+            return state;
+        }
+        int capacity = Math.max(Math.max(4, size + (size >> 1)), size + extra);
+        return new State(Arrays.copyOf(state.keys, capacity),
+                state.ids == null ? null : Arrays.copyOf(state.ids, capacity),
+                state.items == null ? null : Arrays.copyOf(state.items, capacity),
+                size, state.sorted);
+    }
+
+    public int size() {
+        return current.size;
+    }
+
+    // The n most recent communications, newest first
+    public List<Communication> latest(int n) {
+        State state = sorted();
+        int count = Math.max(0, Math.min(n, state.size));
+        return new View(state, resolver, state.size - count, state.size, true);
+    }
+
+    // Communications at or after from and before to, oldest first
+    public List<Communication> between(LocalDateTime from, LocalDateTime to) {
+        State state = sorted();
+        int start = lowerBound(state, key(from));
+        int end = Math.max(start, lowerBound(state, key(to)));
+        return new View(state, resolver, start, end, false);
+    }
+
+    // Everything, oldest first
+    public List<Communication> all() {
+        State state = sorted();
+        return new View(state, resolver, 0, state.size, false);
+    }
+
+    private State sorted() {
+        State state = current;
+        if (state.sorted) {
+            return state;
+        }
+        synchronized (this) {
+            state = current;
+            if (!state.sorted) {
+                int size = state.size;
+                long[] keys = Arrays.copyOf(state.keys, size);
+                int[] order = new int[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                sort(state, keys, order, keys.clone(), order.clone(), 0, size);
+                state = state.reorder(keys, order);
+                current = state;
+            }
+            return state;
+        }
+    }
+
+    // Stable merge sort of the keys together with each entry's position, so
+    // comparisons use the stored keys rather than asking each communication
+    // for its timestamp, and the entries are moved once at the end. Runs that
+    // are already in order are not merged, so a list that is mostly sorted
+    // costs little more than one pass.
+    private static void sort(State state, long[] keys, int[] order, long[] keyBuffer, int[] orderBuffer,
+                             int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(state, keys, order, keyBuffer, orderBuffer, from, mid);
+        sort(state, keys, order, keyBuffer, orderBuffer, mid, to);
+        if (compare(state, keys, order, mid - 1, mid) <= 0) {
+            return;
+        }
+        System.arraycopy(keys, from, keyBuffer, from, to - from);
+        System.arraycopy(order, from, orderBuffer, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && compare(state, keyBuffer, orderBuffer, left, right) <= 0)) {
+                keys[i] = keyBuffer[left];
+                order[i] = orderBuffer[left++];
+            } else {
+                keys[i] = keyBuffer[right];
+                order[i] = orderBuffer[right++];
+            }
+        }
+    }
+
+    // Earlier time first; the id breaks ties between communications logged in the same instant
+    private static int compare(State state, long[] keys, int[] order, int a, int b) {
+        int byTime = Long.compare(keys[a], keys[b]);
+        return byTime != 0 ? byTime : Integer.compare(state.id(order[a]), state.id(order[b]));
+    }
+
+    private static int lowerBound(State state, long key) {
+        int low = 0;
+        int high = state.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (state.keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Nanoseconds since the epoch; fits in a long until the year 2262
+    private static long key(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.getNano();
+    }
+
+    // Either ids or items is set, depending on whether the timeline has a resolver
+    private static final class State {
+        final long[] keys;
+        final int[] ids;
+        final Communication[] items;
+        final int size;
+        final boolean sorted;
+
+        State(long[] keys, int[] ids, Communication[] items, int size, boolean sorted) {
+            this.keys = keys;
+            this.ids = ids;
+            this.items = items;
+            this.size = size;
+            this.sorted = sorted;
+        }
+
+        // Writes past size only, where no view reads
+        void set(int index, long key, int id, Communication comm) {
+            keys[index] = key;
+            if (ids != null) {
+                ids[index] = id;
+            } else {
+                items[index] = comm;
+            }
+        }
+
+        int id(int index) {
+            return ids != null ? ids[index] : items[index].getId();
+        }
+
+        // A sorted state with the entries in the given order and the already sorted keys
+        State reorder(long[] sortedKeys, int[] order) {
+            int[] sortedIds = ids == null ? null : new int[size];
+            Communication[] sortedItems = items == null ? null : new Communication[size];
+            for (int i = 0; i < size; i++) {
+                if (ids != null) {
+                    sortedIds[i] = ids[order[i]];
+                } else {
+                    sortedItems[i] = items[order[i]];
+                }
+            }
+            return new State(sortedKeys, sortedIds, sortedItems, size, true);
+        }
+    }
+
+    // Read-only window over a sorted state, optionally newest first
+    private static final class View extends AbstractList<Communication> {
+        private final State state;
+        private final IntFunction<Communication> resolver;
+        private final int start;
+        private final int end;
+        private final boolean reversed;
+
+        View(State state, IntFunction<Communication> resolver, int start, int end, boolean reversed) {
+            this.state = state;
+            this.resolver = resolver;
+            this.start = start;
+            this.end = end;
+            this.reversed = reversed;
+        }
+
+        @Override
+        public Communication get(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (end - start));
+            }
+            int position = reversed ? end - 1 - index : start + index;
+            return state.items != null ? state.items[position] : resolver.apply(state.ids[position]);
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+}
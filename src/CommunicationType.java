@@ -0,0 +1,65 @@
+import java.util.Arrays;
+
+// The kinds of communication the CRM records. Stored as the lowercase label
+// in the text format and as the code byte in the binary format. OTHER stands
+// for any label a stored record has that is none of the known ones; the
+// record keeps that label and writes it back unchanged.
+public enum CommunicationType {
+    PHONE("phone"),
+    EMAIL("email"),
+    MEETING("meeting"),
+    OTHER("other");
+
+    private static final CommunicationType[] VALUES = values();
+    // The types a user can choose, without OTHER
+    static final CommunicationType[] KNOWN = Arrays.copyOf(VALUES, OTHER.ordinal());
+
+    private final String label;
+
+    CommunicationType(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    // Saved in binary snapshots, so new types go at the end
+    byte code() {
+        return (byte) ordinal();
+    }
+
+    static CommunicationType fromCode(int code) {
+        if (code < 0 || code >= VALUES.length) {
+            throw new IllegalArgumentException("Unknown communication type code " + code);
+        }
+        return VALUES[code];
+    }
+
+    // Accepts the label in any case, e.g. "Email"
+    public static CommunicationType fromLabel(String label) {
+        for (CommunicationType type : KNOWN) {
+            if (type.label.equalsIgnoreCase(label)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown communication type '" + label + "', expected phone, email or meeting");
+    }
+
+    // For labels read back from storage, which are never rejected: surrounding
+    // spaces and case are ignored, and anything else is OTHER
+    static CommunicationType fromStoredLabel(String label) {
+        String trimmed = label.trim();
+        for (CommunicationType type : KNOWN) {
+            if (type.label.equalsIgnoreCase(trimmed)) {
+                return type;
+            }
+        }
+        return OTHER;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
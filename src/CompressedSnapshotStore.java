@@ -0,0 +1,376 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// The customers.txt records in deflate-compressed blocks of whole customers,
+// in id order, with an index of the blocks at the end. Layout:
+//   header:  magic "CRMZ", version
+//   blocks:  each about BLOCK_SIZE bytes of text before compression
+//   index:   per block: first and last customer id, offset, compressed and text length
+//   trailer: block, customer, communication and task counts, index offset, magic
+// A full load inflates and parses the blocks in parallel; readRecord finds
+// one customer by inflating only the block that holds it.
+public class CompressedSnapshotStore implements SnapshotStore {
+    private static final int MAGIC = 0x43524D5A;
+    private static final int VERSION = 1;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int TRAILER_SIZE = 4 * 4 + 8 + 4;
+    private static final byte[] CUSTOMER_PREFIX = "CUSTOMER|".getBytes();
+
+    private final String path;
+    // Same charset the text format is written and parsed with
+    private final Charset charset = Charset.defaultCharset();
+    // Readers hold the read lock from taking the index until they are done
+    // with the file; replacing the file and its index takes the write lock
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+    // Index of the file as last saved or read; null until then
+    private volatile Index index;
+
+    private static final class Block {
+        final int firstId;
+        final int lastId;
+        final long offset;
+        final int compressedLength;
+        final int length;
+
+        Block(int firstId, int lastId, long offset, int compressedLength, int length) {
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.length = length;
+        }
+    }
+
+    private static final class Index {
+        final Block[] blocks;
+        final int customers;
+        final int communications;
+        final int tasks;
+
+        Index(Block[] blocks, int customers, int communications, int tasks) {
+            this.blocks = blocks;
+            this.customers = customers;
+            this.communications = communications;
+            this.tasks = tasks;
+        }
+    }
+
+    // Text of one block before compression, and its compressed form once done
+    private static final class PendingBlock {
+        final int firstId;
+        final int lastId;
+        final byte[] text;
+        final int length;
+        byte[] compressed;
+        int compressedLength;
+
+        PendingBlock(int firstId, int lastId, byte[] text, int length) {
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.text = text;
+            this.length = length;
+        }
+    }
+
+    public CompressedSnapshotStore(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public boolean exists() {
+        return new File(path).exists();
+    }
+
+    public int getBlockCount() throws IOException {
+        fileLock.readLock().lock();
+        try {
+            return index().blocks.length;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    // Blocks are compressed on the pool while the next ones are filled, and
+    // written in order; only a few are held in memory at once
+    @Override
+    public void save(List<Customer> customers) throws IOException {
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+        int maxPending = ForkJoinPool.commonPool().getParallelism() * 2;
+        ArrayDeque<ForkJoinTask<PendingBlock>> pending = new ArrayDeque<>();
+        List<Block> blocks = new ArrayList<>();
+        int communications = 0;
+        int tasks = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile()), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long[] offset = {8};
+            ByteArrayOutputStream text = new ByteArrayOutputStream(BLOCK_SIZE + 4096);
+            int firstId = 0;
+            int lastId = 0;
+            for (Customer customer : customers) {
+                if (text.size() == 0) {
+                    firstId = customer.getId();
+                }
+                lastId = customer.getId();
+                communications += customer.getCommunications().size();
+                tasks += customer.getTasks().size();
+                text.writeBytes(customer.toFileString().getBytes(charset));
+                if (text.size() >= BLOCK_SIZE) {
+                    pending.add(compress(firstId, lastId, text));
+                    text.reset();
+                    while (pending.size() > maxPending) {
+                        writeBlock(out, pending.poll().join(), offset, blocks);
+                    }
+                }
+            }
+            if (text.size() > 0) {
+                pending.add(compress(firstId, lastId, text));
+            }
+            while (!pending.isEmpty()) {
+                writeBlock(out, pending.poll().join(), offset, blocks);
+            }
+
+            long indexOffset = offset[0];
+            for (Block block : blocks) {
+                out.writeInt(block.firstId);
+                out.writeInt(block.lastId);
+                out.writeLong(block.offset);
+                out.writeInt(block.compressedLength);
+                out.writeInt(block.length);
+            }
+            out.writeInt(blocks.size());
+            out.writeInt(customers.size());
+            out.writeInt(communications);
+            out.writeInt(tasks);
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+        }
+        // Records being read keep the old file and index until this swap
+        fileLock.writeLock().lock();
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            index = new Index(blocks.toArray(new Block[0]), customers.size(), communications, tasks);
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    private static ForkJoinTask<PendingBlock> compress(int firstId, int lastId, ByteArrayOutputStream text) {
+        PendingBlock block = new PendingBlock(firstId, lastId, text.toByteArray(), text.size());
+        return ForkJoinPool.commonPool().submit(() -> {
+            Deflater deflater = new Deflater();
+            try {
+                deflater.setInput(block.text, 0, block.length);
+                deflater.finish();
+                byte[] compressed = new byte[Math.max(64, block.length / 2)];
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == compressed.length) {
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    }
+                    length += deflater.deflate(compressed, length, compressed.length - length);
+                }
+                block.compressed = compressed;
+                block.compressedLength = length;
+                return block;
+            } finally {
+                deflater.end();
+            }
+        });
+    }
+
+    private static void writeBlock(DataOutputStream out, PendingBlock block, long[] offset, List<Block> blocks)
+            throws IOException {
+        out.write(block.compressed, 0, block.compressedLength);
+        blocks.add(new Block(block.firstId, block.lastId, offset[0], block.compressedLength, block.length));
+        offset[0] += block.compressedLength;
+    }
+
+    @Override
+    public int[] load(CRMManager manager) throws IOException {
+        fileLock.readLock().lock();
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            Index loaded = readIndex(channel);
+            manager.ensureCapacity(loaded.customers, loaded.communications, loaded.tasks);
+            FastLoader loader = new FastLoader();
+            List<ForkJoinTask<FastLoader.Chunk>> tasks = new ArrayList<>(loaded.blocks.length);
+            for (Block block : loaded.blocks) {
+                tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                    try {
+                        return loader.parseChunk(ByteBuffer.wrap(inflate(channel, block)));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            int[] maxIds = FastLoader.restore(tasks, manager, path);
+            index = loaded;
+            return maxIds;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    // The customer's lines in the customers.txt format, or null if the file
+    // does not hold the customer
+    public String readRecord(int customerId) throws IOException {
+        byte[] text;
+        fileLock.readLock().lock();
+        try {
+            Block block = find(index(), customerId);
+            if (block == null) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+                text = inflate(channel, block);
+            }
+        } finally {
+            fileLock.readLock().unlock();
+        }
+        byte[] prefix = ("CUSTOMER|" + customerId + "|").getBytes();
+        int start = -1;
+        int end = text.length;
+        for (int line = 0; line < text.length; line = nextLine(text, line)) {
+            if (start < 0 && startsWith(text, line, prefix)) {
+                start = line;
+            } else if (start >= 0 && startsWith(text, line, CUSTOMER_PREFIX)) {
+                end = line;
+                break;
+            }
+        }
+        return start < 0 ? null : new String(text, start, end - start, charset);
+    }
+
+    // The block whose id range holds the customer
+    private static Block find(Index index, int customerId) {
+        Block[] blocks = index.blocks;
+        int low = 0;
+        int high = blocks.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blocks[mid].lastId < customerId) {
+                low = mid + 1;
+            } else if (blocks[mid].firstId > customerId) {
+                high = mid - 1;
+            } else {
+                return blocks[mid];
+            }
+        }
+        return null;
+    }
+
+    private Index index() throws IOException {
+        Index current = index;
+        if (current == null) {
+            try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+                current = readIndex(channel);
+            }
+            index = current;
+        }
+        return current;
+    }
+
+    private Index readIndex(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < 8 + TRAILER_SIZE) {
+            throw new IOException(path + " is not a compressed CRM snapshot");
+        }
+        ByteBuffer header = read(channel, 0, 8);
+        ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+        if (header.getInt() != MAGIC || trailer.getInt(TRAILER_SIZE - 4) != MAGIC) {
+            throw new IOException(path + " is not a compressed CRM snapshot");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + " in " + path);
+        }
+        int blockCount = trailer.getInt();
+        int customers = trailer.getInt();
+        int communications = trailer.getInt();
+        int tasks = trailer.getInt();
+        long indexOffset = trailer.getLong();
+        ByteBuffer entries = read(channel, indexOffset, blockCount * 24);
+        Block[] blocks = new Block[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            blocks[i] = new Block(entries.getInt(), entries.getInt(), entries.getLong(), entries.getInt(), entries.getInt());
+        }
+        return new Index(blocks, customers, communications, tasks);
+    }
+
+    private static byte[] inflate(FileChannel channel, Block block) throws IOException {
+        ByteBuffer compressed = read(channel, block.offset, block.compressedLength);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array(), 0, block.compressedLength);
+            byte[] text = new byte[block.length];
+            int length = 0;
+            while (length < text.length && !inflater.finished()) {
+                int read = inflater.inflate(text, length, text.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += read;
+            }
+            if (length != text.length) {
+                throw new IOException("Truncated block at offset " + block.offset);
+            }
+            return text;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block at offset " + block.offset + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // Reads length bytes at position; FileChannel reads at a position can run in parallel
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of snapshot at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int nextLine(byte[] text, int from) {
+        int i = from;
+        while (i < text.length && text[i] != '\n') {
+            i++;
+        }
+        return i + 1;
+    }
+
+    private static boolean startsWith(byte[] text, int from, byte[] prefix) {
+        if (from + prefix.length > text.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (text[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,530 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// JSON over HTTP access to a CRMManager, using the JDK's built-in server.
+// Every response has a fixed length, so clients can keep connections alive.
+//
+//   POST /customers                                  {"name","email","phone","notes"}
+//   GET  /customers?after=0&limit=50&sort=id         one page of customers, sort id, name or email
+//   GET  /customers/search?q=smith&after=0&limit=50&sort=id
+//   GET  /customers/{id}
+//   GET  /customers/{id}/communications?offset&limit
+//   POST /customers/{id}/communications              {"type","description","tags"}
+//   GET  /customers/{id}/tasks?offset&limit
+//   POST /customers/{id}/tasks                       {"description","dueDate" or "dueInDays","priority"}
+//   POST /customers/{id}/tasks/{taskId}/complete
+//   GET  /tasks?status=open&priority=high&after=0&limit=50  status open or completed, priority optional
+//   POST /tasks/{taskId}/complete
+//   GET  /reports/overall
+//   GET  /reports/customers/{id}
+//
+//   java -Dcrm.port=8080 CrmHttpServer
+public class CrmHttpServer {
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 500;
+
+    static {
+        // The server writes response headers and body separately; with Nagle's
+        // algorithm on, the body then waits ~40 ms for the client's delayed ACK
+        // on every keep-alive request. Read once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    // Turned into an error response by the dispatcher
+    static class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private final CRMManager crm;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public CrmHttpServer(CRMManager crm, InetSocketAddress address) throws IOException {
+        this.crm = crm;
+        this.server = HttpServer.create(address, 1024);
+        this.executor = newHandlerExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    // One virtual thread per request where the JDK has them (21+), so a handler
+    // blocked on I/O costs no platform thread; otherwise a fixed pool
+    static ExecutorService newHandlerExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(Math.max(16, 4 * Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "crm-http-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int status = 200;
+        Object body;
+        try {
+            String method = exchange.getRequestMethod();
+            String[] path = segments(exchange.getRequestURI().getRawPath());
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            Object result = route(method, path, query, exchange);
+            if (method.equals("POST") && !path[path.length - 1].equals("complete")) {
+                status = 201;
+            }
+            body = result;
+        } catch (HttpError e) {
+            status = e.status;
+            body = error(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = error("Internal error: " + e);
+        }
+
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Object route(String method, String[] path, Map<String, String> query, HttpExchange exchange) throws IOException {
+        if (path.length >= 1 && path[0].equals("customers")) {
+            if (path.length == 1) {
+                if (method.equals("GET")) {
+                    return customerPage(query, "/customers", null);
+                }
+                requireMethod(method, "POST");
+                return createCustomer(body(exchange));
+            }
+            if (path.length == 2 && path[1].equals("search")) {
+                requireMethod(method, "GET");
+                String keyword = query.get("q");
+                if (keyword == null || keyword.isEmpty()) {
+                    throw new HttpError(400, "Missing query parameter q");
+                }
+                return customerPage(query, "/customers/search", keyword);
+            }
+            Customer customer = customer(path[1]);
+            if (path.length == 2) {
+                requireMethod(method, "GET");
+                return customerJson(customer);
+            }
+            String base = "/customers/" + customer.getId() + "/" + path[2];
+            if (path.length == 3 && path[2].equals("communications")) {
+                if (method.equals("GET")) {
+                    return page(customer.getCommunications(), query, base, CrmHttpServer::communicationJson);
+                }
+                requireMethod(method, "POST");
+                return addCommunication(customer, body(exchange));
+            }
+            if (path.length == 3 && path[2].equals("tasks")) {
+                if (method.equals("GET")) {
+                    return page(customer.getTasks(), query, base, CrmHttpServer::taskJson);
+                }
+                requireMethod(method, "POST");
+                return addTask(customer, body(exchange));
+            }
+            if (path.length == 5 && path[2].equals("tasks") && path[4].equals("complete")) {
+                requireMethod(method, "POST");
+                int taskId = id(path[3]);
+                if (!crm.completeTask(customer.getId(), taskId)) {
+                    throw new HttpError(404, "Task not found");
+                }
+                return taskJson(crm.findTaskById(taskId));
+            }
+        }
+        if (path.length >= 1 && path[0].equals("tasks")) {
+            if (path.length == 1) {
+                requireMethod(method, "GET");
+                return tasks(query);
+            }
+            if (path.length == 3 && path[2].equals("complete")) {
+                requireMethod(method, "POST");
+                int taskId = id(path[1]);
+                if (!crm.completeTask(taskId)) {
+                    throw new HttpError(404, "Task not found");
+                }
+                return taskJson(crm.findTaskById(taskId));
+            }
+        }
+        if (path.length >= 2 && path[0].equals("reports")) {
+            requireMethod(method, "GET");
+            if (path.length == 2 && path[1].equals("overall")) {
+                return overallReport();
+            }
+            if (path.length == 3 && path[1].equals("customers")) {
+                return customerReport(customer(path[2]));
+            }
+        }
+        throw new HttpError(404, "Not found");
+    }
+
+    // Tasks across all customers from the task status index. Keyset pages
+    // like the customer list: after is the id of the last task on the previous
+    // page, so only the tasks on this page are looked up.
+    private Object tasks(Map<String, String> query) {
+        String status = query.getOrDefault("status", "open");
+        if (!status.equals("open") && !status.equals("completed")) {
+            throw new HttpError(400, "status must be open or completed");
+        }
+        if (query.containsKey("offset")) {
+            throw new HttpError(400, "Task pages are selected with after, not offset");
+        }
+        int after = intParam(query, "after", 0);
+        int limit = Math.min(intParam(query, "limit", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+        if (after < 0 || limit < 1) {
+            throw new HttpError(400, "after must not be negative and limit must be positive");
+        }
+        boolean completed = status.equals("completed");
+        String priority = query.get("priority");
+        TaskPriority level = priority == null ? null : TaskPriority.fromLabel(priority);
+        // One more than the page, to tell whether there is a next one
+        List<Task> tasks = level == null
+                ? crm.findTasks(completed, after, limit + 1)
+                : crm.findTasks(level, completed, after, limit + 1);
+        boolean hasNext = tasks.size() > limit;
+        if (hasNext) {
+            tasks = tasks.subList(0, limit);
+        }
+        String base = "/tasks?status=" + status;
+        if (priority != null) {
+            base += "&priority=" + URLEncoder.encode(priority, StandardCharsets.UTF_8);
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("items", list(tasks, CrmHttpServer::taskJson));
+        json.put("after", after);
+        json.put("limit", limit);
+        json.put("total", level == null ? crm.countTasks(completed) : crm.countTasks(level, completed));
+        json.put("next", hasNext ? base + "&after=" + tasks.get(tasks.size() - 1).getId() + "&limit=" + limit : null);
+        return json;
+    }
+
+    private Object createCustomer(Map<String, Object> body) {
+        Customer customer = CRMFactory.createCustomer(required(body, "name"), optional(body, "email"),
+                optional(body, "phone"), optional(body, "notes"));
+        crm.addCustomer(customer);
+        return customerJson(customer);
+    }
+
+    private Object addCommunication(Customer customer, Map<String, Object> body) {
+        Communication comm = CRMFactory.createCommunication(customer.getId(), required(body, "type"),
+                required(body, "description"), optional(body, "tags"));
+        crm.addCommunicationToCustomer(customer.getId(), comm);
+        return communicationJson(comm);
+    }
+
+    private Object addTask(Customer customer, Map<String, Object> body) {
+        LocalDateTime dueDate;
+        if (body.get("dueDate") != null) {
+            dueDate = dateTime(required(body, "dueDate"));
+        } else if (body.get("dueInDays") instanceof Number) {
+            dueDate = LocalDateTime.now().plusDays(((Number) body.get("dueInDays")).longValue());
+        } else {
+            throw new HttpError(400, "Missing field dueDate or dueInDays");
+        }
+        Task task = CRMFactory.createTask(customer.getId(), required(body, "description"), dueDate,
+                required(body, "priority"));
+        crm.addTaskToCustomer(customer.getId(), task);
+        return taskJson(task);
+    }
+
+    // Reports are read from a snapshot so their figures agree with each other
+    private Object overallReport() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        try (CrmSnapshot snapshot = crm.openSnapshot()) {
+            long totalTasks = snapshot.getTotalTasks();
+            long completedTasks = snapshot.getCompletedTasks();
+            json.put("customers", snapshot.getCustomerCount());
+            json.put("communications", snapshot.getTotalCommunications());
+            json.put("tasks", totalTasks);
+            json.put("completedTasks", completedTasks);
+            json.put("completionRate", totalTasks > 0 ? (double) completedTasks / totalTasks * 100 : null);
+        }
+        return json;
+    }
+
+    private Object customerReport(Customer live) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        try (CrmSnapshot snapshot = crm.openSnapshot()) {
+            Customer customer = snapshot.findCustomerById(live.getId());
+            if (customer == null) {
+                throw new HttpError(404, "Customer not found");
+            }
+            json.put("customer", customerJson(customer));
+            json.put("communications", list(customer.getCommunications(), CrmHttpServer::communicationJson));
+            json.put("tasks", list(customer.getTasks(), CrmHttpServer::taskJson));
+        }
+        return json;
+    }
+
+    // Keyset pagination: after is the id of the last customer on the previous
+    // page, so only one page of customers is looked at and built per request
+    private Object customerPage(Map<String, String> query, String path, String keyword) {
+        if (query.containsKey("offset")) {
+            throw new HttpError(400, "Customer pages are selected with after, not offset");
+        }
+        int after = intParam(query, "after", 0);
+        int limit = Math.min(intParam(query, "limit", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+        if (after < 0 || limit < 1) {
+            throw new HttpError(400, "after must not be negative and limit must be positive");
+        }
+        CustomerPage.Sort sort = sort(query.get("sort"));
+        CustomerPage page = keyword == null
+                ? crm.getCustomerPage(after, limit, sort)
+                : crm.searchCustomerPage(keyword, after, limit, sort);
+        String sortName = sort.name().toLowerCase();
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("items", list(page.getItems(), this::customerJson));
+        json.put("after", after);
+        json.put("limit", limit);
+        json.put("sort", sortName);
+        if (keyword == null) {
+            // Counting search matches would mean running the whole search
+            json.put("total", crm.getCustomerCount());
+        }
+        String next = null;
+        if (page.hasNext()) {
+            String search = keyword != null ? "q=" + URLEncoder.encode(keyword, StandardCharsets.UTF_8) + "&" : "";
+            next = path + "?" + search + "sort=" + sortName + "&after=" + page.getNextAfter() + "&limit=" + limit;
+        }
+        json.put("next", next);
+        return json;
+    }
+
+    private static CustomerPage.Sort sort(String value) {
+        if (value == null || value.isEmpty()) {
+            return CustomerPage.Sort.ID;
+        }
+        try {
+            return CustomerPage.Sort.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new HttpError(400, "Bad sort " + value + ", expected id, name or email");
+        }
+    }
+
+    // Offset pagination with a link to the next page when there is one
+    private static <T> Object page(List<T> all, Map<String, String> query, String path,
+                                   Function<T, Object> toJson) {
+        int offset = intParam(query, "offset", 0);
+        int limit = Math.min(intParam(query, "limit", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+        if (offset < 0 || limit < 1) {
+            throw new HttpError(400, "offset must not be negative and limit must be positive");
+        }
+        int from = Math.min(offset, all.size());
+        int to = Math.min(all.size(), from + limit);
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("items", list(all.subList(from, to), toJson));
+        json.put("offset", offset);
+        json.put("limit", limit);
+        json.put("total", all.size());
+        String next = null;
+        if (to < all.size()) {
+            next = path + (path.contains("?") ? "&" : "?") + "offset=" + to + "&limit=" + limit;
+        }
+        json.put("next", next);
+        return json;
+    }
+
+    private static <T> List<Object> list(List<T> items, Function<T, Object> toJson) {
+        List<Object> json = new ArrayList<>(items.size());
+        for (T item : items) {
+            json.add(toJson.apply(item));
+        }
+        return json;
+    }
+
+    private Object customerJson(Customer customer) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", customer.getId());
+        json.put("name", customer.getName());
+        json.put("email", customer.getEmail());
+        json.put("phone", customer.getPhone());
+        json.put("notes", customer.getNotes());
+        json.put("communications", customer.getCommunications().size());
+        json.put("tasks", customer.getTasks().size());
+        return json;
+    }
+
+    static Object communicationJson(Communication comm) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", comm.getId());
+        json.put("customerId", comm.getCustomerId());
+        json.put("type", comm.getTypeLabel());
+        json.put("description", comm.getDescription());
+        json.put("timestamp", comm.getTimestamp());
+        json.put("tags", comm.getTags());
+        return json;
+    }
+
+    static Object taskJson(Task task) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", task.getId());
+        json.put("customerId", task.getCustomerId());
+        json.put("description", task.getDescription());
+        json.put("dueDate", task.getDueDate());
+        json.put("priority", task.getPriorityLabel());
+        json.put("completed", task.isCompleted());
+        return json;
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("error", message);
+        return json;
+    }
+
+    private Customer customer(String id) {
+        Customer customer = crm.findCustomerById(id(id));
+        if (customer == null) {
+            throw new HttpError(404, "Customer not found");
+        }
+        return customer;
+    }
+
+    private static int id(String segment) {
+        try {
+            return Integer.parseInt(segment);
+        } catch (NumberFormatException e) {
+            throw new HttpError(404, "Not found");
+        }
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equals(expected)) {
+            throw new HttpError(405, "Method not allowed");
+        }
+    }
+
+    private static Map<String, Object> body(HttpExchange exchange) throws IOException {
+        String text = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        return Json.parseObject(text.isBlank() ? "{}" : text);
+    }
+
+    private static String required(Map<String, Object> body, String field) {
+        String value = optional(body, field);
+        if (value.isEmpty()) {
+            throw new HttpError(400, "Missing field " + field);
+        }
+        return value;
+    }
+
+    // Text fields end up in the pipe-delimited data file, one record per line
+    private static String optional(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf('|') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            throw new HttpError(400, "Field " + field + " must not contain '|' or line breaks");
+        }
+        return text;
+    }
+
+    private static LocalDateTime dateTime(String text) {
+        try {
+            return text.length() == 10 ? LocalDate.parse(text).atStartOfDay() : LocalDateTime.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new HttpError(400, "Bad date " + text + ", expected yyyy-MM-dd or yyyy-MM-ddTHH:mm");
+        }
+    }
+
+    private static int intParam(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "Bad number for " + name);
+        }
+    }
+
+    private static String[] segments(String path) {
+        String trimmed = path.replaceAll("^/+|/+$", "");
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/+");
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.getInteger("crm.port", 8080);
+        CRMManager crm = CRMManager.getInstance();
+        crm.addObserver(new NotificationManager("HTTP"));
+        crm.getMetrics().registerMBean();
+        long metricsDump = Long.getLong("crm.metricsDump", 0);
+        if (metricsDump > 0) {
+            crm.getMetrics().startDump(metricsDump, TimeUnit.SECONDS);
+        }
+        CrmHttpServer server = new CrmHttpServer(crm, new InetSocketAddress("localhost", port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            crm.saveToFile();
+            crm.close();
+        }));
+        server.start();
+        System.out.println("CRM API listening on http://localhost:" + server.getPort());
+    }
+}
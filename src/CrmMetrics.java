@@ -0,0 +1,271 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// How often each CRMManager operation ran and how long it took, the bytes
+// moved by saves and loads, and the sizes of the indexes. Recording one call
+// is a clock read and a few atomic adds on preallocated histograms.
+public class CrmMetrics implements CrmMetricsMBean {
+    public enum Operation {
+        ADD_CUSTOMER("addCustomer"),
+        LIST_CUSTOMERS("listCustomers"),
+        STREAM_CUSTOMERS("streamCustomers"),
+        FIND_CUSTOMER("findCustomer"),
+        FIND_COMMUNICATION("findComm"),
+        FIND_TASK("findTask"),
+        SEARCH("search"),
+        CUSTOMER_PAGE("customerPage"),
+        SEARCH_PAGE("searchPage"),
+        STREAM_SEARCH("streamSearch"),
+        OPEN_SNAPSHOT("openSnapshot"),
+        ADD_COMMUNICATION("addComm"),
+        ADD_TASK("addTask"),
+        COMPLETE_TASK("completeTask"),
+        TASK_QUERY("taskQuery"),
+        COUNT_TASKS("countTasks"),
+        COMMUNICATIONS_BETWEEN("commsBetween"),
+        COMMUNICATIONS_ON("commsOn"),
+        LATEST_COMMUNICATIONS("latestComms"),
+        TAG_SEARCH("tagSearch"),
+        TAG_FREQUENCY("tagFrequency"),
+        TOP_TAGS("topTags"),
+        CUSTOMER_REPORT("customerReport"),
+        OVERALL_REPORT("overallReport"),
+        NOTIFY("notify"),
+        SAVE("save"),
+        LOAD("load");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        static Operation byLabel(String label) {
+            for (Operation op : values()) {
+                if (op.label.equals(label)) {
+                    return op;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation: " + label);
+        }
+    }
+
+    static final String OBJECT_NAME = "crm:type=Metrics";
+
+    private final CRMManager crm;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final AtomicLong lastSaveBytes = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+    private final AtomicLong lastLoadBytes = new AtomicLong();
+    private final AtomicLong loadedBytes = new AtomicLong();
+    private ScheduledExecutorService dumper;
+
+    CrmMetrics(CRMManager crm) {
+        this.crm = crm;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    // Records a call that began at startNanos, as read from System.nanoTime
+    void record(Operation op, long startNanos) {
+        latencies[op.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    void recordSave(long startNanos, long bytes) {
+        record(Operation.SAVE, startNanos);
+        lastSaveBytes.set(bytes);
+        savedBytes.addAndGet(bytes);
+    }
+
+    void recordLoad(long startNanos, long bytes) {
+        record(Operation.LOAD, startNanos);
+        lastLoadBytes.set(bytes);
+        loadedBytes.addAndGet(bytes);
+    }
+
+    public LatencyHistogram getLatencies(Operation op) {
+        return latencies[op.ordinal()];
+    }
+
+    @Override
+    public String[] getOperations() {
+        Operation[] ops = Operation.values();
+        String[] labels = new String[ops.length];
+        for (int i = 0; i < ops.length; i++) {
+            labels[i] = ops[i].label;
+        }
+        return labels;
+    }
+
+    @Override
+    public long getCount(String operation) {
+        return getLatencies(Operation.byLabel(operation)).count();
+    }
+
+    @Override
+    public double getMeanMicros(String operation) {
+        return getLatencies(Operation.byLabel(operation)).mean() / 1000.0;
+    }
+
+    @Override
+    public double getPercentileMicros(String operation, double percentile) {
+        return getLatencies(Operation.byLabel(operation)).percentile(percentile / 100) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros(String operation) {
+        return getLatencies(Operation.byLabel(operation)).max() / 1000.0;
+    }
+
+    @Override
+    public long getSaves() {
+        return getLatencies(Operation.SAVE).count();
+    }
+
+    @Override
+    public long getLastSaveBytes() {
+        return lastSaveBytes.get();
+    }
+
+    @Override
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    @Override
+    public long getLoads() {
+        return getLatencies(Operation.LOAD).count();
+    }
+
+    @Override
+    public long getLastLoadBytes() {
+        return lastLoadBytes.get();
+    }
+
+    @Override
+    public long getLoadedBytes() {
+        return loadedBytes.get();
+    }
+
+    @Override
+    public int getCustomerCount() {
+        return crm.getCustomerCount();
+    }
+
+    @Override
+    public int getCommunicationIndexSize() {
+        return crm.communicationIndexSize();
+    }
+
+    @Override
+    public int getTaskIndexSize() {
+        return crm.taskIndexSize();
+    }
+
+    @Override
+    public int getTimelineSize() {
+        return crm.timelineSize();
+    }
+
+    @Override
+    public int getTagCount() {
+        return crm.tagCount();
+    }
+
+    @Override
+    public int getTrigramCount() {
+        return crm.trigramCount();
+    }
+
+    @Override
+    public long getOffHeapBytes() {
+        OffHeapCommunicationStore offHeap = crm.getOffHeapHistory();
+        return offHeap == null ? 0 : offHeap.offHeapBytes();
+    }
+
+    @Override
+    public long getResidentHistoryRecords() {
+        SnapshotStore store = crm.getStore();
+        return store instanceof LazyHistoryStore ? ((LazyHistoryStore) store).residentRecords() : 0;
+    }
+
+    // Operations that have run at least once, then persistence and index sizes
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder("=== CRM METRICS ===\n");
+        report.append(LatencySummary.header()).append('\n');
+        for (Operation op : Operation.values()) {
+            LatencyHistogram histogram = getLatencies(op);
+            if (histogram.count() > 0) {
+                report.append(new LatencySummary(op.label, histogram)).append('\n');
+            }
+        }
+        report.append("Saves: ").append(getSaves()).append(", last ").append(getLastSaveBytes())
+                .append(" bytes, total ").append(getSavedBytes()).append(" bytes\n");
+        report.append("Loads: ").append(getLoads()).append(", last ").append(getLastLoadBytes())
+                .append(" bytes, total ").append(getLoadedBytes()).append(" bytes\n");
+        report.append("Indexes: customers ").append(getCustomerCount())
+                .append(", communications ").append(getCommunicationIndexSize())
+                .append(", tasks ").append(getTaskIndexSize())
+                .append(", timeline ").append(getTimelineSize())
+                .append(", tags ").append(getTagCount())
+                .append(", trigrams ").append(getTrigramCount()).append('\n');
+        report.append("Off-heap bytes: ").append(getOffHeapBytes())
+                .append(", resident history records: ").append(getResidentHistoryRecords());
+        return report.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : latencies) {
+            histogram.reset();
+        }
+        lastSaveBytes.set(0);
+        savedBytes.set(0);
+        lastLoadBytes.set(0);
+        loadedBytes.set(0);
+    }
+
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            System.out.println("Error registering metrics: " + e.getMessage());
+        }
+    }
+
+    // Prints the report every period on a background thread until stopDump
+    public synchronized void startDump(long period, TimeUnit unit) {
+        if (dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "crm-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> System.out.println("\n" + getReport()), period, period, unit);
+    }
+
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+// Management interface of CrmMetrics, registered as crm:type=Metrics.
+// Latencies are in microseconds.
+public interface CrmMetricsMBean {
+    String[] getOperations();
+
+    long getCount(String operation);
+
+    double getMeanMicros(String operation);
+
+    double getPercentileMicros(String operation, double percentile);
+
+    double getMaxMicros(String operation);
+
+    long getSaves();
+
+    long getLastSaveBytes();
+
+    long getSavedBytes();
+
+    long getLoads();
+
+    long getLastLoadBytes();
+
+    long getLoadedBytes();
+
+    int getCustomerCount();
+
+    int getCommunicationIndexSize();
+
+    int getTaskIndexSize();
+
+    int getTimelineSize();
+
+    int getTagCount();
+
+    int getTrigramCount();
+
+    long getOffHeapBytes();
+
+    long getResidentHistoryRecords();
+
+    String getReport();
+
+    void reset();
+}
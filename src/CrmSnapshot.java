@@ -0,0 +1,80 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// A CRMManager as it was at one version. Customers come back as read-only
+// copies that read the shared live data up to that version, so nothing is
+// copied up front, no lock is taken and later changes never show through.
+// Writers keep the state an open snapshot needs, so close it when done.
+public class CrmSnapshot implements AutoCloseable {
+    private final CRMManager crm;
+    private final long version;
+    private final long customerCount;
+    private final long totalCommunications;
+    private final long totalTasks;
+    private final long completedTasks;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    CrmSnapshot(CRMManager crm, long version, long customerCount, long totalCommunications,
+                long totalTasks, long completedTasks) {
+        this.crm = crm;
+        this.version = version;
+        this.customerCount = customerCount;
+        this.totalCommunications = totalCommunications;
+        this.totalTasks = totalTasks;
+        this.completedTasks = completedTasks;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Customer findCustomerById(int id) {
+        return crm.findCustomerById(id, version);
+    }
+
+    // In id order
+    public Stream<Customer> streamCustomers() {
+        return crm.customersAfter(0, version);
+    }
+
+    public Stream<Customer> streamSearch(String keyword) {
+        return crm.searchAfter(keyword, 0, version);
+    }
+
+    public List<Customer> searchCustomers(String keyword) {
+        return streamSearch(keyword).collect(Collectors.toList());
+    }
+
+    public CustomerPage getCustomerPage(int afterId, int limit, CustomerPage.Sort sort) {
+        return crm.customerPage(afterId, limit, sort, version);
+    }
+
+    public CustomerPage searchCustomerPage(String keyword, int afterId, int limit, CustomerPage.Sort sort) {
+        return crm.searchCustomerPage(keyword, afterId, limit, sort, version);
+    }
+
+    public long getCustomerCount() {
+        return customerCount;
+    }
+
+    public long getTotalCommunications() {
+        return totalCommunications;
+    }
+
+    public long getTotalTasks() {
+        return totalTasks;
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            crm.getVersionClock().unpin(version);
+        }
+    }
+}
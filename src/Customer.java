@@ -1,26 +1,78 @@
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Customer {
-    private static int nextId = 1;
+    // Told about field changes so indexes built over the customer stay current
+    public interface ChangeListener {
+        void customerChanged(Customer customer, String field, String oldValue);
+    }
+
+    private static final AtomicInteger nextId = new AtomicInteger(1);
     private int id;
-    private String name;
-    private String email;
-    private String phone;
-    private String notes;
-    private List<Communication> communications;
-    private List<Task> tasks;
+    // Name and contact details, replaced as a whole on each change
+    private volatile Details details;
+    // Version the customer was added to the manager in; older snapshots do not see it
+    private volatile long created;
+    // On a customer as a snapshot sees it, the live customer and the snapshot's version
+    private final Customer source;
+    private final long readVersion;
+    // Supplies the history of a customer whose history can be paged out
+    interface HistoryLoader {
+        // Reads the stored history; called without holding the customer's locks
+        History load(Customer customer);
+
+        // Called under the history lock as a history is put in place or dropped
+        void installed(Customer customer, History history);
+
+        void evicted(Customer customer, History history);
+
+        // Called after each access to an unpinned history; may page other customers out
+        void accessed(Customer customer, History history);
+    }
+
+    // Null while paged out
+    private volatile History history;
+    // Set when the history is loaded on demand; without one it always stays in memory
+    private volatile HistoryLoader historyLoader;
+    // Guards paging the history in and out
+    private final Object historyLock = new Object();
+    // A history changed since it was last saved is not in the data file, so it stays in memory
+    private volatile boolean pinned;
+    // Times the history was pinned for a change; guarded by historyLock
+    private long pins;
+    private volatile ChangeListener changeListener;
+    // Versions the customer's changes; null until a manager indexes it
+    private volatile VersionClock clock;
 
     public Customer(String name, String email, String phone, String notes) {
-        this.id = nextId++;
-        this.name = name;
-        this.email = email;
-        this.phone = phone;
-        this.notes = notes;
-        this.communications = new ArrayList<>();
-        this.tasks = new ArrayList<>();
+        this(nextId.getAndIncrement(), name, email, phone, notes);
     }
+
+    // Used when restoring a saved customer so the stored id is kept
+    public Customer(int id, String name, String email, String phone, String notes) {
+        this.id = id;
+        this.details = new Details(0, name, email, phone, notes);
+        this.history = new History();
+        this.source = null;
+        this.readVersion = VersionClock.LATEST;
+    }
+
+    private Customer(Customer source, long readVersion) {
+        this.id = source.id;
+        this.details = source.details.at(readVersion);
+        this.created = source.created;
+        this.source = source;
+        this.readVersion = readVersion;
+    }
+
     public static void setNextId(int id) {
-    nextId = id;
+    nextId.set(id);
+    }
+
+    // Hands out count consecutive ids at once and returns the first, for bulk imports
+    static int reserveIds(int count) {
+        return nextId.getAndAdd(count);
     }
 
     // Getters and setters
@@ -28,65 +80,454 @@ public class Customer {
         return id; }
 
     public String getName() { 
-        return name; }
+        return details.name; }
 
-    public void setName(String name) { 
-        this.name = name; }
+    public synchronized void setName(String name) { 
+        Details old = details;
+        changeDetails(name, old.email, old.phone, old.notes);
+        fireChanged("name", old.name); }
 
     public String getEmail() { 
-        return email; }
+        return details.email; }
 
-    public void setEmail(String email) { 
-        this.email = email; }
+    public synchronized void setEmail(String email) { 
+        Details old = details;
+        changeDetails(old.name, email, old.phone, old.notes);
+        fireChanged("email", old.email); }
 
     public String getPhone() { 
-        return phone; }
+        return details.phone; }
 
-    public void setPhone(String phone) { 
-        this.phone = phone; }
+    public synchronized void setPhone(String phone) { 
+        Details old = details;
+        changeDetails(old.name, old.email, phone, old.notes);
+        fireChanged("phone", old.phone); }
 
     public String getNotes() { 
-        return notes; }
+        return details.notes; }
+
+    public synchronized void setNotes(String notes) { 
+        Details old = details;
+        changeDetails(old.name, old.email, old.phone, notes);
+        fireChanged("notes", old.notes); }
 
-    public void setNotes(String notes) { 
-        this.notes = notes; }
+    private void changeDetails(String name, String email, String phone, String notes) {
+        requireLive();
+        VersionClock.publish(clock, (version, oldestReader) -> {
+            Details next = new Details(version, name, email, phone, notes);
+            next.linkOlder(details, oldestReader);
+            details = next;
+        });
+    }
+
+    // Version of the last change to the name or contact details
+    long detailsVersion() {
+        return details.version;
+    }
+
+    // Called by the manager inside the version that adds the customer
+    void setCreated(long version) {
+        created = version;
+    }
+
+    // This customer as a snapshot at the given version sees it, or null if it
+    // was added later. The copy shares the live history and reads a prefix of it.
+    Customer at(long version) {
+        if (created > version) {
+            return null;
+        }
+        return new Customer(source != null ? source : this, version);
+    }
 
+    private void requireLive() {
+        if (source != null) {
+            throw new UnsupportedOperationException("A customer seen through a snapshot cannot be changed");
+        }
+    }
+
+    // Called by the manager that indexes the customer, with its version clock
+    void setChangeListener(ChangeListener changeListener, VersionClock clock) {
+        this.changeListener = changeListener;
+        this.clock = clock;
+    }
+
+    private void fireChanged(String field, String oldValue) {
+        if (changeListener != null) {
+            changeListener.customerChanged(this, field, oldValue);
+        }
+    }
+
+    // Read-only view of the history as it is now; later additions do not appear in it
     public List<Communication> getCommunications() { 
-        return communications; }
+        return readHistory().communications(readVersion); }
         
     public List<Task> getTasks() { 
-        return tasks; }
+        return readHistory().tasks(readVersion); }
+
+    // Sizes the history lists when the number of records is known in advance
+    void ensureHistoryCapacity(int communicationCount, int taskCount) {
+        History current = history();
+        current.communications.ensureCapacity(communicationCount);
+        current.tasks.ensureCapacity(taskCount);
+    }
+
+    public synchronized void addCommunication(Communication comm) {
+        requireLive();
+        // Paged in before taking the version lock, which must not wait on the disk
+        History target = historyForChange();
+        VersionClock.publish(clock, (version, oldestReader) -> target.addCommunication(comm, version, oldestReader));
+    }
+
+    // The n most recent communications, newest first
+    public List<Communication> getLatestCommunications(int n) {
+        return readHistory().latest(null, n, readVersion);
+    }
+
+    public List<Communication> getLatestCommunications(CommunicationType type, int n) {
+        return readHistory().latest(type, n, readVersion);
+    }
+
+    // Communications from from (inclusive) to to (exclusive), oldest first
+    public List<Communication> getCommunicationsBetween(LocalDateTime from, LocalDateTime to) {
+        return readHistory().between(null, from, to, readVersion);
+    }
+
+    public List<Communication> getCommunicationsBetween(CommunicationType type, LocalDateTime from, LocalDateTime to) {
+        return readHistory().between(type, from, to, readVersion);
+    }
+
+    public synchronized void addTask(Task task) {
+        requireLive();
+        History target = historyForChange();
+        VersionClock.publish(clock, (version, oldestReader) -> target.addTask(task, version, oldestReader));
+    }
+
+    // Pages the history out; it is read through the loader when next needed
+    void setHistoryLoader(HistoryLoader loader) {
+        synchronized (historyLock) {
+            historyLoader = loader;
+            history = null;
+            pinned = false;
+        }
+    }
+
+    boolean isHistoryLoaded() {
+        return history != null;
+    }
+
+    // True when the loader's data file has the current history: it is paged
+    // and has not been changed since it was last saved
+    boolean isHistoryStored() {
+        synchronized (historyLock) {
+            return historyLoader != null && !pinned;
+        }
+    }
+
+    private History readHistory() {
+        return source != null ? source.history() : history();
+    }
+
+    private History history() {
+        HistoryLoader loader = historyLoader;
+        History current = history;
+        if (loader == null) {
+            return current;
+        }
+        if (current == null) {
+            // Loaded outside the lock; if another thread got there first its copy wins
+            History loaded = loader.load(this);
+            synchronized (historyLock) {
+                current = history;
+                if (current == null) {
+                    history = current = loaded;
+                    loader.installed(this, current);
+                }
+            }
+        }
+        if (!pinned) {
+            loader.accessed(this, current);
+        }
+        return current;
+    }
+
+    // Pins the history before it is changed, so it cannot be paged out and lose the change
+    private History historyForChange() {
+        if (historyLoader == null) {
+            return history;
+        }
+        while (true) {
+            History current = history();
+            synchronized (historyLock) {
+                if (history == current) {
+                    pinned = true;
+                    pins++;
+                    return current;
+                }
+            }
+        }
+    }
 
-    public void addCommunication(Communication comm) {
-        communications.add(comm);
+    // For changes made to a history record directly, such as completing a task
+    void pinHistory() {
+        historyForChange();
     }
 
-    public void addTask(Task task) {
-        tasks.add(task);
+    // The pin count while the history is pinned, otherwise -1. A save reads it
+    // before writing the history and hands it back to unpinHistory.
+    long historyPin() {
+        synchronized (historyLock) {
+            return pinned ? pins : -1;
+        }
+    }
+
+    // Unpins a history the data file now holds, unless it was changed again
+    // after pin was read; it then counts toward the loader's cache again
+    void unpinHistory(long pin) {
+        HistoryLoader loader;
+        History current;
+        synchronized (historyLock) {
+            if (!pinned || pins != pin || historyLoader == null) {
+                return;
+            }
+            pinned = false;
+            loader = historyLoader;
+            current = history;
+        }
+        if (current != null) {
+            loader.accessed(this, current);
+        }
+    }
+
+    // Drops the history unless it is pinned; returns whether it was dropped
+    boolean evictHistory() {
+        synchronized (historyLock) {
+            History current = history;
+            if (current == null || pinned || historyLoader == null) {
+                return false;
+            }
+            history = null;
+            historyLoader.evicted(this, current);
+            return true;
+        }
     }
 
     // Convert customer to a string for saving to file
     public String toFileString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("CUSTOMER|").append(id).append("|").append(name).append("|")
-        .append(email).append("|").append(phone).append("|").append(notes).append("\n");
+        StringBuilder sb = new StringBuilder(fileHeader());
         
         // Add communications
-        for (Communication comm : communications) {
+        for (Communication comm : getCommunications()) {
             sb.append(comm.toFileString());
         }
         
         // Add tasks
-        for (Task task : tasks) {
+        for (Task task : getTasks()) {
             sb.append(task.toFileString());
         }
         
         return sb.toString();
     }
 
+    // The customer line without the history, for a store that copies the history lines itself
+    String fileHeader() {
+        Details current = details;
+        return "CUSTOMER|" + id + "|" + current.name + "|" + current.email + "|" + current.phone + "|"
+                + current.notes + "\n";
+    }
+
     @Override
     public String toString() {
+        Details current = details;
         return String.format("ID: %d | Name: %s | Email: %s | Phone: %s | Notes: %s",
-                id, name, email, phone, notes);
+                id, current.name, current.email, current.phone, current.notes);
+    }
+
+    private static final class Details extends VersionNode<Details> {
+        final String name;
+        final String email;
+        final String phone;
+        final String notes;
+
+        Details(long version, String name, String email, String phone, String notes) {
+            super(version);
+            this.name = name;
+            this.email = email;
+            this.phone = phone;
+            this.notes = notes;
+        }
+    }
+
+    // A customer's communications and tasks, plus the communications by time,
+    // overall and per type. Appended under the customer's lock, read without
+    // locking. The type map is replaced, not changed, when a new type appears.
+    // Snapshots read the prefix of the lists that existed at their version.
+    static final class History {
+        private final AppendOnlyList<Communication> communications = new AppendOnlyList<>();
+        private final AppendOnlyList<Task> tasks = new AppendOnlyList<>();
+        private final CommunicationTimeline timeline = new CommunicationTimeline();
+        private volatile Map<CommunicationType, CommunicationTimeline> timelinesByType = Collections.emptyMap();
+        // Version of the last append, and the list sizes before it for open snapshots
+        private volatile long appended;
+        private volatile Sizes older;
+
+        void addCommunication(Communication comm, long version, long oldestReader) {
+            keepSizes(version, oldestReader);
+            addCommunication(comm);
+        }
+
+        void addTask(Task task, long version, long oldestReader) {
+            keepSizes(version, oldestReader);
+            addTask(task);
+        }
+
+        // Set before the lists grow, so a reader that sees the new records also sees this
+        private void keepSizes(long version, long oldestReader) {
+            if (appended == version) {
+                return;
+            }
+            if (oldestReader < version) {
+                Sizes sizes = new Sizes(appended, communications.size(), tasks.size());
+                sizes.linkOlder(older, oldestReader);
+                older = sizes;
+            } else {
+                older = null;
+            }
+            appended = version;
+        }
+
+        // For a history built before anyone can read it, such as one being paged in
+        void addCommunication(Communication comm) {
+            communications.add(comm);
+            timeline.add(comm);
+            CommunicationType type = comm.getType();
+            if (type != null) {
+                CommunicationTimeline byType = timelinesByType.get(type);
+                if (byType == null) {
+                    Map<CommunicationType, CommunicationTimeline> copy = new EnumMap<>(CommunicationType.class);
+                    copy.putAll(timelinesByType);
+                    byType = new CommunicationTimeline();
+                    copy.put(type, byType);
+                    timelinesByType = copy;
+                }
+                byType.add(comm);
+            }
+        }
+
+        void addTask(Task task) {
+            tasks.add(task);
+        }
+
+        List<Communication> communications() {
+            return communications.snapshot();
+        }
+
+        List<Task> tasks() {
+            return tasks.snapshot();
+        }
+
+        // The lists are read before appended, which is set before they grow
+        List<Communication> communications(long at) {
+            List<Communication> all = communications.snapshot();
+            return appended <= at ? all : all.subList(0, sizesAt(at).communications);
+        }
+
+        // A snapshot gets a copy of each task as it read it, with the completed flag of its version
+        List<Task> tasks(long at) {
+            List<Task> all = tasks.snapshot();
+            if (at == VersionClock.LATEST) {
+                return all;
+            }
+            List<Task> visible = appended <= at ? all : all.subList(0, sizesAt(at).tasks);
+            return new AbstractList<Task>() {
+                @Override
+                public Task get(int index) {
+                    return visible.get(index).at(at);
+                }
+
+                @Override
+                public int size() {
+                    return visible.size();
+                }
+            };
+        }
+
+        List<Communication> latest(CommunicationType type, int n, long at) {
+            CommunicationTimeline byTime = timeline(type);
+            if (byTime == null) {
+                return Collections.emptyList();
+            }
+            while (true) {
+                List<Communication> hidden = hiddenAt(at);
+                List<Communication> latest = byTime.latest((int) Math.min((long) n + hidden.size(), Integer.MAX_VALUE));
+                List<Communication> hiddenNow = hiddenAt(at);
+                if (hiddenNow.isEmpty()) {
+                    return latest;
+                }
+                // Retried if more were appended than the extra fetched to cover them
+                if (hiddenNow.size() == hidden.size()) {
+                    List<Communication> visible = without(latest, hiddenNow);
+                    return visible.size() > n ? visible.subList(0, n) : visible;
+                }
+            }
+        }
+
+        List<Communication> between(CommunicationType type, LocalDateTime from, LocalDateTime to, long at) {
+            CommunicationTimeline byTime = timeline(type);
+            if (byTime == null) {
+                return Collections.emptyList();
+            }
+            List<Communication> range = byTime.between(from, to);
+            List<Communication> hidden = hiddenAt(at);
+            return hidden.isEmpty() ? range : without(range, hidden);
+        }
+
+        private CommunicationTimeline timeline(CommunicationType type) {
+            return type == null ? timeline : timelinesByType.get(type);
+        }
+
+        // Communications appended after the version, read after any timeline view they must cover
+        private List<Communication> hiddenAt(long at) {
+            List<Communication> all = communications.snapshot();
+            if (appended <= at) {
+                return Collections.emptyList();
+            }
+            return all.subList(sizesAt(at).communications, all.size());
+        }
+
+        private Sizes sizesAt(long at) {
+            Sizes chain = older;
+            Sizes sizes = chain == null ? null : chain.at(at);
+            return sizes != null ? sizes : Sizes.EMPTY;
+        }
+
+        private static List<Communication> without(List<Communication> items, List<Communication> hidden) {
+            Set<Communication> skip = Collections.newSetFromMap(new IdentityHashMap<>());
+            skip.addAll(hidden);
+            List<Communication> kept = new ArrayList<>(items.size());
+            for (Communication comm : items) {
+                if (!skip.contains(comm)) {
+                    kept.add(comm);
+                }
+            }
+            return kept;
+        }
+
+        // Number of records, used to bound how much history is kept in memory
+        int size() {
+            return communications.size() + tasks.size();
+        }
+    }
+
+    private static final class Sizes extends VersionNode<Sizes> {
+        static final Sizes EMPTY = new Sizes(0, 0, 0);
+
+        final int communications;
+        final int tasks;
+
+        Sizes(long version, int communications, int tasks) {
+            super(version);
+            this.communications = communications;
+            this.tasks = tasks;
+        }
     }
 }
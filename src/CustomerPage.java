@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// One page of customers in a chosen order. A page is found from the id of the
+// last customer on the previous page rather than from a position, so paging
+// carries on where it left off even when customers are added in between. The
+// name and email orders compare against the cursor customer's current values,
+// so a customer renamed between pages may be skipped or shown twice.
+public class CustomerPage {
+    private static final Comparator<String> TEXT = Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER);
+
+    public enum Sort {
+        ID(Comparator.comparingInt(Customer::getId)),
+        NAME(Comparator.comparing(Customer::getName, TEXT).thenComparingInt(Customer::getId)),
+        EMAIL(Comparator.comparing(Customer::getEmail, TEXT).thenComparingInt(Customer::getId));
+
+        private final Comparator<Customer> order;
+
+        Sort(Comparator<Customer> order) {
+            this.order = order;
+        }
+
+        // Ties are broken by id, so no two customers compare equal
+        public Comparator<Customer> comparator() {
+            return order;
+        }
+    }
+
+    private final List<Customer> items;
+    private final int nextAfter;
+
+    private CustomerPage(List<Customer> items, int nextAfter) {
+        this.items = items;
+        this.nextAfter = nextAfter;
+    }
+
+    // Picks a page from candidates in id order. For the id order they already
+    // start after the cursor and the page is simply the first of them. Other
+    // orders keep the smallest past the cursor customer in a heap bounded by
+    // the page size, so only one page is ever held.
+    static CustomerPage select(Stream<Customer> candidates, Customer cursor, int limit, Sort sort) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        int fetch = limit == Integer.MAX_VALUE ? limit : limit + 1;
+        List<Customer> items;
+        if (sort == Sort.ID) {
+            items = candidates.limit(fetch).collect(Collectors.toList());
+        } else {
+            Comparator<Customer> order = sort.comparator();
+            PriorityQueue<Customer> smallest = new PriorityQueue<>(order.reversed());
+            candidates.filter(customer -> cursor == null || order.compare(customer, cursor) > 0)
+                    .forEach(customer -> {
+                        smallest.add(customer);
+                        if (smallest.size() > fetch) {
+                            smallest.poll();
+                        }
+                    });
+            items = new ArrayList<>(smallest);
+            items.sort(order);
+        }
+        return of(items, limit);
+    }
+
+    // Pages are fetched one customer past the limit to learn whether more follow
+    private static CustomerPage of(List<Customer> fetched, int limit) {
+        if (fetched.size() <= limit) {
+            return new CustomerPage(Collections.unmodifiableList(fetched), 0);
+        }
+        List<Customer> items = fetched.subList(0, limit);
+        return new CustomerPage(Collections.unmodifiableList(items), items.get(limit - 1).getId());
+    }
+
+    public List<Customer> getItems() {
+        return items;
+    }
+
+    public boolean hasNext() {
+        return nextAfter != 0;
+    }
+
+    // Cursor for the next page, or 0 on the last page
+    public int getNextAfter() {
+        return nextAfter;
+    }
+}
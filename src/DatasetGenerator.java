@@ -0,0 +1,167 @@
+import java.io.*;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Writes a synthetic data file for sizing and load testing. Records are built
+// as real Customer, Communication and Task objects and written with their
+// toFileString methods, so the file is exactly what the program itself writes.
+//
+// Skew decides how history is spread: 0 gives every customer the same number
+// of communications and tasks, around 1 the lowest ids get most of it. The
+// same arguments always produce the same file.
+//
+//   java DatasetGenerator customers.txt 100000 --communications 20 --tasks 5 --skew 1.1
+public class DatasetGenerator {
+    static final String[] FIRST_NAMES = {"John", "Jane", "Ahmet", "Zeynep", "Maria", "Wei", "Olga", "Omar",
+            "Lucia", "Kenji", "Fatma", "Liam", "Aisha", "Mateo", "Emma", "Noah"};
+    static final String[] LAST_NAMES = {"Doe", "Smith", "Yilmaz", "Garcia", "Chen", "Ivanova", "Haddad", "Rossi",
+            "Tanaka", "Brown", "Kaya", "Muller", "Silva", "Novak", "Khan", "Dubois"};
+    private static final String[] COMPANIES = {"Acme Ltd", "Globex", "Initech", "Umbrella", "Hooli", "Stark Industries"};
+    private static final CommunicationType[] TYPES = CommunicationType.KNOWN;
+    private static final String[] TOPICS = {"pricing question", "renewal", "support issue", "product demo",
+            "invoice query", "onboarding", "feature request", "contract review"};
+    private static final String[] TAGS = {"sales", "support", "billing", "renewal", "urgent", "vip", "followup"};
+    private static final TaskPriority[] PRIORITIES = TaskPriority.KNOWN;
+    private static final String[] ACTIONS = {"Call back", "Send quote", "Schedule meeting", "Follow up", "Prepare contract"};
+    // History is spread over the two years before this date
+    private static final LocalDateTime END = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final int HISTORY_MINUTES = 2 * 365 * 24 * 60;
+
+    private final int customers;
+    private final double communicationsPerCustomer;
+    private final double tasksPerCustomer;
+    private final double skew;
+    private final long seed;
+    private double completedRatio = 0.4;
+
+    public DatasetGenerator(int customers, double communicationsPerCustomer, double tasksPerCustomer, double skew, long seed) {
+        if (customers < 0 || communicationsPerCustomer < 0 || tasksPerCustomer < 0) {
+            throw new IllegalArgumentException("sizes must not be negative");
+        }
+        this.customers = customers;
+        this.communicationsPerCustomer = communicationsPerCustomer;
+        this.tasksPerCustomer = tasksPerCustomer;
+        this.skew = skew;
+        this.seed = seed;
+    }
+
+    public void setCompletedRatio(double completedRatio) {
+        this.completedRatio = completedRatio;
+    }
+
+    // Writes the file and returns the number of customers, communications and tasks
+    public long[] write(File file) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        Zipf spread = customers > 0 ? new Zipf(customers, skew) : null;
+        long totalCommunications = Math.round(customers * communicationsPerCustomer);
+        long totalTasks = Math.round(customers * tasksPerCustomer);
+        long[] counts = new long[3];
+        int commId = 1;
+        int taskId = 1;
+
+        try (Writer writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            for (int i = 0; i < customers; i++) {
+                int id = i + 1;
+                Customer customer = newCustomer(id, random);
+
+                int commCount = share(totalCommunications, spread.share(i), random);
+                long[] times = new long[commCount];
+                for (int c = 0; c < commCount; c++) {
+                    times[c] = random.nextInt(HISTORY_MINUTES);
+                }
+                // Communications are logged as they happen, so oldest first
+                Arrays.sort(times);
+                for (int c = 0; c < commCount; c++) {
+                    customer.addCommunication(new Communication(commId++, id, pick(TYPES, random),
+                            capitalize(pick(TOPICS, random)) + " #" + random.nextInt(100000),
+                            END.minusMinutes(HISTORY_MINUTES - times[c]), tags(random)));
+                }
+
+                int taskCount = share(totalTasks, spread.share(i), random);
+                for (int t = 0; t < taskCount; t++) {
+                    // Due dates run from a year ago to a few months ahead
+                    LocalDateTime due = END.minusDays(365).plusHours(random.nextInt(24 * 500));
+                    customer.addTask(new Task(taskId++, id, pick(ACTIONS, random) + " about "
+                            + pick(TOPICS, random), due, pick(PRIORITIES, random),
+                            random.nextDouble() < completedRatio));
+                }
+
+                writer.write(customer.toFileString());
+                counts[0]++;
+                counts[1] += commCount;
+                counts[2] += taskCount;
+            }
+        }
+        return counts;
+    }
+
+    private static Customer newCustomer(int id, SplittableRandom random) {
+        String first = pick(FIRST_NAMES, random);
+        String last = pick(LAST_NAMES, random);
+        String email = first.toLowerCase() + "." + last.toLowerCase() + id + "@example.com";
+        String phone = String.format("555-%03d-%04d", random.nextInt(1000), random.nextInt(10000));
+        String notes = random.nextInt(3) == 0 ? "" : "Works at " + pick(COMPANIES, random);
+        return new Customer(id, first + " " + last, email, phone, notes);
+    }
+
+    // This customer's part of the total, rounded up or down at random so the
+    // expected sum over all customers is the requested total
+    private static int share(long total, double share, SplittableRandom random) {
+        double exact = total * share;
+        int whole = (int) exact;
+        return random.nextDouble() < exact - whole ? whole + 1 : whole;
+    }
+
+    private static String tags(SplittableRandom random) {
+        int count = random.nextInt(3);
+        if (count == 0) {
+            return "";
+        }
+        String first = pick(TAGS, random);
+        String second = pick(TAGS, random);
+        return count == 1 || first.equals(second) ? first : first + "," + second;
+    }
+
+    private static <T> T pick(T[] values, SplittableRandom random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String capitalize(String text) {
+        return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java DatasetGenerator <output file> <customers> [--communications N]"
+                    + " [--tasks N] [--skew S] [--completed R] [--seed N]");
+            return;
+        }
+        String output = args[0];
+        int customers = Integer.parseInt(args[1]);
+        double communications = 10;
+        double tasks = 3;
+        double skew = 0;
+        double completed = 0.4;
+        long seed = 42;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--communications": communications = Double.parseDouble(args[i + 1]); break;
+                case "--tasks": tasks = Double.parseDouble(args[i + 1]); break;
+                case "--skew": skew = Double.parseDouble(args[i + 1]); break;
+                case "--completed": completed = Double.parseDouble(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        DatasetGenerator generator = new DatasetGenerator(customers, communications, tasks, skew, seed);
+        generator.setCompletedRatio(completed);
+        long start = System.nanoTime();
+        long[] counts = generator.write(new File(output));
+        System.out.printf("Wrote %d customers, %d communications and %d tasks to %s in %d ms%n",
+                counts[0], counts[1], counts[2], output, (System.nanoTime() - start) / 1_000_000);
+    }
+}
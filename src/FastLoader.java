@@ -0,0 +1,343 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Loads the pipe-delimited data file by memory mapping it, cutting it into
+// chunks on line boundaries and parsing the chunks in parallel. Records are
+// then handed to the manager in file order, so the result is the same as
+// reading the file line by line.
+public class FastLoader {
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    static final int MAX_FIELDS = 8;
+    private static final byte[] CUSTOMER = "CUSTOMER".getBytes();
+    private static final byte[] COMMUNICATION = "COMMUNICATION".getBytes();
+    private static final byte[] TASK = "TASK".getBytes();
+    private static final CommunicationType[] TYPES = CommunicationType.KNOWN;
+    private static final TaskPriority[] PRIORITIES = TaskPriority.KNOWN;
+    private static final byte[][] TYPE_LABELS = labels(TYPES);
+    private static final byte[][] PRIORITY_LABELS = labels(PRIORITIES);
+
+    // Text is decoded the same way FileReader decodes it
+    private final Charset charset = Charset.defaultCharset();
+
+    // Records of one chunk in file order, plus the highest ids seen
+    static class Chunk {
+        final List<Object> records = new ArrayList<>();
+        final int[] maxIds = new int[3];
+    }
+
+    // Loads the file into the manager and returns the highest customer,
+    // communication and task ids it contained
+    public int[] load(File file, CRMManager manager) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel);
+            List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                tasks.add(ForkJoinPool.commonPool().submit(() -> parse(channel, start, end)));
+            }
+            return restore(tasks, manager, file.toString());
+        }
+    }
+
+    // Hands the records of each chunk to the manager in order as its parse
+    // finishes and returns the highest ids seen
+    static int[] restore(List<ForkJoinTask<Chunk>> tasks, CRMManager manager, String source) throws IOException {
+        int[] maxIds = new int[3];
+        for (ForkJoinTask<Chunk> task : tasks) {
+            Chunk chunk = join(task);
+            for (Object record : chunk.records) {
+                if (record instanceof Customer) {
+                    manager.restoreCustomer((Customer) record);
+                } else if (record instanceof Communication) {
+                    manager.restoreCommunication((Communication) record);
+                } else {
+                    manager.restoreTask((Task) record);
+                }
+            }
+            for (int i = 0; i < 3; i++) {
+                maxIds[i] = Math.max(maxIds[i], chunk.maxIds[i]);
+            }
+        }
+        return maxIds;
+    }
+
+    // Parses a whole file on the calling thread, for loaders that parse several files at once
+    Chunk parseFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Chunk chunk = new Chunk();
+            long[] bounds = chunkBounds(channel);
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                parse(channel, bounds[i], bounds[i + 1], chunk);
+            }
+            return chunk;
+        }
+    }
+
+    private static Chunk join(ForkJoinTask<Chunk> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Splits the file into roughly equal ranges, each ending just after a newline
+    private static long[] chunkBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, size / (parallelism * 4L) + 1);
+        chunkSize = Math.min(chunkSize, Integer.MAX_VALUE);
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long start = 0;
+        ByteBuffer scan = ByteBuffer.allocate(4096);
+        while (start + chunkSize < size) {
+            long pos = start + chunkSize;
+            long end = -1;
+            while (end < 0 && pos < size) {
+                scan.clear();
+                int read = channel.read(scan, pos);
+                for (int i = 0; i < read; i++) {
+                    if (scan.get(i) == '\n') {
+                        end = pos + i + 1;
+                        break;
+                    }
+                }
+                pos += read;
+            }
+            if (end < 0 || end >= size) {
+                break;
+            }
+            bounds.add(end);
+            start = end;
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private Chunk parse(FileChannel channel, long start, long end) {
+        Chunk chunk = new Chunk();
+        try {
+            parse(channel, start, end, chunk);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return chunk;
+    }
+
+    private void parse(FileChannel channel, long start, long end, Chunk chunk) throws IOException {
+        if (end > start) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            parse(buffer, chunk);
+        }
+    }
+
+    // Parses whole lines read into a buffer, e.g. one customer's history.
+    // Records with an unknown type or priority are left out.
+    List<Object> parseRecords(ByteBuffer buffer) {
+        return parseChunk(buffer).records;
+    }
+
+    // Parses whole lines read into a buffer, keeping the highest ids
+    Chunk parseChunk(ByteBuffer buffer) {
+        Chunk chunk = new Chunk();
+        parse(buffer, chunk);
+        return chunk;
+    }
+
+    private void parse(ByteBuffer buffer, Chunk chunk) {
+        byte[] line = new byte[512];
+        int[] fieldStart = new int[MAX_FIELDS];
+        int[] fieldEnd = new int[MAX_FIELDS];
+        int limit = buffer.limit();
+        int pos = 0;
+        while (pos < limit) {
+            int length = 0;
+            byte b;
+            while (pos < limit && (b = buffer.get(pos)) != '\n') {
+                if (length == line.length) {
+                    line = java.util.Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+                pos++;
+            }
+            pos++;
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (length > 0) {
+                parseLine(line, length, fieldStart, fieldEnd, chunk);
+            }
+        }
+    }
+
+    // Splits a line on '|' into at most MAX_FIELDS fields and returns how many
+    // it found. Text after a '|' in the last field is ignored.
+    static int split(byte[] line, int length, int[] fieldStart, int[] fieldEnd) {
+        int fields = 0;
+        fieldStart[0] = 0;
+        for (int i = 0; i < length && fields < MAX_FIELDS - 1; i++) {
+            if (line[i] == '|') {
+                fieldEnd[fields++] = i;
+                fieldStart[fields] = i + 1;
+            }
+        }
+        int last = fieldStart[fields];
+        int lastEnd = length;
+        for (int i = last; i < length; i++) {
+            if (line[i] == '|') {
+                lastEnd = i;
+                break;
+            }
+        }
+        fieldEnd[fields++] = lastEnd;
+        return fields;
+    }
+
+    private void parseLine(byte[] line, int length, int[] fieldStart, int[] fieldEnd, Chunk chunk) {
+        int fields = split(line, length, fieldStart, fieldEnd);
+
+        if (startsWith(line, fieldStart[0], fieldEnd[0], CUSTOMER)) {
+            require(fields, 6, line, length);
+            int id = parseInt(line, fieldStart[1], fieldEnd[1]);
+            chunk.records.add(new Customer(id,
+                    text(line, fieldStart[2], fieldEnd[2]),
+                    text(line, fieldStart[3], fieldEnd[3]),
+                    text(line, fieldStart[4], fieldEnd[4]),
+                    text(line, fieldStart[5], fieldEnd[5])));
+            if (id > chunk.maxIds[0]) chunk.maxIds[0] = id;
+
+        } else if (startsWith(line, fieldStart[0], fieldEnd[0], COMMUNICATION)) {
+            require(fields, 7, line, length);
+            int id = parseInt(line, fieldStart[1], fieldEnd[1]);
+            if (id > chunk.maxIds[1]) chunk.maxIds[1] = id;
+            CommunicationType type = type(line, fieldStart[3], fieldEnd[3]);
+            chunk.records.add(new Communication(id,
+                    parseInt(line, fieldStart[2], fieldEnd[2]),
+                    type,
+                    type == CommunicationType.OTHER ? text(line, fieldStart[3], fieldEnd[3]) : null,
+                    text(line, fieldStart[4], fieldEnd[4]),
+                    parseDateTime(line, fieldStart[5], fieldEnd[5]),
+                    text(line, fieldStart[6], fieldEnd[6])));
+
+        } else if (startsWith(line, fieldStart[0], fieldEnd[0], TASK)) {
+            require(fields, 7, line, length);
+            int id = parseInt(line, fieldStart[1], fieldEnd[1]);
+            if (id > chunk.maxIds[2]) chunk.maxIds[2] = id;
+            TaskPriority priority = priority(line, fieldStart[5], fieldEnd[5]);
+            chunk.records.add(new Task(id,
+                    parseInt(line, fieldStart[2], fieldEnd[2]),
+                    text(line, fieldStart[3], fieldEnd[3]),
+                    parseDateTime(line, fieldStart[4], fieldEnd[4]),
+                    priority,
+                    priority == TaskPriority.OTHER ? text(line, fieldStart[5], fieldEnd[5]) : null,
+                    parseBoolean(line, fieldStart[6], fieldEnd[6])));
+        }
+    }
+
+    // Labels are compared as bytes so no String is made for them; any other
+    // spelling goes through fromStoredLabel, which makes unknown values OTHER
+    private CommunicationType type(byte[] line, int start, int end) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (startsWith(line, start, end, TYPE_LABELS[i])) {
+                return TYPES[i];
+            }
+        }
+        return CommunicationType.fromStoredLabel(text(line, start, end));
+    }
+
+    TaskPriority priority(byte[] line, int start, int end) {
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            if (startsWith(line, start, end, PRIORITY_LABELS[i])) {
+                return PRIORITIES[i];
+            }
+        }
+        return TaskPriority.fromStoredLabel(text(line, start, end));
+    }
+
+    private static byte[][] labels(Enum<?>[] values) {
+        byte[][] labels = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            labels[i] = values[i].toString().getBytes();
+        }
+        return labels;
+    }
+
+    private void require(int fields, int expected, byte[] line, int length) {
+        if (fields < expected) {
+            throw new IllegalArgumentException("Malformed record: " + new String(line, 0, length, charset));
+        }
+    }
+
+    String text(byte[] line, int start, int end) {
+        return new String(line, start, end - start, charset);
+    }
+
+    static boolean startsWith(byte[] line, int start, int end, byte[] word) {
+        if (end - start != word.length) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            if (line[start + i] != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int parseInt(byte[] line, int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("Empty number");
+        }
+        boolean negative = line[start] == '-';
+        int i = negative ? start + 1 : start;
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number at column " + i);
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    // Same rule as Boolean.parseBoolean
+    static boolean parseBoolean(byte[] line, int start, int end) {
+        if (end - start != 4) {
+            return false;
+        }
+        return (line[start] | 0x20) == 't' && (line[start + 1] | 0x20) == 'r'
+                && (line[start + 2] | 0x20) == 'u' && (line[start + 3] | 0x20) == 'e';
+    }
+
+    // Parses yyyy-MM-dd HH:mm:ss
+    static LocalDateTime parseDateTime(byte[] line, int start, int end) {
+        if (end - start != 19) {
+            throw new IllegalArgumentException("Invalid timestamp at column " + start);
+        }
+        return LocalDateTime.of(
+                parseInt(line, start, start + 4),
+                parseInt(line, start + 5, start + 7),
+                parseInt(line, start + 8, start + 10),
+                parseInt(line, start + 11, start + 13),
+                parseInt(line, start + 14, start + 16),
+                parseInt(line, start + 17, start + 19));
+    }
+}
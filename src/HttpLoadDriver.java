@@ -0,0 +1,212 @@
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load test for the HTTP API. A number of clients share one keep-alive
+// connection pool and send a mix of reads and writes as fast as they can;
+// throughput and latency percentiles per request type are printed at the end.
+//
+// Without --url a server is started on a free localhost port over a
+// generated data set, so the test needs nothing else running:
+//   java HttpLoadDriver --clients 32 --requests 100000 --customers 20000
+//   java HttpLoadDriver --url http://localhost:8080 --clients 16
+public class HttpLoadDriver {
+    // Request types and their share of the mix
+    private static final String[] KINDS = {"get", "search", "list", "communication", "task", "report"};
+    private static final int[] WEIGHTS = {30, 20, 10, 25, 10, 5};
+    private static final String[] KEYWORDS = {"smith", "garcia", "example.com", "555-1", "zeynep"};
+
+    public static class Result {
+        public final long requests;
+        public final long errors;
+        public final long elapsedNanos;
+        public final List<LatencySummary> stats;
+
+        Result(long requests, long errors, long elapsedNanos, List<LatencySummary> stats) {
+            this.requests = requests;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.stats = stats;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d requests (%d errors) in %.2f s: %.0f requests/s%n",
+                    requests, errors, elapsedNanos / 1e9, requests / (elapsedNanos / 1e9)));
+            sb.append(LatencySummary.header()).append(String.format("%n"));
+            for (LatencySummary stat : stats) {
+                if (stat.count > 0) {
+                    sb.append(stat).append(String.format("%n"));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private final URI base;
+    private final HttpClient client;
+    private final int[] customerIds;
+
+    public HttpLoadDriver(URI base) throws Exception {
+        this.base = base;
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        // Requests go to the customers on the first page
+        Map<String, Object> page = Json.parseObject(send(HttpRequest.newBuilder(base.resolve("/customers?limit=500")).GET()).body());
+        List<?> items = (List<?>) page.get("items");
+        customerIds = new int[items.size()];
+        for (int i = 0; i < customerIds.length; i++) {
+            customerIds[i] = ((Number) ((Map<?, ?>) items.get(i)).get("id")).intValue();
+        }
+        if (customerIds.length == 0) {
+            throw new IllegalStateException("The server has no customers");
+        }
+    }
+
+    public Result run(int clients, int requests, long seed) throws Exception {
+        int perClient = requests / clients;
+        long[][] latencies = new long[clients][perClient];
+        byte[][] kinds = new byte[clients][perClient];
+        AtomicLong errors = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                int clientIndex = c;
+                futures.add(pool.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed + clientIndex);
+                    for (int i = 0; i < perClient; i++) {
+                        int kind = pickKind(random);
+                        HttpRequest.Builder request = request(kind, random, i);
+                        long begin = System.nanoTime();
+                        try {
+                            if (send(request).statusCode() >= 400) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[clientIndex][i] = System.nanoTime() - begin;
+                        kinds[clientIndex][i] = (byte) kind;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        List<LatencySummary> stats = new ArrayList<>();
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            long[] nanos = new long[perClient * clients];
+            int count = 0;
+            for (int c = 0; c < clients; c++) {
+                for (int i = 0; i < perClient; i++) {
+                    if (kinds[c][i] == kind) {
+                        nanos[count++] = latencies[c][i];
+                    }
+                }
+            }
+            stats.add(new LatencySummary(KINDS[kind], nanos, count));
+        }
+        return new Result((long) perClient * clients, errors.get(), elapsed, stats);
+    }
+
+    private static int pickKind(SplittableRandom random) {
+        int pick = random.nextInt(100);
+        for (int kind = 0; kind < WEIGHTS.length; kind++) {
+            pick -= WEIGHTS[kind];
+            if (pick < 0) {
+                return kind;
+            }
+        }
+        return 0;
+    }
+
+    private HttpRequest.Builder request(int kind, SplittableRandom random, int i) {
+        int id = customerIds[random.nextInt(customerIds.length)];
+        switch (KINDS[kind]) {
+            case "get":
+                return HttpRequest.newBuilder(base.resolve("/customers/" + id)).GET();
+            case "search":
+                return HttpRequest.newBuilder(base.resolve("/customers/search?q="
+                        + KEYWORDS[random.nextInt(KEYWORDS.length)] + "&limit=20")).GET();
+            case "list":
+                return HttpRequest.newBuilder(base.resolve("/customers?after=" + id + "&limit=20")).GET();
+            case "communication":
+                return post("/customers/" + id + "/communications",
+                        "{\"type\":\"email\",\"description\":\"Load test " + i + "\",\"tags\":\"loadtest\"}");
+            case "task":
+                return post("/customers/" + id + "/tasks",
+                        "{\"description\":\"Load test task " + i + "\",\"dueInDays\":7,\"priority\":\"low\"}");
+            default:
+                return HttpRequest.newBuilder(base.resolve("/reports/overall")).GET();
+        }
+    }
+
+    private HttpRequest.Builder post(String path, String json) {
+        return HttpRequest.newBuilder(base.resolve(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = null;
+        int clients = 16;
+        int requests = 50000;
+        int customers = 10000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--url": url = args[i + 1]; break;
+                case "--clients": clients = Integer.parseInt(args[i + 1]); break;
+                case "--requests": requests = Integer.parseInt(args[i + 1]); break;
+                case "--customers": customers = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.out.println("Usage: java HttpLoadDriver [--url URL] [--clients N] [--requests N] [--customers N]");
+                    return;
+            }
+        }
+
+        CrmHttpServer server = null;
+        if (url == null) {
+            File dataFile = Files.createTempDirectory("crm-load").resolve("customers.txt").toFile();
+            new DatasetGenerator(customers, 5, 2, 0.8, 42).write(dataFile);
+            CRMManager crm = new CRMManager(dataFile.getPath(), CRMManager.PersistenceMode.WRITE_BEHIND);
+            server = new CrmHttpServer(crm, new InetSocketAddress("localhost", 0));
+            server.start();
+            url = "http://localhost:" + server.getPort();
+            System.out.println("Started a server with " + customers + " customers on " + url);
+        }
+        try {
+            HttpLoadDriver driver = new HttpLoadDriver(URI.create(url));
+            // A short warm-up run first, so the JIT has compiled the hot paths
+            driver.run(clients, Math.min(requests, 5000), 1);
+            System.out.print(driver.run(clients, requests, 42));
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+}
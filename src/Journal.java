@@ -0,0 +1,68 @@
+import java.io.*;
+import java.nio.file.*;
+
+// Append-only log of changes made since the last snapshot of the data file.
+// Each entry is one line in the same format as the data file, so it can be
+// replayed with the same parser.
+public class Journal {
+    private final File file;
+    private final File rotatedFile;
+    private Writer writer;
+    private long size;
+
+    public Journal(String path) {
+        this.file = new File(path);
+        this.rotatedFile = new File(path + ".old");
+        this.size = file.length();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    // Journal left over from a compaction that did not finish
+    public File getRotatedFile() {
+        return rotatedFile;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized void append(String record) throws IOException {
+        if (writer == null) {
+            writer = new BufferedWriter(new FileWriter(file, true));
+        }
+        writer.write(record);
+        writer.flush();
+        size += record.length();
+    }
+
+    // Moves the current journal aside so new changes start a fresh one.
+    // The rotated file is kept until the snapshot that covers it is written;
+    // if one is still there from an earlier run, the journal is added to it.
+    public synchronized File rotate() throws IOException {
+        close();
+        if (file.exists()) {
+            if (rotatedFile.exists()) {
+                Files.write(rotatedFile.toPath(), Files.readAllBytes(file.toPath()), StandardOpenOption.APPEND);
+                Files.delete(file.toPath());
+            } else {
+                Files.move(file.toPath(), rotatedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        size = 0;
+        return rotatedFile;
+    }
+
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.out.println("Error closing journal: " + e.getMessage());
+            }
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.Arrays;
+
+// Percentiles of a set of measured latencies, reported in microseconds
+public class LatencySummary {
+    public final String name;
+    public final int count;
+    public final double p50;
+    public final double p90;
+    public final double p99;
+    public final double p999;
+    public final double max;
+
+    // Sorts the first count entries of nanos in place
+    public LatencySummary(String name, long[] nanos, int count) {
+        Arrays.sort(nanos, 0, count);
+        this.name = name;
+        this.count = count;
+        this.p50 = percentile(nanos, count, 0.50);
+        this.p90 = percentile(nanos, count, 0.90);
+        this.p99 = percentile(nanos, count, 0.99);
+        this.p999 = percentile(nanos, count, 0.999);
+        this.max = count == 0 ? 0 : nanos[count - 1] / 1000.0;
+    }
+
+    // Percentiles read from a histogram, accurate to its bucket width
+    public LatencySummary(String name, LatencyHistogram histogram) {
+        this.name = name;
+        this.count = (int) Math.min(histogram.count(), Integer.MAX_VALUE);
+        this.p50 = histogram.percentile(0.50) / 1000.0;
+        this.p90 = histogram.percentile(0.90) / 1000.0;
+        this.p99 = histogram.percentile(0.99) / 1000.0;
+        this.p999 = histogram.percentile(0.999) / 1000.0;
+        this.max = histogram.max() / 1000.0;
+    }
+
+    private static double percentile(long[] sorted, int count, double p) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * count) - 1;
+        return sorted[Math.max(0, index)] / 1000.0;
+    }
+
+    public static String header() {
+        return String.format("%-14s %9s %10s %10s %10s %10s %10s",
+                "operation", "count", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-14s %9d %10.1f %10.1f %10.1f %10.1f %10.1f", name, count, p50, p90, p99, p999, max);
+    }
+}
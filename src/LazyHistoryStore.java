@@ -0,0 +1,495 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Text snapshot store that loads only the customer lines at startup. While
+// scanning it records where each customer's history lines sit in the file,
+// and reads a history from there the first time it is needed. Loaded
+// histories are kept in an LRU cache bounded by the number of records; the
+// least recently used ones are dropped once the bound is passed. The cache is
+// split into stripes by customer id, each with its own lock, and LRU order is
+// kept per stripe: over the bound, the accessing stripe drops its own least
+// recently used histories first, then the other stripes do. Histories changed since they were
+// loaded are pinned by the customer and stay in memory, because the data file
+// does not have the change yet; a save that writes them unpins them again.
+// Histories that are not pinned are copied from the old file as they are.
+//
+// Paged-in records are added to the manager's id indexes while they are in
+// memory. Everything that spans customers comes from the scan instead: the
+// totals, and the id, time and tags of each communication and the status and
+// due date of each task, which the manager keeps for the timeline, tag search,
+// task queries and due-date alerts without holding the histories.
+public class LazyHistoryStore implements SnapshotStore, Customer.HistoryLoader {
+    private static final byte[] CUSTOMER = "CUSTOMER".getBytes();
+    private static final byte[] COMMUNICATION = "COMMUNICATION".getBytes();
+    private static final byte[] TASK = "TASK".getBytes();
+
+    private final String path;
+    private final long maxResidentRecords;
+    // Same decoding as the text store's FileWriter and FastLoader
+    private final Charset charset = Charset.defaultCharset();
+    private final FastLoader parser = new FastLoader();
+    // Reads take the read lock; replacing the file and its offsets takes the write lock
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+    private volatile Offsets offsets = new Offsets(new int[0], new long[0], new int[0], 0);
+    private CRMManager manager;
+
+    private static final int STRIPES = 16;
+    private final ResidentStripe[] stripes = new ResidentStripe[STRIPES];
+    // Records held by all stripes
+    private final AtomicLong residentRecords = new AtomicLong();
+
+    public LazyHistoryStore(String path, long maxResidentRecords) {
+        this.path = path;
+        this.maxResidentRecords = maxResidentRecords;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ResidentStripe();
+        }
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public boolean exists() {
+        return new File(path).exists();
+    }
+
+    // Writes the same format as TextSnapshotStore, noting where each history
+    // starts. A history the old file already holds is copied from it without
+    // being paged in, so a save neither reads every history nor reorders the cache.
+    @Override
+    public void save(List<Customer> customers) throws IOException {
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+        // Saves are not run concurrently, so nothing else replaces these before the swap below
+        Offsets previous = offsets;
+        Offsets.Builder builder = new Offsets.Builder(customers.size());
+        long[] pins = new long[customers.size()];
+        long position = 0;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp.toFile()), 1 << 16);
+             FileChannel source = previous.size > 0 ? FileChannel.open(target, StandardOpenOption.READ) : null) {
+            ByteBuffer copyBuffer = null;
+            int i = 0;
+            for (Customer customer : customers) {
+                byte[] record;
+                int stored;
+                // History changes are made under the customer's lock, so what is
+                // written here is the history as of the pin read with it
+                synchronized (customer) {
+                    pins[i++] = customer.historyPin();
+                    stored = customer.isHistoryStored() ? previous.indexOf(customer.getId()) : -1;
+                    record = (stored >= 0 ? customer.fileHeader() : customer.toFileString()).getBytes(charset);
+                }
+                out.write(record);
+                if (stored < 0) {
+                    int header = indexOf(record, (byte) '\n') + 1;
+                    builder.add(customer.getId(), position + header, record.length - header);
+                    position += record.length;
+                    continue;
+                }
+                // The old file keeps these bytes until the swap, even if the history changes meanwhile
+                if (copyBuffer == null) {
+                    copyBuffer = ByteBuffer.allocate(1 << 16);
+                }
+                long length = copy(source, previous.starts[stored], previous.lengths[stored], out, copyBuffer);
+                builder.add(customer.getId(), position + record.length, length);
+                position += record.length + length;
+            }
+        }
+        // Histories being read keep the old file and offsets until this swap
+        fileLock.writeLock().lock();
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            offsets = builder.build();
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        int i = 0;
+        for (Customer customer : customers) {
+            long pin = pins[i++];
+            if (pin >= 0) {
+                customer.unpinHistory(pin);
+            }
+        }
+    }
+
+    // Restores customer headers only. Falls back to loading everything when
+    // the history lines are not grouped under their customer.
+    @Override
+    public int[] load(CRMManager manager) throws IOException {
+        this.manager = manager;
+        Scan scan = new Scan();
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            byte[] line = new byte[512];
+            int length = 0;
+            long position = 0;
+            long lineStart = 0;
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    position++;
+                    if (b == '\n') {
+                        if (!scan.line(line, length, lineStart)) {
+                            return loadEagerly(manager, scan.problem);
+                        }
+                        length = 0;
+                        lineStart = position;
+                    } else {
+                        if (length == line.length) {
+                            line = Arrays.copyOf(line, length * 2);
+                        }
+                        line[length++] = b;
+                    }
+                }
+                buffer.clear();
+            }
+            if (length > 0 && !scan.line(line, length, lineStart)) {
+                return loadEagerly(manager, scan.problem);
+            }
+            scan.finishCustomer(position);
+        }
+
+        for (Customer customer : scan.customers) {
+            customer.setHistoryLoader(this);
+            manager.restoreCustomerHeader(customer);
+        }
+        manager.addStoredTotals(scan.communications, scan.tasks, scan.completed);
+        offsets = scan.offsets.build();
+        return scan.maxIds;
+    }
+
+    // Copies a history's lines from the old file and returns how many bytes were
+    // written, ending the last line if the file did not
+    private long copy(FileChannel source, long start, int length, OutputStream out, ByteBuffer buffer)
+            throws IOException {
+        long position = start;
+        long end = start + length;
+        byte last = '\n';
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = source.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("History at " + start + " runs past the end of " + path);
+            }
+            out.write(buffer.array(), 0, read);
+            position += read;
+            if (read > 0) {
+                last = buffer.array()[read - 1];
+            }
+        }
+        if (last != '\n') {
+            out.write('\n');
+            return length + 1L;
+        }
+        return length;
+    }
+
+    private int[] loadEagerly(CRMManager manager, String reason) throws IOException {
+        System.out.println("Loading all history from " + path + ": " + reason);
+        manager.discardStoredHistory();
+        return parser.load(new File(path), manager);
+    }
+
+    @Override
+    public Customer.History load(Customer customer) {
+        Customer.History history = new Customer.History();
+        fileLock.readLock().lock();
+        try {
+            Offsets current = offsets;
+            int index = current.indexOf(customer.getId());
+            if (index < 0 || current.lengths[index] == 0) {
+                return history;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(current.lengths[index]);
+            try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+                long position = current.starts[index];
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException("History of customer " + customer.getId() + " runs past the end of " + path);
+                    }
+                }
+            }
+            buffer.flip();
+            for (Object record : parser.parseRecords(buffer)) {
+                if (record instanceof Communication) {
+                    history.addCommunication((Communication) record);
+                } else if (record instanceof Task) {
+                    history.addTask((Task) record);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error loading history: " + e.getMessage(), e);
+        } finally {
+            fileLock.readLock().unlock();
+        }
+        return history;
+    }
+
+    @Override
+    public void installed(Customer customer, Customer.History history) {
+        manager.historyPagedIn(history);
+    }
+
+    @Override
+    public void evicted(Customer customer, Customer.History history) {
+        manager.historyPagedOut(history);
+    }
+
+    @Override
+    public void accessed(Customer customer, Customer.History history) {
+        int home = customer.getId() & (STRIPES - 1);
+        stripes[home].access(customer, history);
+        List<Customer> victims = null;
+        for (int i = 0; i < STRIPES && residentRecords.get() > maxResidentRecords; i++) {
+            victims = stripes[(home + i) & (STRIPES - 1)].evict(customer, victims);
+        }
+        // Outside the stripe locks; a pinned victim just stays in memory
+        if (victims != null) {
+            for (Customer victim : victims) {
+                victim.evictHistory();
+            }
+        }
+    }
+
+    // Records held by the cache, not counting pinned histories
+    public long residentRecords() {
+        return residentRecords.get();
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return bytes.length - 1;
+    }
+
+    // One stripe of the cache, least recently used first
+    private final class ResidentStripe {
+        private final LinkedHashMap<Integer, Resident> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+        synchronized void access(Customer customer, Customer.History history) {
+            Resident entry = resident.get(customer.getId());
+            if (entry == null || entry.history != history) {
+                if (entry != null) {
+                    residentRecords.addAndGet(-entry.records);
+                }
+                entry = new Resident(customer, history);
+                resident.put(customer.getId(), entry);
+                residentRecords.addAndGet(entry.records);
+            }
+        }
+
+        // Drops least recently used histories, other than keep's, until the
+        // cache is back within its bound or this stripe has none left
+        synchronized List<Customer> evict(Customer keep, List<Customer> victims) {
+            Iterator<Resident> eldest = resident.values().iterator();
+            while (residentRecords.get() > maxResidentRecords && eldest.hasNext()) {
+                Resident victim = eldest.next();
+                if (victim.customer == keep) {
+                    continue;
+                }
+                eldest.remove();
+                residentRecords.addAndGet(-victim.records);
+                if (victims == null) {
+                    victims = new ArrayList<>();
+                }
+                victims.add(victim.customer);
+            }
+            return victims;
+        }
+    }
+
+    private static final class Resident {
+        final Customer customer;
+        final Customer.History history;
+        final int records;
+
+        Resident(Customer customer, Customer.History history) {
+            this.customer = customer;
+            this.history = history;
+            this.records = history.size();
+        }
+    }
+
+    // Where each customer's history lines are in the data file, sorted by customer id
+    private static final class Offsets {
+        final int[] ids;
+        final long[] starts;
+        final int[] lengths;
+        final int size;
+
+        Offsets(int[] ids, long[] starts, int[] lengths, int size) {
+            this.ids = ids;
+            this.starts = starts;
+            this.lengths = lengths;
+            this.size = size;
+        }
+
+        int indexOf(int id) {
+            return Arrays.binarySearch(ids, 0, size, id);
+        }
+
+        static final class Builder {
+            private int[] ids;
+            private long[] starts;
+            private int[] lengths;
+            private int size;
+            private boolean sorted = true;
+
+            Builder(int capacity) {
+                ids = new int[Math.max(16, capacity)];
+                starts = new long[ids.length];
+                lengths = new int[ids.length];
+            }
+
+            void add(int id, long start, long length) {
+                if (length > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("History of customer " + id + " is too large to page in");
+                }
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                    starts = Arrays.copyOf(starts, size * 2);
+                    lengths = Arrays.copyOf(lengths, size * 2);
+                }
+                sorted &= size == 0 || id > ids[size - 1];
+                ids[size] = id;
+                starts[size] = start;
+                lengths[size] = (int) length;
+                size++;
+            }
+
+            // Files written from the id-ordered customer map are already sorted
+            Offsets build() {
+                if (sorted) {
+                    return new Offsets(ids, starts, lengths, size);
+                }
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> Integer.compare(ids[a], ids[b]));
+                int[] sortedIds = new int[size];
+                long[] sortedStarts = new long[size];
+                int[] sortedLengths = new int[size];
+                for (int i = 0; i < size; i++) {
+                    sortedIds[i] = ids[order[i]];
+                    sortedStarts[i] = starts[order[i]];
+                    sortedLengths[i] = lengths[order[i]];
+                }
+                return new Offsets(sortedIds, sortedStarts, sortedLengths, size);
+            }
+        }
+    }
+
+    // State of the startup scan. Only customer lines are turned into objects;
+    // history lines are checked for their ids and counted, and the fields the
+    // manager's cross-customer indexes need are handed to it.
+    private final class Scan {
+        final List<Customer> customers = new ArrayList<>();
+        final Offsets.Builder offsets = new Offsets.Builder(1024);
+        final int[] maxIds = new int[3];
+        long communications;
+        long tasks;
+        long completed;
+        String problem;
+        private Customer current;
+        private long historyStart;
+        // Fields are split the way FastLoader splits them when the history is paged in
+        private final int[] fieldStart = new int[FastLoader.MAX_FIELDS];
+        private final int[] fieldEnd = new int[FastLoader.MAX_FIELDS];
+
+        // Returns false if the file cannot be paged, with the reason in problem
+        boolean line(byte[] line, int length, long lineStart) {
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (length == 0) {
+                return true;
+            }
+            int fields = FastLoader.split(line, length, fieldStart, fieldEnd);
+            if (field(line, 0, CUSTOMER)) {
+                if (fields < 6) {
+                    problem = "malformed record " + new String(line, 0, length, charset);
+                    return false;
+                }
+                finishCustomer(lineStart);
+                int id = FastLoader.parseInt(line, fieldStart[1], fieldEnd[1]);
+                current = new Customer(id, text(line, 2), text(line, 3), text(line, 4), text(line, 5));
+                customers.add(current);
+                if (id > maxIds[0]) maxIds[0] = id;
+                historyStart = -1;
+                return true;
+            }
+            boolean isCommunication = field(line, 0, COMMUNICATION);
+            boolean isTask = !isCommunication && field(line, 0, TASK);
+            if (!isCommunication && !isTask) {
+                return true;
+            }
+            if (fields < 7) {
+                problem = "malformed record " + new String(line, 0, length, charset);
+                return false;
+            }
+            int id = FastLoader.parseInt(line, fieldStart[1], fieldEnd[1]);
+            int customerId = FastLoader.parseInt(line, fieldStart[2], fieldEnd[2]);
+            if (current == null || customerId != current.getId()) {
+                problem = "history of customer " + customerId + " is not under its customer line";
+                return false;
+            }
+            if (historyStart < 0) {
+                historyStart = lineStart;
+            }
+            if (isCommunication) {
+                communications++;
+                if (id > maxIds[1]) maxIds[1] = id;
+                manager.restoreStoredCommunication(current, id,
+                        FastLoader.parseDateTime(line, fieldStart[5], fieldEnd[5]), text(line, 6));
+            } else {
+                tasks++;
+                if (id > maxIds[2]) maxIds[2] = id;
+                boolean done = FastLoader.parseBoolean(line, fieldStart[6], fieldEnd[6]);
+                if (done) {
+                    completed++;
+                }
+                TaskPriority priority = parser.priority(line, fieldStart[5], fieldEnd[5]);
+                LocalDateTime dueDate = done ? null : FastLoader.parseDateTime(line, fieldStart[4], fieldEnd[4]);
+                manager.restoreStoredTask(id, customerId, dueDate, priority, done);
+            }
+            return true;
+        }
+
+        private boolean field(byte[] line, int field, byte[] word) {
+            return FastLoader.startsWith(line, fieldStart[field], fieldEnd[field], word);
+        }
+
+        private String text(byte[] line, int field) {
+            return parser.text(line, fieldStart[field], fieldEnd[field]);
+        }
+
+        void finishCustomer(long end) {
+            if (current != null) {
+                long start = historyStart < 0 ? end : historyStart;
+                offsets.add(current.getId(), start, end - start);
+                current = null;
+            }
+        }
+    }
+}
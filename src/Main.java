@@ -1,9 +1,14 @@
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
 import java.io.*;
 
 public class Main {
+    private static final int PAGE_SIZE = 20;
     private static Scanner scanner = new Scanner(System.in);
     private static CRMManager crm = CRMManager.getInstance();
 
@@ -11,6 +16,15 @@ public class Main {
         // Set up notification manager
         NotificationManager notificationManager = new NotificationManager("System");
         crm.addObserver(notificationManager);
+        if (Boolean.getBoolean("crm.asyncEvents")) {
+            crm.setAsyncDispatch(new AsyncEventBus(1024, 1, 64, AsyncEventBus.BackpressurePolicy.COALESCE));
+        }
+        crm.getTaskScheduler().start(30, TimeUnit.SECONDS);
+        crm.getMetrics().registerMBean();
+        long metricsDump = Long.getLong("crm.metricsDump", 0);
+        if (metricsDump > 0) {
+            crm.getMetrics().startDump(metricsDump, TimeUnit.SECONDS);
+        }
 
         System.out.println("=== Welcome to Simple CRM System ===");
         System.out.print("Enter your name: ");
@@ -50,6 +64,11 @@ public class Main {
                 case 9:
                     System.out.println("Thank you for using Simple CRM System!");
                      crm.saveToFile();
+                    crm.close();
+                    crm.getTaskScheduler().stop();
+                    if (crm.getAsyncDispatch() != null) {
+                        crm.getAsyncDispatch().close();
+                    }
                     running = false;
                     break;
                 default:
@@ -89,29 +108,60 @@ public class Main {
     }
 
     private static void viewAllCustomers() {
+        CustomerPage.Sort sort = getSortInput();
         System.out.println("\n--- All Customers ---");
-        List<Customer> customers = crm.getAllCustomers();
-        if (customers.isEmpty()) {
-            System.out.println("No customers found.");
-        } else {
-            for (Customer customer : customers) {
-                System.out.println(customer);
-            }
+        // One snapshot for the whole listing, so later pages match the first
+        try (CrmSnapshot snapshot = crm.openSnapshot()) {
+            printPages(after -> snapshot.getCustomerPage(after, PAGE_SIZE, sort), "No customers found.");
         }
     }
 
     private static void searchCustomers() {
         System.out.print("Enter search partial keyword (name, email, or phone): ");
         String keyword = scanner.nextLine();
-        List<Customer> results = crm.searchCustomers(keyword);
-        
+        CustomerPage.Sort sort = getSortInput();
+
         System.out.println("\n--- Search Results ---");
-        if (results.isEmpty()) {
-            System.out.println("No customers found matching: " + keyword);
-        } else {
-            for (Customer customer : results) {
+        try (CrmSnapshot snapshot = crm.openSnapshot()) {
+            printPages(after -> snapshot.searchCustomerPage(keyword, after, PAGE_SIZE, sort),
+                    "No customers found matching: " + keyword);
+        }
+    }
+
+    // Fetches and prints one page at a time, asking before each further page
+    private static void printPages(IntFunction<CustomerPage> fetch, String emptyMessage) {
+        CustomerPage page = fetch.apply(0);
+        if (page.getItems().isEmpty()) {
+            System.out.println(emptyMessage);
+            return;
+        }
+        while (true) {
+            for (Customer customer : page.getItems()) {
                 System.out.println(customer);
             }
+            if (!page.hasNext()) {
+                return;
+            }
+            System.out.print("Show more? (y/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                return;
+            }
+            page = fetch.apply(page.getNextAfter());
+        }
+    }
+
+    private static CustomerPage.Sort getSortInput() {
+        while (true) {
+            System.out.print("Sort by (id/name/email) [id]: ");
+            String sort = scanner.nextLine().trim();
+            if (sort.isEmpty()) {
+                return CustomerPage.Sort.ID;
+            }
+            try {
+                return CustomerPage.Sort.valueOf(sort.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Please enter id, name or email.");
+            }
         }
     }
 
@@ -133,7 +183,14 @@ public class Main {
         System.out.print("Tags (optional): ");
         String tags = scanner.nextLine();
 
-        Communication comm = CRMFactory.createCommunication(customerId, type, description, tags);        crm.addCommunicationToCustomer(customerId, comm);
+        Communication comm;
+        try {
+            comm = CRMFactory.createCommunication(customerId, type, description, tags);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        crm.addCommunicationToCustomer(customerId, comm);
         System.out.println("Communication added successfully!");
     }
 
@@ -156,7 +213,14 @@ public class Main {
         String priority = scanner.nextLine();
 
         LocalDateTime dueDate = LocalDateTime.now().plusDays(days);
-        Task task = CRMFactory.createTask(customerId, description, dueDate, priority);        crm.addTaskToCustomer(customerId, task);
+        Task task;
+        try {
+            task = CRMFactory.createTask(customerId, description, dueDate, priority);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        crm.addTaskToCustomer(customerId, task);
         System.out.println("Task added successfully!");
     }
 
@@ -187,16 +251,8 @@ public class Main {
         }
 
         int taskId = getIntInput("Enter Task ID to mark complete: ");
-        Task taskToComplete = tasks.stream()
-                .filter(t -> t.getId() == taskId)
-                .findFirst()
-                .orElse(null);
-
-        if (taskToComplete != null) {
-            taskToComplete.setCompleted(true);
-            crm.saveToFile();
+        if (crm.completeTask(customerId, taskId)) {
             System.out.println("Task marked as completed!");
-            crm.notifyObservers("Task completed for " + customer.getName() + ": " + taskToComplete.getDescription());
         } else {
             System.out.println("Task not found!");
         }
@@ -206,6 +262,8 @@ public class Main {
         System.out.println("\n--- Reports ---");
         System.out.println("1. Customer Report");
         System.out.println("2. Overall Report");
+        System.out.println("3. Today's Activity");
+        System.out.println("4. Communications by Tag");
         int choice = getIntInput("Choose report type: ");
 
         switch (choice) {
@@ -216,6 +274,26 @@ public class Main {
             case 2:
                 crm.generateOverallReport();
                 break;
+            case 3:
+                List<Communication> today = crm.getCommunicationsOn(LocalDate.now());
+                System.out.println("\n=== TODAY'S ACTIVITY (" + today.size() + ") ===");
+                for (Communication comm : today) {
+                    Customer customer = crm.findCustomerById(comm.getCustomerId());
+                    System.out.println("  " + (customer != null ? customer.getName() + ": " : "") + comm);
+                }
+                break;
+            case 4:
+                System.out.print("Tags (comma separated): ");
+                Set<String> tags = TagIndex.parse(scanner.nextLine());
+                System.out.print("Match all tags? (y/n): ");
+                boolean matchAll = scanner.nextLine().trim().equalsIgnoreCase("y");
+                List<Communication> tagged = crm.findCommunicationsByTags(tags, matchAll);
+                System.out.println("\n--- Communications tagged " + String.join(matchAll ? " and " : " or ", tags)
+                        + " (" + tagged.size() + ") ---");
+                for (Communication comm : tagged) {
+                    System.out.println("  " + comm);
+                }
+                break;
             default:
                 System.out.println("Invalid choice.");
         }
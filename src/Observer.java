@@ -1,4 +1,13 @@
+import java.util.List;
+
 public interface Observer {
     void update(String message);
+
+    // Called with several messages at once when events are delivered in batches
+    default void updateBatch(List<String> messages) {
+        for (String message : messages) {
+            update(message);
+        }
+    }
 }
 
@@ -0,0 +1,169 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+// Keeps communications outside the Java heap. Rows are stored column by
+// column in direct buffers, and descriptions and tags as UTF-8 in an arena
+// of direct chunks. append() returns a flyweight: a small Communication that
+// only holds its row number and reads its fields from the buffers on demand,
+// so the heap holds one tiny object per communication instead of the record,
+// its strings and its LocalDateTime.
+//
+// Rows are never changed or removed once written. Appends are serialised;
+// readers do not lock, because a row is written before its flyweight is
+// handed out and the buffers are only ever grown by adding blocks.
+public class OffHeapCommunicationStore {
+    private static final int ROWS_PER_BLOCK = 1 << 14;
+    private static final int ARENA_CHUNK_SIZE = 1 << 20;
+    private static final int NO_STRING = -1;
+
+    // Column offsets within a block, each column ROWS_PER_BLOCK values long
+    private static final int ID = 0;
+    private static final int CUSTOMER_ID = ID + 4 * ROWS_PER_BLOCK;
+    private static final int SECONDS = CUSTOMER_ID + 4 * ROWS_PER_BLOCK;
+    private static final int NANOS = SECONDS + 8 * ROWS_PER_BLOCK;
+    private static final int DESCRIPTION_REF = NANOS + 4 * ROWS_PER_BLOCK;
+    private static final int DESCRIPTION_LENGTH = DESCRIPTION_REF + 8 * ROWS_PER_BLOCK;
+    private static final int TAGS_REF = DESCRIPTION_LENGTH + 4 * ROWS_PER_BLOCK;
+    private static final int TAGS_LENGTH = TAGS_REF + 8 * ROWS_PER_BLOCK;
+    private static final int TYPE = TAGS_LENGTH + 4 * ROWS_PER_BLOCK;
+    private static final int BLOCK_SIZE = TYPE + ROWS_PER_BLOCK;
+
+    private volatile ByteBuffer[] blocks = new ByteBuffer[0];
+    private volatile ByteBuffer[] arena = new ByteBuffer[0];
+    private int rows;
+    // Write position in the last arena chunk
+    private int arenaPosition = ARENA_CHUNK_SIZE;
+    private long arenaBytes;
+
+    // Copies the communication into the store and returns its flyweight
+    public synchronized Communication append(Communication comm) {
+        int row = rows;
+        int blockIndex = row / ROWS_PER_BLOCK;
+        if (blockIndex == blocks.length) {
+            ByteBuffer[] grown = Arrays.copyOf(blocks, blockIndex + 1);
+            grown[blockIndex] = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            blocks = grown;
+        }
+        ByteBuffer block = blocks[blockIndex];
+        int slot = row % ROWS_PER_BLOCK;
+
+        block.putInt(ID + 4 * slot, comm.getId());
+        block.putInt(CUSTOMER_ID + 4 * slot, comm.getCustomerId());
+        CommunicationType type = comm.getType();
+        block.put(TYPE + slot, type == null ? -1 : type.code());
+        LocalDateTime timestamp = comm.getTimestamp();
+        block.putLong(SECONDS + 8 * slot, timestamp == null ? Long.MIN_VALUE : timestamp.toEpochSecond(ZoneOffset.UTC));
+        block.putInt(NANOS + 4 * slot, timestamp == null ? 0 : timestamp.getNano());
+        writeString(block, slot, DESCRIPTION_REF, DESCRIPTION_LENGTH, comm.getDescription());
+        writeString(block, slot, TAGS_REF, TAGS_LENGTH, comm.getTags());
+        rows++;
+        return new Flyweight(this, row);
+    }
+
+    public synchronized int size() {
+        return rows;
+    }
+
+    // Direct memory taken by row blocks and the string arena
+    public synchronized long offHeapBytes() {
+        return (long) blocks.length * BLOCK_SIZE + (long) arena.length * ARENA_CHUNK_SIZE;
+    }
+
+    // UTF-8 bytes of all stored descriptions and tags
+    public synchronized long stringBytes() {
+        return arenaBytes;
+    }
+
+    private void writeString(ByteBuffer block, int slot, int refColumn, int lengthColumn, String value) {
+        if (value == null) {
+            block.putInt(lengthColumn + 4 * slot, NO_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (arenaPosition + bytes.length > ARENA_CHUNK_SIZE || arena.length == 0) {
+            // Strings never span chunks; one longer than a chunk gets a chunk of its own
+            ByteBuffer[] grown = Arrays.copyOf(arena, arena.length + 1);
+            grown[arena.length] = ByteBuffer.allocateDirect(Math.max(ARENA_CHUNK_SIZE, bytes.length));
+            arena = grown;
+            arenaPosition = 0;
+        }
+        int chunk = arena.length - 1;
+        arena[chunk].put(arenaPosition, bytes);
+        block.putLong(refColumn + 8 * slot, ((long) chunk << 32) | arenaPosition);
+        block.putInt(lengthColumn + 4 * slot, bytes.length);
+        arenaPosition += bytes.length;
+        arenaBytes += bytes.length;
+    }
+
+    private ByteBuffer block(int row) {
+        return blocks[row / ROWS_PER_BLOCK];
+    }
+
+    private String readString(int row, int refColumn, int lengthColumn) {
+        ByteBuffer block = block(row);
+        int slot = row % ROWS_PER_BLOCK;
+        int length = block.getInt(lengthColumn + 4 * slot);
+        if (length == NO_STRING) {
+            return null;
+        }
+        long ref = block.getLong(refColumn + 8 * slot);
+        byte[] bytes = new byte[length];
+        arena[(int) (ref >>> 32)].get((int) ref, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // A communication backed by one row of the store. It inherits the seven
+    // fields of Communication and leaves them unset, so with compressed
+    // references it takes 48 bytes: a 12 byte header, 28 bytes of unused
+    // fields, and the store and row. A heap communication takes 40 bytes plus
+    // about 72 for its LocalDateTime and 40 or more for each of its strings.
+    private static final class Flyweight extends Communication {
+        private final OffHeapCommunicationStore store;
+        private final int row;
+
+        Flyweight(OffHeapCommunicationStore store, int row) {
+            this.store = store;
+            this.row = row;
+        }
+
+        @Override
+        public int getId() {
+            return store.block(row).getInt(ID + 4 * (row % ROWS_PER_BLOCK));
+        }
+
+        @Override
+        public int getCustomerId() {
+            return store.block(row).getInt(CUSTOMER_ID + 4 * (row % ROWS_PER_BLOCK));
+        }
+
+        @Override
+        public CommunicationType getType() {
+            byte code = store.block(row).get(TYPE + row % ROWS_PER_BLOCK);
+            return code < 0 ? null : CommunicationType.fromCode(code);
+        }
+
+        @Override
+        public LocalDateTime getTimestamp() {
+            ByteBuffer block = store.block(row);
+            int slot = row % ROWS_PER_BLOCK;
+            long seconds = block.getLong(SECONDS + 8 * slot);
+            if (seconds == Long.MIN_VALUE) {
+                return null;
+            }
+            return LocalDateTime.ofEpochSecond(seconds, block.getInt(NANOS + 4 * slot), ZoneOffset.UTC);
+        }
+
+        @Override
+        public String getDescription() {
+            return store.readString(row, DESCRIPTION_REF, DESCRIPTION_LENGTH);
+        }
+
+        @Override
+        public String getTags() {
+            return store.readString(row, TAGS_REF, TAGS_LENGTH);
+        }
+    }
+}
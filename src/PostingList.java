@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+// Sorted set of ids backed by an int array. Ids normally arrive in increasing
+// order, so adding is usually an append.
+public class PostingList {
+    private int[] ids;
+    private int size;
+
+    public PostingList() {
+        this(4);
+    }
+
+    public PostingList(int capacity) {
+        ids = new int[Math.max(1, capacity)];
+    }
+
+    // Builds a list from ids in any order; sorts once and drops duplicates
+    static PostingList fromUnsorted(int[] ids, int count) {
+        PostingList list = new PostingList(count);
+        int[] sorted = list.ids;
+        System.arraycopy(ids, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        for (int i = 0; i < count; i++) {
+            if (list.size == 0 || sorted[i] != sorted[list.size - 1]) {
+                sorted[list.size++] = sorted[i];
+            }
+        }
+        return list;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int index) {
+        return ids[index];
+    }
+
+    public boolean contains(int id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    // Returns false if the id was already present
+    public boolean add(int id) {
+        if (size == 0 || id > ids[size - 1]) {
+            ensureCapacity(size + 1);
+            ids[size++] = id;
+            return true;
+        }
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos >= 0) {
+            return false;
+        }
+        pos = -pos - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+        ids[pos] = id;
+        size++;
+        return true;
+    }
+
+    public boolean remove(int id) {
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+        size--;
+        return true;
+    }
+
+    public PostingList copy() {
+        PostingList copy = new PostingList(size);
+        System.arraycopy(ids, 0, copy.ids, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    // Ids present in both lists. Walks the shorter list and gallops through the longer one.
+    public PostingList intersect(PostingList other) {
+        PostingList small = size <= other.size ? this : other;
+        PostingList large = small == this ? other : this;
+        PostingList result = new PostingList(small.size);
+        int from = 0;
+        for (int i = 0; i < small.size && from < large.size; i++) {
+            int id = small.ids[i];
+            from = large.seek(id, from);
+            if (from < large.size && large.ids[from] == id) {
+                result.ids[result.size++] = id;
+                from++;
+            }
+        }
+        return result;
+    }
+
+    // Ids present in either list
+    public PostingList union(PostingList other) {
+        PostingList result = new PostingList(size + other.size);
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            int next;
+            if (j >= other.size || (i < size && ids[i] < other.ids[j])) {
+                next = ids[i++];
+            } else if (i >= size || other.ids[j] < ids[i]) {
+                next = other.ids[j++];
+            } else {
+                next = ids[i++];
+                j++;
+            }
+            result.ids[result.size++] = next;
+        }
+        return result;
+    }
+
+    // First position whose id is greater than the given one
+    public int indexAfter(int id) {
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        return pos >= 0 ? pos + 1 : -pos - 1;
+    }
+
+    // First position at or after from whose id is >= target
+    private int seek(int target, int from) {
+        int step = 1;
+        int hi = from;
+        while (hi < size && ids[hi] < target) {
+            from = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        int pos = Arrays.binarySearch(ids, from, Math.min(hi + 1, size), target);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(capacity, ids.length * 2));
+        }
+    }
+}
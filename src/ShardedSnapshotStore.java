@@ -0,0 +1,250 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Customers split by id over several files in one directory. Each shard is
+// a customers.txt-format file holding whole customers with their
+// communications and tasks. Shards are written and parsed in parallel on the
+// fork-join pool, and a save only rewrites the shards whose customers changed
+// since the last save or load. The manifest is written after the shards:
+//   SHARDS|<count>
+//   SHARD|<index>|<customers>|<highest customer id>|<highest communication id>|<highest task id>
+public class ShardedSnapshotStore implements SnapshotStore {
+    static final int DEFAULT_SHARDS = 16;
+    private static final String MANIFEST = "manifest.txt";
+
+    private final String directory;
+    private final int shardCount;
+    // 1 for a shard with changes not yet saved; all shards start out changed
+    private final AtomicIntegerArray dirty;
+    // The manifest entry of each shard as last saved or loaded; null until then
+    private Shard[] written;
+
+    // A shard's manifest entry
+    private static final class Shard {
+        final int customers;
+        final int[] maxIds;
+
+        Shard(int customers, int[] maxIds) {
+            this.customers = customers;
+            this.maxIds = maxIds;
+        }
+    }
+
+    public ShardedSnapshotStore(String directory, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        this.directory = directory;
+        this.shardCount = shardCount;
+        this.dirty = new AtomicIntegerArray(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            dirty.set(i, 1);
+        }
+    }
+
+    @Override
+    public String getPath() {
+        return directory;
+    }
+
+    @Override
+    public boolean exists() {
+        return new File(directory, MANIFEST).exists();
+    }
+
+    @Override
+    public long size() {
+        long size = new File(directory, MANIFEST).length();
+        File[] files = new File(directory).listFiles((dir, name) -> name.startsWith("shard-"));
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void changed(Customer customer) {
+        int shard = shardOf(customer.getId());
+        if (dirty.get(shard) == 0) {
+            dirty.set(shard, 1);
+        }
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    int shardOf(int customerId) {
+        return Math.floorMod(customerId, shardCount);
+    }
+
+    File shardFile(int shard) {
+        return new File(directory, String.format("shard-%03d.txt", shard));
+    }
+
+    @Override
+    public synchronized void save(List<Customer> customers) throws IOException {
+        Files.createDirectories(Paths.get(directory));
+        List<List<Customer>> parts = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (Customer customer : customers) {
+            parts.get(shardOf(customer.getId())).add(customer);
+        }
+
+        // A shard is marked clean before it is written, so a change made
+        // meanwhile marks it again for the next save
+        Shard[] shards = new Shard[shardCount];
+        List<ForkJoinTask<Shard>> tasks = new ArrayList<>();
+        List<Integer> rewritten = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            int shard = i;
+            boolean changed = dirty.getAndSet(shard, 0) == 1;
+            if (changed || written == null || !shardFile(shard).exists()) {
+                tasks.add(ForkJoinPool.commonPool().submit(() -> writeShard(shard, parts.get(shard))));
+                rewritten.add(shard);
+            } else {
+                shards[shard] = written[shard];
+            }
+        }
+        IOException failure = null;
+        for (int i = 0; i < tasks.size(); i++) {
+            int shard = rewritten.get(i);
+            try {
+                shards[shard] = tasks.get(i).join();
+            } catch (UncheckedIOException e) {
+                dirty.set(shard, 1);
+                failure = failure == null ? e.getCause() : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        writeManifest(shards);
+        written = shards;
+        // Shards left from a save with more of them
+        for (int shard = shardCount; shardFile(shard).exists(); shard++) {
+            shardFile(shard).delete();
+        }
+    }
+
+    // Runs on the pool, so I/O errors come back unchecked
+    private Shard writeShard(int shard, List<Customer> customers) {
+        Path target = shardFile(shard).toPath();
+        Path temp = Paths.get(target + ".tmp");
+        int[] maxIds = new int[3];
+        try {
+            try (Writer writer = new BufferedWriter(new FileWriter(temp.toFile()), 1 << 16)) {
+                for (Customer customer : customers) {
+                    maxIds[0] = Math.max(maxIds[0], customer.getId());
+                    for (Communication comm : customer.getCommunications()) {
+                        maxIds[1] = Math.max(maxIds[1], comm.getId());
+                    }
+                    for (Task task : customer.getTasks()) {
+                        maxIds[2] = Math.max(maxIds[2], task.getId());
+                    }
+                    writer.write(customer.toFileString());
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Shard(customers.size(), maxIds);
+    }
+
+    private void writeManifest(Shard[] shards) throws IOException {
+        Path target = Paths.get(directory, MANIFEST);
+        Path temp = Paths.get(directory, MANIFEST + ".tmp");
+        try (Writer writer = new BufferedWriter(new FileWriter(temp.toFile()))) {
+            writer.write("SHARDS|" + shards.length + "\n");
+            for (int i = 0; i < shards.length; i++) {
+                int[] maxIds = shards[i].maxIds;
+                writer.write("SHARD|" + i + "|" + shards[i].customers + "|"
+                        + maxIds[0] + "|" + maxIds[1] + "|" + maxIds[2] + "\n");
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Parses every shard in parallel and restores them in shard order as they
+    // finish. The highest ids are the larger of the manifest's and the
+    // records', so a shard replaced just before a crash that kept the
+    // manifest from being updated still moves the id counters on.
+    @Override
+    public synchronized int[] load(CRMManager manager) throws IOException {
+        Shard[] shards = readManifest();
+        int customers = 0;
+        for (Shard shard : shards) {
+            customers += shard.customers;
+        }
+        manager.ensureCapacity(customers, 0, 0);
+
+        FastLoader loader = new FastLoader();
+        List<ForkJoinTask<FastLoader.Chunk>> tasks = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            File file = shardFile(i);
+            tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                try {
+                    return loader.parseFile(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        int[] maxIds = FastLoader.restore(tasks, manager, directory);
+        for (Shard shard : shards) {
+            for (int i = 0; i < 3; i++) {
+                maxIds[i] = Math.max(maxIds[i], shard.maxIds[i]);
+            }
+        }
+
+        // Saved with another shard count: everything is rewritten on the next save
+        if (shards.length == shardCount) {
+            written = shards;
+            for (int i = 0; i < shardCount; i++) {
+                dirty.set(i, 0);
+            }
+        }
+        return maxIds;
+    }
+
+    private Shard[] readManifest() throws IOException {
+        File manifest = new File(directory, MANIFEST);
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifest))) {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith("SHARDS|")) {
+                throw new IOException(manifest + " is not a shard manifest");
+            }
+            Shard[] shards;
+            try {
+                shards = new Shard[Integer.parseInt(header.substring("SHARDS|".length()))];
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split("\\|");
+                    if (parts.length != 6 || !parts[0].equals("SHARD")) {
+                        continue;
+                    }
+                    int[] maxIds = {Integer.parseInt(parts[3]), Integer.parseInt(parts[4]), Integer.parseInt(parts[5])};
+                    shards[Integer.parseInt(parts[1])] = new Shard(Integer.parseInt(parts[2]), maxIds);
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed shard manifest " + manifest + ": " + e.getMessage());
+            }
+            for (int i = 0; i < shards.length; i++) {
+                if (shards[i] == null || !shardFile(i).exists()) {
+                    throw new IOException("Shard " + i + " missing from " + directory);
+                }
+            }
+            return shards;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.Arrays;
+
+// Converts a data file between the text and binary snapshot formats and
+// reports how long each format takes to load. Both are loaded once to warm
+// up, then timed in alternating rounds so the JIT and the page cache favour
+// neither; the medians are a rough guide, and PersistenceBenchmark in the
+// benchmarks module gives the careful numbers.
+//
+//   java SnapshotConverter customers.txt            text -> binary (customers.bin)
+//   java SnapshotConverter customers.txt --to-text  binary -> text
+public class SnapshotConverter {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java SnapshotConverter <data file> [--to-text]");
+            return;
+        }
+        String dataFile = args[0];
+        boolean toText = args.length > 1 && args[1].equals("--to-text");
+        CRMManager.StorageFormat from = toText ? CRMManager.StorageFormat.BINARY : CRMManager.StorageFormat.TEXT;
+        CRMManager.StorageFormat to = toText ? CRMManager.StorageFormat.TEXT : CRMManager.StorageFormat.BINARY;
+
+        CRMManager source = new CRMManager(dataFile, CRMManager.PersistenceMode.SNAPSHOT, from);
+
+        SnapshotStore target = toText
+                ? new TextSnapshotStore(dataFile)
+                : new BinarySnapshotStore(CRMManager.binaryPath(dataFile));
+        long start = System.nanoTime();
+        target.save(source.getAllCustomers());
+        long save = System.nanoTime() - start;
+        System.out.println("Wrote " + target.getPath() + " in " + millis(save) + " ms");
+
+        CRMManager converted = new CRMManager(dataFile, CRMManager.PersistenceMode.SNAPSHOT, to);
+        if (converted.getAllCustomers().size() != source.getAllCustomers().size()) {
+            System.out.println("Warning: customer counts differ after conversion");
+        }
+        // The loads above warmed up both formats; drop them before timing
+        source = null;
+        converted = null;
+
+        long[] sourceLoads = new long[ROUNDS];
+        long[] targetLoads = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            sourceLoads[i] = timeLoad(dataFile, from);
+            targetLoads[i] = timeLoad(dataFile, to);
+        }
+        long sourceLoad = median(sourceLoads);
+        long targetLoad = median(targetLoads);
+        System.out.println(from + " load: " + millis(sourceLoad) + " ms (median of " + ROUNDS + ")");
+        System.out.println(to + " load: " + millis(targetLoad) + " ms (median of " + ROUNDS + ")");
+        System.out.printf("Speedup: %.2fx%n", (double) sourceLoad / Math.max(1, targetLoad));
+    }
+
+    private static long timeLoad(String dataFile, CRMManager.StorageFormat format) {
+        long start = System.nanoTime();
+        new CRMManager(dataFile, CRMManager.PersistenceMode.SNAPSHOT, format);
+        return System.nanoTime() - start;
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
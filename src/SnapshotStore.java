@@ -0,0 +1,27 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+// A persisted copy of every customer together with its communications and tasks
+public interface SnapshotStore {
+    // Replaces the stored snapshot with the given customers
+    void save(List<Customer> customers) throws IOException;
+
+    // Hands every stored record to the manager's restore methods and returns
+    // the highest customer, communication and task ids seen
+    int[] load(CRMManager manager) throws IOException;
+
+    boolean exists();
+
+    String getPath();
+
+    // Bytes the snapshot takes on disk
+    default long size() {
+        return new File(getPath()).length();
+    }
+
+    // Told about every change to a customer once it is applied, for stores
+    // that only rewrite what changed since the last save
+    default void changed(Customer customer) {
+    }
+}
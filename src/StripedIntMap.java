@@ -0,0 +1,115 @@
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Thread-safe int-keyed map split into stripes, each an IntMap behind its own
+// read/write lock, so writers only block the readers of one stripe.
+public class StripedIntMap<V> {
+    private static final int STRIPES = 64;
+
+    private final IntMap<V>[] maps;
+    private final ReadWriteLock[] locks;
+
+    public StripedIntMap() {
+        maps = newMaps(STRIPES);
+        locks = new ReadWriteLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            maps[i] = new IntMap<>();
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> IntMap<V>[] newMaps(int length) {
+        return (IntMap<V>[]) new IntMap<?>[length];
+    }
+
+    private static int stripe(int key) {
+        return key & (STRIPES - 1);
+    }
+
+    public V get(int key) {
+        int s = stripe(key);
+        locks[s].readLock().lock();
+        try {
+            return maps[s].get(key);
+        } finally {
+            locks[s].readLock().unlock();
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    public V put(int key, V value) {
+        int s = stripe(key);
+        locks[s].writeLock().lock();
+        try {
+            return maps[s].put(key, value);
+        } finally {
+            locks[s].writeLock().unlock();
+        }
+    }
+
+    // Adds the mapping only if the key is absent; returns the value already present, if any
+    public V putIfAbsent(int key, V value) {
+        int s = stripe(key);
+        locks[s].writeLock().lock();
+        try {
+            V existing = maps[s].get(key);
+            if (existing == null) {
+                maps[s].put(key, value);
+            }
+            return existing;
+        } finally {
+            locks[s].writeLock().unlock();
+        }
+    }
+
+    public V remove(int key) {
+        int s = stripe(key);
+        locks[s].writeLock().lock();
+        try {
+            return maps[s].remove(key);
+        } finally {
+            locks[s].writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            locks[s].readLock().lock();
+            try {
+                size += maps[s].size();
+            } finally {
+                locks[s].readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    public void ensureCapacity(int expectedSize) {
+        for (int s = 0; s < STRIPES; s++) {
+            locks[s].writeLock().lock();
+            try {
+                maps[s].ensureCapacity(expectedSize / STRIPES + 1);
+            } finally {
+                locks[s].writeLock().unlock();
+            }
+        }
+    }
+
+    // Visits each stripe under its read lock, so the action must not write to this map
+    public void forEachValue(Consumer<? super V> action) {
+        for (int s = 0; s < STRIPES; s++) {
+            locks[s].readLock().lock();
+            try {
+                maps[s].forEachValue(action);
+            } finally {
+                locks[s].readLock().unlock();
+            }
+        }
+    }
+}
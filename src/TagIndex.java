@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Inverted index from tags to the ids of the communications carrying them.
+// Tags are the words of Communication.tags, split on commas, semicolons and
+// whitespace, lowercased and without a leading '#', so "Urgent, #VIP" has the
+// tags "urgent" and "vip". Posting lists are locked one at a time, the same way
+// TrigramIndex does it.
+public class TagIndex {
+    private final Map<String, PostingList> postings = new ConcurrentHashMap<>();
+    // Ids noted by a loader for histories it leaves in the data file, merged by rebuild
+    private final Map<String, IdBuffer> stored = new HashMap<>();
+
+    public static Set<String> parse(String tags) {
+        Set<String> parsed = new LinkedHashSet<>();
+        if (tags == null) {
+            return parsed;
+        }
+        for (String tag : tags.split("[,;\\s]+")) {
+            String normalised = normalise(tag);
+            if (!normalised.isEmpty()) {
+                parsed.add(normalised);
+            }
+        }
+        return parsed;
+    }
+
+    private static String normalise(String tag) {
+        tag = tag.trim().toLowerCase();
+        return tag.startsWith("#") ? tag.substring(1) : tag;
+    }
+
+    public void add(Communication comm) {
+        for (String tag : parse(comm.getTags())) {
+            PostingList list = postings.computeIfAbsent(tag, k -> new PostingList());
+            synchronized (list) {
+                list.add(comm.getId());
+            }
+        }
+    }
+
+    // Indexes a batch, locking each tag's list once for the whole batch
+    public void addAll(List<Communication> comms) {
+        Map<String, IdBuffer> batch = group(comms, new HashMap<>());
+        for (Map.Entry<String, IdBuffer> entry : batch.entrySet()) {
+            IdBuffer ids = entry.getValue();
+            PostingList list = postings.computeIfAbsent(entry.getKey(), k -> new PostingList(ids.size));
+            synchronized (list) {
+                for (int i = 0; i < ids.size; i++) {
+                    list.add(ids.ids[i]);
+                }
+            }
+        }
+    }
+
+    // A communication whose history a loader leaves in the data file. Only
+    // used while loading; the id is indexed by the next rebuild.
+    void addStored(int id, String tags) {
+        for (String tag : parse(tags)) {
+            stored.computeIfAbsent(tag, k -> new IdBuffer()).add(id);
+        }
+    }
+
+    // Replaces the whole index. Ids are collected per tag and each list is
+    // sorted once, rather than inserted one by one in whatever order the data
+    // file holds them. Only used while loading, before readers can see the index.
+    public void rebuild(Iterable<Customer> customers) {
+        Map<String, IdBuffer> batch = new HashMap<>(stored);
+        stored.clear();
+        for (Customer customer : customers) {
+            // Histories left in the data file were noted by addStored; one paged
+            // in since may repeat those ids, which fromUnsorted drops
+            if (customer.isHistoryLoaded()) {
+                group(customer.getCommunications(), batch);
+            }
+        }
+        postings.clear();
+        for (Map.Entry<String, IdBuffer> entry : batch.entrySet()) {
+            postings.put(entry.getKey(), PostingList.fromUnsorted(entry.getValue().ids, entry.getValue().size));
+        }
+    }
+
+    private static Map<String, IdBuffer> group(Iterable<Communication> comms, Map<String, IdBuffer> batch) {
+        for (Communication comm : comms) {
+            for (String tag : parse(comm.getTags())) {
+                batch.computeIfAbsent(tag, k -> new IdBuffer()).add(comm.getId());
+            }
+        }
+        return batch;
+    }
+
+    // Ids of communications carrying every one of the tags, in increasing order.
+    // Starts from the rarest tag so the intersection shrinks as fast as possible.
+    public PostingList all(Collection<String> tags) {
+        List<PostingList> lists = new ArrayList<>();
+        for (String tag : tags) {
+            PostingList list = postings.get(normalise(tag));
+            if (list == null) {
+                return new PostingList();
+            }
+            lists.add(list);
+        }
+        if (lists.isEmpty()) {
+            return new PostingList();
+        }
+        lists.sort((a, b) -> Integer.compare(sizeOf(a), sizeOf(b)));
+        PostingList result = null;
+        for (PostingList list : lists) {
+            synchronized (list) {
+                result = result == null ? list.copy() : result.intersect(list);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    // Ids of communications carrying at least one of the tags
+    public PostingList any(Collection<String> tags) {
+        PostingList result = new PostingList();
+        for (String tag : tags) {
+            PostingList list = postings.get(normalise(tag));
+            if (list != null) {
+                synchronized (list) {
+                    result = result.union(list);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Number of communications carrying the tag
+    public int frequency(String tag) {
+        PostingList list = postings.get(normalise(tag));
+        return list == null ? 0 : sizeOf(list);
+    }
+
+    // The n most used tags with their counts, most used first
+    public Map<String, Integer> topTags(int n) {
+        List<Map.Entry<String, Integer>> counts = new ArrayList<>();
+        for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+            int count = sizeOf(entry.getValue());
+            if (count > 0) {
+                counts.add(Map.entry(entry.getKey(), count));
+            }
+        }
+        counts.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Integer> top = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : counts.subList(0, Math.min(n, counts.size()))) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    // Number of distinct tags
+    public int size() {
+        return postings.size();
+    }
+
+    private static int sizeOf(PostingList list) {
+        synchronized (list) {
+            return list.size();
+        }
+    }
+
+    // Growable int array for collecting ids before they are sorted
+    private static final class IdBuffer {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
@@ -1,26 +1,64 @@
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Task {
-    private static int nextId = 1;
+    // Told when the completed flag flips so counts and indexes stay current:
+    // first inside the version of the change, then once it is published
+    public interface CompletionListener {
+        void completionCounted(Task task, boolean completed);
+        void taskCompletionChanged(Task task, boolean completed);
+    }
+
+    private static final DateTimeFormatter FILE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final AtomicInteger nextId = new AtomicInteger(1);
     private int id;
     private String description;
     private LocalDateTime dueDate;
-    private boolean completed;
-    private String priority; // high, medium, low
+    // The completed flag and the version it was set at, as version << 1 | flag,
+    // so a snapshot reads both at once
+    private volatile long state;
+    // Earlier states, kept while a snapshot that can see them is open
+    private volatile State older;
+    private TaskPriority priority;
+    // The stored label of an OTHER priority, written back as it was read
+    private String otherPriority;
     private int customerId;
-    
+    private volatile CompletionListener completionListener;
+    // Versions the completed flag; null until a manager indexes the task
+    private volatile VersionClock clock;
+
+    public Task(int customerId, String description, LocalDateTime dueDate, TaskPriority priority) {
+        this.id = nextId.getAndIncrement();
+        this.customerId = customerId;
+        this.description = description;
+        this.dueDate = dueDate;
+        this.priority = priority;
+    }
+
+    // Used when restoring a saved task so the stored id and status are kept
+    public Task(int id, int customerId, String description, LocalDateTime dueDate, TaskPriority priority, boolean completed) {
+        this(id, customerId, description, dueDate, priority, null, completed);
+    }
 
-    public Task(int customerId, String description, LocalDateTime dueDate, String priority) {
-        this.id = nextId++;
+    // Also keeps the stored label when the priority is OTHER
+    public Task(int id, int customerId, String description, LocalDateTime dueDate, TaskPriority priority,
+                String priorityLabel, boolean completed) {
+        this.id = id;
         this.customerId = customerId;
         this.description = description;
         this.dueDate = dueDate;
         this.priority = priority;
-        this.completed = false;
+        this.otherPriority = priority == TaskPriority.OTHER ? priorityLabel : null;
+        this.state = completed ? 1 : 0;
     }
     public static void setNextId(int id) {
-        nextId = id;
+        nextId.set(id);
+    }
+
+    // Ids for a whole import batch; returns the first of the block
+    static int reserveIds(int count) {
+        return nextId.getAndAdd(count);
     }
 
     public int getCustomerId() { return customerId; }
@@ -29,23 +67,79 @@ public class Task {
     public int getId() { return id; }
     public String getDescription() { return description; }
     public LocalDateTime getDueDate() { return dueDate; }
-    public boolean isCompleted() { return completed; }
-    public void setCompleted(boolean completed) { this.completed = completed; }
-    public String getPriority() { return priority; }
+    public boolean isCompleted() { return (state & 1) != 0; }
+    // Counts kept by the listener move with the flag; its index updates run
+    // after the version is published, still under this task's lock
+    public synchronized void setCompleted(boolean completed) {
+        if (isCompleted() == completed) {
+            return;
+        }
+        CompletionListener listener = completionListener;
+        VersionClock.publish(clock, (version, oldestReader) -> {
+            long current = state;
+            if (oldestReader < version) {
+                State prior = new State(current >>> 1, (current & 1) != 0);
+                prior.linkOlder(older, oldestReader);
+                older = prior;
+            } else {
+                older = null;
+            }
+            state = version << 1 | (completed ? 1 : 0);
+            if (listener != null) {
+                listener.completionCounted(this, completed);
+            }
+        });
+        if (listener != null) {
+            listener.taskCompletionChanged(this, completed);
+        }
+    }
+
+    // A copy of this task with the completed flag a snapshot at the given version sees
+    Task at(long version) {
+        long current = state;
+        boolean completed;
+        if (current >>> 1 <= version) {
+            completed = (current & 1) != 0;
+        } else {
+            State chain = older;
+            State prior = chain == null ? null : chain.at(version);
+            completed = prior != null && prior.completed;
+        }
+        return new Task(id, customerId, description, dueDate, priority, otherPriority, completed);
+    }
+    // Called by the manager that indexes the task, with its version clock
+    void setCompletionListener(CompletionListener completionListener, VersionClock clock) {
+        this.completionListener = completionListener;
+        this.clock = clock;
+    }
+    public TaskPriority getPriority() { return priority; }
+
+    // The label as stored: the priority's own, or the original one of an OTHER priority
+    public String getPriorityLabel() {
+        return otherPriority != null ? otherPriority : String.valueOf(priority);
+    }
 
     // Convert to string for file saving
     public String toFileString() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
         return "TASK|" + id + "|" + customerId + "|" + description + "|" + 
-            dueDate.format(formatter) + "|" + priority + "|" + completed + "\n";
+            dueDate.format(FILE_FORMAT) + "|" + getPriorityLabel() + "|" + isCompleted() + "\n";
     }
 
     @Override
     public String toString() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-        String status = completed ? "COMPLETED" : "PENDING";
+        String status = isCompleted() ? "COMPLETED" : "PENDING";
         return String.format("ID: %d | %s | Due: %s | Priority: %s | Description: %s",
-                id, status, dueDate.format(formatter), priority, description);
+                id, status, dueDate.format(formatter), getPriorityLabel(), description);
+    }
+
+    private static final class State extends VersionNode<State> {
+        final boolean completed;
+
+        State(long version, boolean completed) {
+            super(version);
+            this.completed = completed;
+        }
     }
     
 }
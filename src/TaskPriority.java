@@ -0,0 +1,63 @@
+import java.util.Arrays;
+
+// Task priority levels, highest first. OTHER stands for any label a stored
+// task has that is none of the known ones; the task keeps that label and
+// writes it back unchanged, and ranks below LOW.
+public enum TaskPriority {
+    HIGH("high"),
+    MEDIUM("medium"),
+    LOW("low"),
+    OTHER("other");
+
+    private static final TaskPriority[] VALUES = values();
+    // The levels a user can choose, without OTHER
+    static final TaskPriority[] KNOWN = Arrays.copyOf(VALUES, OTHER.ordinal());
+
+    private final String label;
+
+    TaskPriority(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    // Written to binary snapshots; keep the existing order when adding levels
+    byte code() {
+        return (byte) ordinal();
+    }
+
+    static TaskPriority fromCode(int code) {
+        if (code < 0 || code >= VALUES.length) {
+            throw new IllegalArgumentException("Unknown task priority code " + code);
+        }
+        return VALUES[code];
+    }
+
+    public static TaskPriority fromLabel(String label) {
+        for (TaskPriority priority : KNOWN) {
+            if (priority.label.equalsIgnoreCase(label)) {
+                return priority;
+            }
+        }
+        throw new IllegalArgumentException("Unknown priority '" + label + "', expected high, medium or low");
+    }
+
+    // For labels read back from storage: surrounding spaces and case are
+    // ignored, and anything else is OTHER
+    static TaskPriority fromStoredLabel(String label) {
+        String trimmed = label.trim();
+        for (TaskPriority priority : KNOWN) {
+            if (priority.label.equalsIgnoreCase(trimmed)) {
+                return priority;
+            }
+        }
+        return OTHER;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
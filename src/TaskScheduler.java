@@ -0,0 +1,203 @@
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Keeps open tasks ordered by due date and raises "due soon" and "overdue"
+// notifications through the manager's observers. Tasks are kept in skip lists,
+// so adding, completing and "next N due" queries cost O(log n) plus the number
+// of tasks returned. Each check only looks at tasks whose alert time has come.
+// Open tasks in histories a lazy load left in the data file are held as stubs
+// with just their ids and due dates, and read in when an alert or query needs them.
+public class TaskScheduler {
+    // Caps the alerts sent in one check, e.g. after loading many overdue tasks
+    private static final int MAX_ALERTS_PER_CHECK = 20;
+
+    private static final Comparator<Task> BY_DUE_DATE =
+            Comparator.comparing(Task::getDueDate).thenComparingInt(Task::getId);
+
+    private final CRMManager manager;
+    private final Duration dueSoonWindow;
+    // Every open task with a due date
+    private final NavigableSet<Task> open = new ConcurrentSkipListSet<>(BY_DUE_DATE);
+    // Open tasks that have not had the matching alert yet
+    private final NavigableSet<Task> awaitingDueSoon = new ConcurrentSkipListSet<>(BY_DUE_DATE);
+    private final NavigableSet<Task> awaitingOverdue = new ConcurrentSkipListSet<>(BY_DUE_DATE);
+    private ScheduledExecutorService timer;
+
+    public TaskScheduler(CRMManager manager, Duration dueSoonWindow) {
+        this.manager = manager;
+        this.dueSoonWindow = dueSoonWindow;
+    }
+
+    // Starts checking for due tasks every period
+    public synchronized void start(long period, TimeUnit unit) {
+        if (timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "crm-task-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> check(LocalDateTime.now()), 0, period, unit);
+    }
+
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    // Called whenever a task becomes open: added, loaded or marked not completed
+    public void taskOpened(Task task) {
+        if (task.getDueDate() == null || task.isCompleted()) {
+            return;
+        }
+        open.add(task);
+        awaitingDueSoon.add(task);
+        awaitingOverdue.add(task);
+    }
+
+    // Schedules the open tasks of a batch, adding them to each set in one pass
+    public void tasksOpened(List<Task> tasks) {
+        List<Task> scheduled = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            if (task.getDueDate() != null && !task.isCompleted()) {
+                scheduled.add(task);
+            }
+        }
+        open.addAll(scheduled);
+        awaitingDueSoon.addAll(scheduled);
+        awaitingOverdue.addAll(scheduled);
+    }
+
+    // An open task whose history is still in the data file
+    void taskStored(int id, int customerId, LocalDateTime dueDate) {
+        taskOpened(new Stored(id, customerId, dueDate));
+    }
+
+    // Also removes the stub of a stored task, which sorts the same
+    public void taskClosed(Task task) {
+        if (task.getDueDate() == null) {
+            return;
+        }
+        open.remove(task);
+        awaitingDueSoon.remove(task);
+        awaitingOverdue.remove(task);
+    }
+
+    // The n open tasks with the earliest due dates, overdue ones first
+    public List<Task> nextDue(int n) {
+        return first(open, n);
+    }
+
+    // Open tasks due at or after the given time, earliest first
+    public List<Task> nextDueAfter(LocalDateTime time, int n) {
+        return first(open.tailSet(probe(time), false), n);
+    }
+
+    // Open tasks whose due date has passed, earliest first
+    public List<Task> overdue(LocalDateTime now, int n) {
+        return first(open.headSet(probe(now), false), n);
+    }
+
+    public int openCount() {
+        return open.size();
+    }
+
+    // Sends the alerts that have become due by now
+    void check(LocalDateTime now) {
+        List<String> alerts = new ArrayList<>();
+        int suppressed = 0;
+
+        LocalDateTime soonLimit = now.plus(dueSoonWindow);
+        for (Iterator<Task> it = awaitingDueSoon.iterator(); it.hasNext(); ) {
+            Task next = it.next();
+            if (next.getDueDate().isAfter(soonLimit)) {
+                break;
+            }
+            // Tasks already past due only get the overdue alert
+            if (!awaitingDueSoon.remove(next) || !next.getDueDate().isAfter(now)) {
+                continue;
+            }
+            Task task = live(next);
+            if (!task.isCompleted()) {
+                if (alerts.size() < MAX_ALERTS_PER_CHECK) {
+                    alerts.add("Task due soon for " + customerName(task) + ": " + task.getDescription()
+                            + " (due " + task.getDueDate().toLocalDate() + ")");
+                } else {
+                    suppressed++;
+                }
+            }
+        }
+        for (Iterator<Task> it = awaitingOverdue.iterator(); it.hasNext(); ) {
+            Task next = it.next();
+            if (next.getDueDate().isAfter(now)) {
+                break;
+            }
+            if (!awaitingOverdue.remove(next)) {
+                continue;
+            }
+            Task task = live(next);
+            if (!task.isCompleted()) {
+                if (alerts.size() < MAX_ALERTS_PER_CHECK) {
+                    alerts.add("Task overdue for " + customerName(task) + ": " + task.getDescription());
+                } else {
+                    suppressed++;
+                }
+            }
+        }
+
+        for (String alert : alerts) {
+            manager.notifyObservers(alert);
+        }
+        if (suppressed > 0) {
+            manager.notifyObservers(suppressed + " more tasks are due soon or overdue");
+        }
+    }
+
+    private String customerName(Task task) {
+        Customer customer = manager.findCustomerById(task.getCustomerId());
+        return customer == null ? "customer " + task.getCustomerId() : customer.getName();
+    }
+
+    // The task itself, read in through its customer if this is a stub
+    private Task live(Task task) {
+        if (!(task instanceof Stored)) {
+            return task;
+        }
+        Task loaded = manager.findTaskById(task.getId());
+        return loaded != null ? loaded : task;
+    }
+
+    // A task that sorts before every real task due at the given time
+    private static Task probe(LocalDateTime time) {
+        return new Task(Integer.MIN_VALUE, 0, null, time, null, false);
+    }
+
+    private List<Task> first(NavigableSet<Task> tasks, int n) {
+        List<Task> result = new ArrayList<>(Math.min(n, 64));
+        Iterator<Task> it = tasks.iterator();
+        while (it.hasNext() && result.size() < n) {
+            result.add(live(it.next()));
+        }
+        return result;
+    }
+
+    // Stands in for a task in a paged-out history; only the id, customer and
+    // due date are known
+    private static final class Stored extends Task {
+        Stored(int id, int customerId, LocalDateTime dueDate) {
+            super(id, customerId, null, dueDate, null, false);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Task ids grouped by priority and by open or completed, each group in id
+// order, so "all open high priority tasks" is read without walking every
+// customer. Holding ids rather than tasks lets it cover tasks whose history
+// is paged out; the manager pages them in through the customer.
+//
+// The id map says which group a task is in and whose it is. Groups are
+// lock-free sorted sets that readers walk without copying; a move puts the
+// task in its new group before taking it out of the old one, and readers
+// skip ids the map places elsewhere, so a task is never seen in two groups.
+// Writers lock one of a few stripes by task id, so changes to one task apply
+// in order while changes to others run alongside.
+public class TaskStatusIndex {
+    private static final TaskPriority[] PRIORITIES = TaskPriority.values();
+    // Each priority, highest first, then tasks without one
+    private static final int RANKS = PRIORITIES.length + 1;
+    private static final int STRIPES = 64;
+
+    private final StripedIntMap<Entry> entries = new StripedIntMap<>();
+    // Open and completed groups for each rank, as rank * 2 + completed
+    private final NavigableSet<Integer>[] groups = newGroups(RANKS * 2);
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(RANKS * 2);
+    private final Object[] locks = new Object[STRIPES];
+
+    public TaskStatusIndex() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static NavigableSet<Integer>[] newGroups(int length) {
+        NavigableSet<Integer>[] groups = (NavigableSet<Integer>[]) new NavigableSet<?>[length];
+        for (int i = 0; i < length; i++) {
+            groups[i] = new ConcurrentSkipListSet<>();
+        }
+        return groups;
+    }
+
+    private static int group(TaskPriority priority, boolean completed) {
+        int rank = priority == null ? PRIORITIES.length : priority.ordinal();
+        return rank * 2 + (completed ? 1 : 0);
+    }
+
+    public void add(Task task) {
+        add(task.getId(), task.getCustomerId(), task.getPriority(), task.isCompleted());
+    }
+
+    // Replaces whatever group the task was in before
+    public void add(int taskId, int customerId, TaskPriority priority, boolean completed) {
+        move(taskId, customerId, group(priority, completed));
+    }
+
+    // Moves a task whose completed flag changed to completed
+    public void statusChanged(Task task, boolean completed) {
+        move(task.getId(), task.getCustomerId(), group(task.getPriority(), completed));
+    }
+
+    private void move(int taskId, int customerId, int group) {
+        synchronized (locks[taskId & (STRIPES - 1)]) {
+            Entry old = entries.put(taskId, new Entry(customerId, group));
+            if (old != null && old.group == group) {
+                return;
+            }
+            groups[group].add(taskId);
+            counts.incrementAndGet(group);
+            if (old != null) {
+                groups[old.group].remove(taskId);
+                counts.decrementAndGet(old.group);
+            }
+        }
+    }
+
+    // The customer of an indexed task, or -1
+    public int customerOf(int taskId) {
+        Entry entry = entries.get(taskId);
+        return entry == null ? -1 : entry.customerId;
+    }
+
+    // Ids and customers of up to limit tasks of one priority with the given
+    // status, in id order after the task afterId
+    public Map<Integer, Integer> find(TaskPriority priority, boolean completed, int afterId, int limit) {
+        Map<Integer, Integer> tasks = new LinkedHashMap<>();
+        collect(group(priority, completed), afterId, limit, tasks);
+        return tasks;
+    }
+
+    // Ids and customers of up to limit tasks with the given status, highest
+    // priority first, then by id, after the task afterId; 0 starts at the top
+    public Map<Integer, Integer> find(boolean completed, int afterId, int limit) {
+        int firstRank = 0;
+        if (afterId != 0) {
+            Entry cursor = entries.get(afterId);
+            if (cursor == null) {
+                throw new IllegalArgumentException("Unknown task id in cursor: " + afterId);
+            }
+            firstRank = cursor.group / 2;
+        }
+        Map<Integer, Integer> tasks = new LinkedHashMap<>();
+        for (int rank = firstRank; rank < RANKS && tasks.size() < limit; rank++) {
+            collect(rank * 2 + (completed ? 1 : 0), rank == firstRank ? afterId : 0, limit, tasks);
+        }
+        return tasks;
+    }
+
+    private void collect(int group, int afterId, int limit, Map<Integer, Integer> tasks) {
+        for (Integer taskId : groups[group].tailSet(afterId, false)) {
+            if (tasks.size() >= limit) {
+                return;
+            }
+            Entry entry = entries.get(taskId);
+            if (entry != null && entry.group == group) {
+                tasks.put(taskId, entry.customerId);
+            }
+        }
+    }
+
+    public int count(TaskPriority priority, boolean completed) {
+        return counts.get(group(priority, completed));
+    }
+
+    public int count(boolean completed) {
+        int count = 0;
+        for (int i = completed ? 1 : 0; i < counts.length(); i += 2) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    // Adds the given tasks over what is there; used at the end of a load
+    public void addAll(StripedIntMap<Task> tasks) {
+        tasks.forEachValue(this::add);
+    }
+
+    public void addAll(Collection<Task> tasks) {
+        tasks.forEach(this::add);
+    }
+
+    private static final class Entry {
+        final int customerId;
+        final int group;
+
+        Entry(int customerId, int group) {
+            this.customerId = customerId;
+            this.group = group;
+        }
+    }
+}
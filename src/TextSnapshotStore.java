@@ -0,0 +1,40 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.List;
+
+// The pipe-delimited customers.txt format
+public class TextSnapshotStore implements SnapshotStore {
+    private final String path;
+
+    public TextSnapshotStore(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public boolean exists() {
+        return new File(path).exists();
+    }
+
+    // Writes to a temporary file first so a crash never leaves a half written data file
+    @Override
+    public void save(List<Customer> customers) throws IOException {
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+        try (Writer writer = new BufferedWriter(new FileWriter(temp.toFile()), 1 << 16)) {
+            for (Customer customer : customers) {
+                writer.write(customer.toFileString());
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public int[] load(CRMManager manager) throws IOException {
+        return new FastLoader().load(new File(path), manager);
+    }
+}
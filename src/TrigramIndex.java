@@ -0,0 +1,146 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Inverted index from three-character substrings to customer ids, used to
+// narrow down partial-match searches. Name and email are indexed lowercased,
+// phone as entered, matching the comparison searchCustomers makes.
+// Each posting list is locked on its own, so updates to different trigrams
+// do not contend. Empty lists are kept rather than removed, so a writer never
+// adds to a list that has just been dropped from the map.
+public class TrigramIndex {
+    private final Map<Long, PostingList> textPostings = new ConcurrentHashMap<>();
+    private final Map<Long, PostingList> phonePostings = new ConcurrentHashMap<>();
+
+    public void add(Customer customer) {
+        int id = customer.getId();
+        for (long gram : textTrigrams(customer.getName(), customer.getEmail())) {
+            addPosting(textPostings, gram, id);
+        }
+        for (long gram : trigrams(customer.getPhone(), new HashSet<>())) {
+            addPosting(phonePostings, gram, id);
+        }
+    }
+
+    // Indexes many customers at once. Ids are grouped by trigram first, so each
+    // posting list is locked once per call instead of once per customer.
+    public void addAll(List<Customer> customers) {
+        Map<Long, PostingList> text = new HashMap<>();
+        Map<Long, PostingList> phone = new HashMap<>();
+        for (Customer customer : customers) {
+            int id = customer.getId();
+            for (long gram : textTrigrams(customer.getName(), customer.getEmail())) {
+                text.computeIfAbsent(gram, k -> new PostingList()).add(id);
+            }
+            for (long gram : trigrams(customer.getPhone(), new HashSet<>())) {
+                phone.computeIfAbsent(gram, k -> new PostingList()).add(id);
+            }
+        }
+        merge(textPostings, text);
+        merge(phonePostings, phone);
+    }
+
+    private static void merge(Map<Long, PostingList> postings, Map<Long, PostingList> batch) {
+        for (Map.Entry<Long, PostingList> entry : batch.entrySet()) {
+            PostingList ids = entry.getValue();
+            PostingList list = postings.computeIfAbsent(entry.getKey(), k -> new PostingList(ids.size()));
+            synchronized (list) {
+                for (int i = 0; i < ids.size(); i++) {
+                    list.add(ids.get(i));
+                }
+            }
+        }
+    }
+
+    // Re-indexes a customer after one of its fields changed from oldValue
+    public void update(Customer customer, String field, String oldValue) {
+        int id = customer.getId();
+        if (field.equals("phone")) {
+            move(phonePostings, id, trigrams(oldValue, new HashSet<>()), trigrams(customer.getPhone(), new HashSet<>()));
+        } else if (field.equals("name")) {
+            move(textPostings, id, textTrigrams(oldValue, customer.getEmail()), textTrigrams(customer.getName(), customer.getEmail()));
+        } else if (field.equals("email")) {
+            move(textPostings, id, textTrigrams(customer.getName(), oldValue), textTrigrams(customer.getName(), customer.getEmail()));
+        }
+    }
+
+    // Number of distinct trigrams indexed, text and phone counted separately
+    public int size() {
+        return textPostings.size() + phonePostings.size();
+    }
+
+    // Ids of customers that may contain the keyword, in increasing order.
+    // Returns null when the keyword is too short to use the index.
+    public PostingList candidates(String keyword) {
+        if (keyword.length() < 3) {
+            return null;
+        }
+        PostingList text = lookup(textPostings, keyword.toLowerCase());
+        PostingList phone = lookup(phonePostings, keyword);
+        return text.union(phone);
+    }
+
+    // Intersects the postings of every trigram in the keyword. The result is
+    // a private list, built while holding one posting list lock at a time.
+    private PostingList lookup(Map<Long, PostingList> postings, String keyword) {
+        PostingList result = null;
+        for (long gram : trigrams(keyword, new HashSet<>())) {
+            PostingList list = postings.get(gram);
+            if (list == null) {
+                return new PostingList();
+            }
+            synchronized (list) {
+                result = result == null ? list.copy() : result.intersect(list);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static void addPosting(Map<Long, PostingList> postings, long gram, int id) {
+        PostingList list = postings.computeIfAbsent(gram, k -> new PostingList());
+        synchronized (list) {
+            list.add(id);
+        }
+    }
+
+    private void move(Map<Long, PostingList> postings, int id, Set<Long> before, Set<Long> after) {
+        for (long gram : before) {
+            if (!after.contains(gram)) {
+                PostingList list = postings.get(gram);
+                if (list != null) {
+                    synchronized (list) {
+                        list.remove(id);
+                    }
+                }
+            }
+        }
+        for (long gram : after) {
+            if (!before.contains(gram)) {
+                addPosting(postings, gram, id);
+            }
+        }
+    }
+
+    private static Set<Long> textTrigrams(String name, String email) {
+        Set<Long> grams = new HashSet<>();
+        trigrams(name == null ? null : name.toLowerCase(), grams);
+        trigrams(email == null ? null : email.toLowerCase(), grams);
+        return grams;
+    }
+
+    private static Set<Long> trigrams(String value, Set<Long> grams) {
+        if (value == null) {
+            return grams;
+        }
+        for (int i = 0; i + 3 <= value.length(); i++) {
+            grams.add(((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2));
+        }
+        return grams;
+    }
+}
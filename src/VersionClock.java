@@ -0,0 +1,96 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Orders changes into numbered versions for snapshot reads. Writers take a
+// short lock to apply a change and publish its version; readers pin the last
+// published version without locking and see exactly the changes up to it.
+// A change made while a snapshot is open keeps the state it replaces, so the
+// snapshot can still find it; with no snapshot open nothing old is kept.
+// Each manager has its own clock, handed to its customers and tasks when it
+// indexes them, so managers neither wait on nor keep versions for each other.
+final class VersionClock {
+    // Applies a change as part of the given version. oldestReader is the
+    // version of the oldest open snapshot, or LATEST when none is open.
+    interface Change {
+        void apply(long version, long oldestReader);
+    }
+
+    // Reads at this version see the latest state; also oldestReader with no snapshot open
+    static final long LATEST = Long.MAX_VALUE;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile long published;
+    // Set while a change is being applied, so a reader does not pin halfway through it
+    private volatile boolean writing;
+    // Guarded by writeLock
+    private long pending;
+    private long pendingOldestReader;
+    // Open snapshots by version, with how many are open at each
+    private final ConcurrentSkipListMap<Long, Integer> readers = new ConcurrentSkipListMap<>();
+
+    // For an object that may not be in a manager yet. Without a clock no
+    // snapshot can see it, so the change is applied at version 0 and keeps nothing.
+    static void publish(VersionClock clock, Change change) {
+        if (clock == null) {
+            change.apply(0, LATEST);
+        } else {
+            clock.publish(change);
+        }
+    }
+
+    // A change made inside another one joins its version
+    void publish(Change change) {
+        writeLock.lock();
+        try {
+            if (writeLock.getHoldCount() > 1) {
+                change.apply(pending, pendingOldestReader);
+                return;
+            }
+            writing = true;
+            pending = published + 1;
+            pendingOldestReader = oldestReader();
+            try {
+                change.apply(pending, pendingOldestReader);
+            } finally {
+                published = pending;
+                writing = false;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Pins the current version until unpin. capture runs once the version is
+    // pinned and sees no change in progress, for reading state that is not
+    // versioned itself, such as counters.
+    long pin(Runnable capture) {
+        while (true) {
+            long version = published;
+            readers.merge(version, 1, Integer::sum);
+            // A writer checks for readers after it sets writing, so either it
+            // sees this pin or this sees it writing
+            if (!writing && published == version) {
+                capture.run();
+                if (!writing && published == version) {
+                    return version;
+                }
+            }
+            unpin(version);
+            Thread.yield();
+        }
+    }
+
+    void unpin(long version) {
+        readers.computeIfPresent(version, (v, count) -> count == 1 ? null : count - 1);
+    }
+
+    long oldestReader() {
+        Map.Entry<Long, Integer> oldest = readers.firstEntry();
+        return oldest == null ? LATEST : oldest.getKey();
+    }
+
+    long published() {
+        return published;
+    }
+}
@@ -0,0 +1,38 @@
+// One past or present state in a chain of states, newest first. Snapshots
+// walk back to the newest state written at or before their version.
+abstract class VersionNode<N extends VersionNode<N>> {
+    // The version the state was written at
+    final long version;
+    volatile N older;
+
+    VersionNode(long version) {
+        this.version = version;
+    }
+
+    // The newest state in the chain a snapshot at the given version can see, or null
+    @SuppressWarnings("unchecked")
+    final N at(long readVersion) {
+        N node = (N) this;
+        while (node != null && node.version > readVersion) {
+            node = node.older;
+        }
+        return node;
+    }
+
+    // Puts prior behind this state. Only the states the oldest open snapshot
+    // and newer ones can still see are kept; the rest are dropped.
+    final void linkOlder(N prior, long oldestReader) {
+        if (version <= oldestReader) {
+            older = null;
+            return;
+        }
+        N node = prior;
+        while (node != null && node.version > oldestReader) {
+            node = node.older;
+        }
+        if (node != null) {
+            node.older = null;
+        }
+        older = prior;
+    }
+}
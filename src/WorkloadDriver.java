@@ -0,0 +1,250 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Replays a weighted mix of operations against a CRMManager without the menu
+// and reports throughput and latency percentiles per operation. Operations
+// pick their customer through a Zipf distribution, so a skew above 0 makes a
+// few customers much busier than the rest. Each thread draws from its own
+// generator seeded with seed + thread, so the same seed and thread count
+// replay the same sequences.
+//
+// The driver changes the data file it is given, so point it at a copy:
+//   java WorkloadDriver customers.txt --operations 200000 --threads 4
+//        --mix create=5,search=30,communication=40,task=20,report=5 --skew 1.0
+public class WorkloadDriver {
+    public enum Operation { CREATE, SEARCH, COMMUNICATION, TASK, REPORT }
+
+    // Latency figures for one kind of operation
+    public static class OperationStats extends LatencySummary {
+        public final Operation operation;
+
+        OperationStats(Operation operation, long[] nanos, int count) {
+            super(operation.name().toLowerCase(), nanos, count);
+            this.operation = operation;
+        }
+    }
+
+    public static class Result {
+        public final long operations;
+        public final long elapsedNanos;
+        public final List<OperationStats> stats;
+
+        Result(long operations, long elapsedNanos, List<OperationStats> stats) {
+            this.operations = operations;
+            this.elapsedNanos = elapsedNanos;
+            this.stats = stats;
+        }
+
+        public double throughput() {
+            return operations / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d operations in %.2f s: %.0f ops/s%n", operations, elapsedNanos / 1e9, throughput()));
+            sb.append(LatencySummary.header()).append(String.format("%n"));
+            for (OperationStats stat : stats) {
+                if (stat.count > 0) {
+                    sb.append(stat).append(String.format("%n"));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private final CRMManager crm;
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+    private final int[] customerIds;
+    private final Zipf customerChoice;
+    private final String[] keywords;
+    private final long seed;
+
+    public WorkloadDriver(CRMManager crm, Map<Operation, Integer> weights, double skew, long seed) {
+        this.crm = crm;
+        this.seed = seed;
+        cumulativeWeights = new int[Operation.values().length];
+        int sum = 0;
+        for (Operation operation : Operation.values()) {
+            sum += weights.getOrDefault(operation, 0);
+            cumulativeWeights[operation.ordinal()] = sum;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("the operation mix has no weight");
+        }
+        totalWeight = sum;
+
+        customerIds = crm.streamCustomers().mapToInt(Customer::getId).toArray();
+        if (customerIds.length == 0) {
+            throw new IllegalArgumentException("the data file has no customers; run DatasetGenerator first");
+        }
+        customerChoice = new Zipf(customerIds.length, skew);
+
+        // Common names, exact emails and phone prefixes, as people search for them
+        List<String> pool = new ArrayList<>(Arrays.asList(DatasetGenerator.LAST_NAMES));
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < 16; i++) {
+            Customer customer = crm.findCustomerById(customerIds[random.nextInt(customerIds.length)]);
+            pool.add(customer.getEmail());
+            pool.add(customer.getPhone().substring(0, Math.min(7, customer.getPhone().length())));
+        }
+        keywords = pool.toArray(new String[0]);
+    }
+
+    // Runs the given number of operations spread over the threads. Reports
+    // and other output from the manager are discarded while it runs.
+    public Result run(int operations, int threads) throws Exception {
+        int perThread = operations / threads;
+        long[][] latencies = new long[threads][perThread];
+        byte[][] kinds = new byte[threads][perThread];
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start;
+        long elapsed;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed + thread);
+                    ready.countDown();
+                    go.await();
+                    for (int i = 0; i < perThread; i++) {
+                        Operation operation = nextOperation(random);
+                        long begin = System.nanoTime();
+                        execute(operation, random, i);
+                        latencies[thread][i] = System.nanoTime() - begin;
+                        kinds[thread][i] = (byte) operation.ordinal();
+                    }
+                    return null;
+                }));
+            }
+            // Start the clock only once every worker is waiting on the gate
+            ready.await();
+            start = System.nanoTime();
+            go.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            elapsed = System.nanoTime() - start;
+        } finally {
+            pool.shutdown();
+            System.setOut(out);
+        }
+
+        List<OperationStats> stats = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            long[] nanos = new long[perThread * threads];
+            int count = 0;
+            for (int t = 0; t < threads; t++) {
+                for (int i = 0; i < perThread; i++) {
+                    if (kinds[t][i] == operation.ordinal()) {
+                        nanos[count++] = latencies[t][i];
+                    }
+                }
+            }
+            stats.add(new OperationStats(operation, nanos, count));
+        }
+        return new Result((long) perThread * threads, elapsed, stats);
+    }
+
+    private Operation nextOperation(SplittableRandom random) {
+        int pick = random.nextInt(totalWeight);
+        for (Operation operation : Operation.values()) {
+            if (pick < cumulativeWeights[operation.ordinal()]) {
+                return operation;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private void execute(Operation operation, SplittableRandom random, int i) {
+        int customerId = customerIds[customerChoice.sample(random)];
+        switch (operation) {
+            case CREATE:
+                crm.addCustomer(new Customer("Load Test " + i, "load" + i + "@example.com", "555-0" + i, ""));
+                break;
+            case SEARCH:
+                crm.searchCustomers(keywords[random.nextInt(keywords.length)]);
+                break;
+            case COMMUNICATION:
+                crm.addCommunicationToCustomer(customerId,
+                        new Communication(customerId, CommunicationType.EMAIL, "Load test message " + i, "loadtest"));
+                break;
+            case TASK:
+                crm.addTaskToCustomer(customerId, new Task(customerId, "Load test task " + i,
+                        LocalDateTime.now().plusDays(random.nextInt(30)), TaskPriority.MEDIUM));
+                break;
+            case REPORT:
+                crm.generateCustomerReport(customerId);
+                break;
+        }
+    }
+
+    // Parses "create=5,search=30,..."
+    static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry: " + part);
+            }
+            weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+        }
+        return weights;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java WorkloadDriver <data file> [--operations N] [--threads N]"
+                    + " [--mix create=5,search=30,communication=40,task=20,report=5] [--skew S] [--seed N]"
+                    + " [--mode journal|snapshot]");
+            return;
+        }
+        int operations = 100000;
+        int threads = 1;
+        String mix = "create=5,search=30,communication=40,task=20,report=5";
+        double skew = 1.0;
+        long seed = 42;
+        CRMManager.PersistenceMode mode = CRMManager.PersistenceMode.JOURNAL;
+        try {
+            for (int i = 1; i + 1 < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--operations": operations = Integer.parseInt(args[i + 1]); break;
+                    case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                    case "--mix": mix = args[i + 1]; break;
+                    case "--skew": skew = Double.parseDouble(args[i + 1]); break;
+                    case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                    case "--mode": mode = CRMManager.PersistenceMode.valueOf(args[i + 1].toUpperCase()); break;
+                    default:
+                        System.out.println("Unknown option: " + args[i]);
+                        return;
+                }
+            }
+
+            long start = System.nanoTime();
+            CRMManager crm = new CRMManager(args[0], mode);
+            System.out.println("Load: " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            WorkloadDriver driver = new WorkloadDriver(crm, parseMix(mix), skew, seed);
+            System.out.print(driver.run(operations, threads));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+}
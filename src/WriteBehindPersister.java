@@ -0,0 +1,248 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Persists changes in the background for the WRITE_BEHIND mode. Mutations only
+// mark their customer dirty; a flusher thread writes the snapshot once enough
+// customers are dirty or the oldest change has waited long enough, so a burst
+// of edits costs one write and one fsync.
+//
+// For the text format a flush re-serialises only the dirty customers. Every
+// other customer's record is copied from the file the last flush wrote, at
+// the offsets noted while writing it, so no bytes are kept between flushes.
+// Other formats are saved through their store as a whole.
+// Changes made after the last flush are lost if the process dies.
+public class WriteBehindPersister {
+    private final CRMManager manager;
+    private final SnapshotStore store;
+    private final int maxDirty;
+    private final long maxDelayMillis;
+    private final Set<Customer> dirty = ConcurrentHashMap.newKeySet();
+    // Where each customer's record is in the file the last flush wrote, and
+    // that file's size and time, to tell if something else has replaced it since
+    private Records written = new Records(0);
+    private long writtenSize = -1;
+    private FileTime writtenTime;
+    private final Charset charset = Charset.defaultCharset();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wake = lock.newCondition();
+    // Held for the whole flush so flushes never overlap
+    private final Object flushLock = new Object();
+    private final Thread flusher;
+    private volatile boolean stopping;
+    private long flushCount;
+    private long serialisedCount;
+
+    public WriteBehindPersister(CRMManager manager, SnapshotStore store, int maxDirty, long maxDelayMillis) {
+        this.manager = manager;
+        this.store = store;
+        this.maxDirty = maxDirty;
+        this.maxDelayMillis = maxDelayMillis;
+        flusher = new Thread(this::run, "crm-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public void markDirty(Customer customer) {
+        if (dirty.add(customer) && dirty.size() >= maxDirty) {
+            lock.lock();
+            try {
+                wake.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public int dirtyCount() {
+        return dirty.size();
+    }
+
+    // Flushes run so far, and customers serialised by them
+    public synchronized long getFlushCount() {
+        return flushCount;
+    }
+
+    public synchronized long getSerialisedCount() {
+        return serialisedCount;
+    }
+
+    private void run() {
+        while (!stopping) {
+            lock.lock();
+            try {
+                if (dirty.size() < maxDirty) {
+                    wake.await(maxDelayMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            if (!stopping && !dirty.isEmpty()) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    System.out.println("Error saving data: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Writes every change made so far; called by the flusher and on save
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            // Taken out of the set before serialising, so a change made in the
+            // meantime marks the customer again for the next flush
+            int serialised = 0;
+            IntMap<byte[]> changed = new IntMap<>();
+            for (Customer customer : dirty) {
+                dirty.remove(customer);
+                if (store instanceof TextSnapshotStore) {
+                    changed.put(customer.getId(), serialise(customer));
+                }
+                serialised++;
+            }
+
+            List<Customer> customers = manager.getAllCustomers();
+            if (store instanceof TextSnapshotStore) {
+                serialised += writeText(customers, changed);
+            } else {
+                store.save(customers);
+            }
+            synchronized (this) {
+                flushCount++;
+                serialisedCount += serialised;
+            }
+        }
+    }
+
+    // Writes the changed records and copies the rest from the last file to a
+    // temporary file, forces it to disk once and moves it over the data file.
+    // Returns how many customers had no record to copy and were serialised here.
+    private int writeText(List<Customer> customers, IntMap<byte[]> changed) throws IOException {
+        Path target = Paths.get(store.getPath());
+        Path temp = Paths.get(store.getPath() + ".tmp");
+        Records previous = isUnchanged(target) ? written : new Records(0);
+        Records records = new Records(customers.size());
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long position = 0;
+        int serialised = 0;
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             OutputStream out = new BufferedOutputStream(file, 1 << 16);
+             FileChannel source = previous.size > 0 ? FileChannel.open(target, StandardOpenOption.READ) : null) {
+            for (Customer customer : customers) {
+                byte[] record = changed.get(customer.getId());
+                int index = record == null ? previous.indexOf(customer.getId()) : -1;
+                int length;
+                if (index >= 0) {
+                    length = previous.lengths[index];
+                    copy(source, previous.starts[index], length, out, buffer);
+                } else {
+                    if (record == null) {
+                        record = serialise(customer);
+                        serialised++;
+                    }
+                    length = record.length;
+                    out.write(record);
+                }
+                records.add(customer.getId(), position, length);
+                position += length;
+            }
+            out.flush();
+            file.getChannel().force(false);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        written = records;
+        writtenSize = Files.size(target);
+        writtenTime = Files.getLastModifiedTime(target);
+        return serialised;
+    }
+
+    // Whether the data file is still the one the last flush wrote
+    private boolean isUnchanged(Path target) throws IOException {
+        return writtenSize >= 0 && Files.exists(target) && Files.size(target) == writtenSize
+                && Files.getLastModifiedTime(target).equals(writtenTime);
+    }
+
+    private static void copy(FileChannel source, long start, int length, OutputStream out, ByteBuffer buffer)
+            throws IOException {
+        long position = start;
+        long end = start + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = source.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Record at " + start + " runs past the end of the data file");
+            }
+            out.write(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    private byte[] serialise(Customer customer) {
+        synchronized (customer) {
+            return customer.toFileString().getBytes(charset);
+        }
+    }
+
+    // Customer records in the order written, which is id order
+    private static final class Records {
+        int[] ids;
+        long[] starts;
+        int[] lengths;
+        int size;
+
+        Records(int capacity) {
+            ids = new int[Math.max(16, capacity)];
+            starts = new long[ids.length];
+            lengths = new int[ids.length];
+        }
+
+        void add(int id, long start, int length) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            ids[size] = id;
+            starts[size] = start;
+            lengths[size] = length;
+            size++;
+        }
+
+        int indexOf(int id) {
+            return Arrays.binarySearch(ids, 0, size, id);
+        }
+    }
+
+    // Writes what is left and stops the flusher thread
+    public void close() throws IOException {
+        stopping = true;
+        lock.lock();
+        try {
+            wake.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!dirty.isEmpty()) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Zipf-like distribution over ranks 0..n-1, where rank k has weight 1/(k+1)^s.
+// With s = 0 every rank is equally likely; around s = 1 a few ranks take most
+// of the weight, which is how activity tends to spread over customers.
+public class Zipf {
+    private final double[] cumulative;
+
+    public Zipf(int n, double s) {
+        if (n < 1 || s < 0) {
+            throw new IllegalArgumentException("n must be positive and s must not be negative");
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += s == 0 ? 1 : Math.pow(k + 1, -s);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+
+    // Fraction of the total weight that falls on the rank
+    public double share(int rank) {
+        return rank == 0 ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+    }
+
+    public int sample(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
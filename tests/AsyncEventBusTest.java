@@ -0,0 +1,181 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class AsyncEventBusTest {
+
+    @TempDir
+    Path tempDir;
+
+    // Records messages; can be held back to simulate a slow observer
+    private static class RecordingObserver implements Observer {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch gate;
+
+        RecordingObserver(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void update(String message) {
+            await();
+            messages.add(message);
+        }
+
+        @Override
+        public void updateBatch(List<String> batch) {
+            await();
+            batchSizes.add(batch.size());
+            messages.addAll(batch);
+        }
+
+        private void await() {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Messages should be delivered off the publishing thread")
+    void testAsyncDelivery() throws InterruptedException {
+        AsyncEventBus bus = new AsyncEventBus(16, 2, 8, AsyncEventBus.BackpressurePolicy.BLOCK);
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingObserver slow = new RecordingObserver(gate);
+        RecordingObserver fast = new RecordingObserver(new CountDownLatch(0));
+        bus.addObserver(slow);
+        bus.addObserver(fast);
+
+        // Publishing returns even though the slow observer is stuck
+        for (int i = 0; i < 10; i++) {
+            bus.notifyObservers("event " + i);
+        }
+        assertTrue(slow.messages.isEmpty());
+        assertTrue(bus.getStats().get(0).oldestPendingMillis >= 0);
+
+        gate.countDown();
+        assertTrue(bus.awaitDelivery(5, TimeUnit.SECONDS));
+        assertEquals(10, slow.messages.size());
+        assertEquals(10, fast.messages.size());
+        assertEquals("event 0", slow.messages.get(0));
+        assertEquals("event 9", slow.messages.get(9));
+        bus.close();
+    }
+
+    @Test
+    @DisplayName("DROP_OLDEST should discard messages for a slow observer only")
+    void testDropOldest() throws InterruptedException {
+        AsyncEventBus bus = new AsyncEventBus(4, 1, 1, AsyncEventBus.BackpressurePolicy.DROP_OLDEST);
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingObserver slow = new RecordingObserver(gate);
+        bus.addObserver(slow);
+
+        for (int i = 0; i < 20; i++) {
+            bus.notifyObservers("event " + i);
+        }
+        AsyncEventBus.ObserverStats stats = bus.getStats().get(0);
+        assertTrue(stats.dropped > 0);
+        assertTrue(stats.pending <= 4);
+
+        gate.countDown();
+        assertTrue(bus.awaitDelivery(5, TimeUnit.SECONDS));
+        assertEquals("event 19", slow.messages.get(slow.messages.size() - 1));
+        assertEquals(20, slow.messages.size() + bus.getStats().get(0).dropped);
+        bus.close();
+    }
+
+    @Test
+    @DisplayName("COALESCE should fold messages instead of dropping them")
+    void testCoalesce() throws InterruptedException {
+        AsyncEventBus bus = new AsyncEventBus(2, 1, 16, AsyncEventBus.BackpressurePolicy.COALESCE);
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingObserver slow = new RecordingObserver(gate);
+        bus.addObserver(slow);
+
+        for (int i = 0; i < 10; i++) {
+            bus.notifyObservers("event " + i);
+        }
+        bus.notifyObservers("event 9");
+        assertEquals(0, bus.getStats().get(0).dropped);
+
+        gate.countDown();
+        assertTrue(bus.awaitDelivery(5, TimeUnit.SECONDS));
+        String all = String.join("\n", slow.messages);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(all.contains("event " + i), "missing event " + i);
+        }
+        bus.close();
+    }
+
+    @Test
+    @DisplayName("COALESCE should count repeats per line of a folded message")
+    void testCoalescedText() throws InterruptedException {
+        AsyncEventBus bus = new AsyncEventBus(2, 1, 16, AsyncEventBus.BackpressurePolicy.COALESCE);
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingObserver slow = new RecordingObserver(gate);
+        bus.addObserver(slow);
+
+        // Wait for the dispatcher to take the first message and block on the gate
+        bus.notifyObservers("first");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bus.getStats().get(0).pending > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        for (String message : List.of("A", "B", "C", "C", "D", "A")) {
+            bus.notifyObservers(message);
+        }
+
+        gate.countDown();
+        assertTrue(bus.awaitDelivery(5, TimeUnit.SECONDS));
+        assertEquals(List.of("first", "A", "B\nC (x2)\nD\nA"), slow.messages);
+        bus.close();
+    }
+
+    @Test
+    @DisplayName("Pending messages should be delivered as batches")
+    void testBatchDelivery() throws InterruptedException {
+        AsyncEventBus bus = new AsyncEventBus(64, 1, 8, AsyncEventBus.BackpressurePolicy.BLOCK);
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingObserver observer = new RecordingObserver(gate);
+        bus.addObserver(observer);
+
+        for (int i = 0; i < 30; i++) {
+            bus.notifyObservers("event " + i);
+        }
+        gate.countDown();
+        assertTrue(bus.awaitDelivery(5, TimeUnit.SECONDS));
+        assertEquals(30, observer.messages.size());
+        assertTrue(observer.batchSizes.stream().anyMatch(size -> size > 1));
+        assertTrue(observer.batchSizes.stream().allMatch(size -> size <= 8));
+        bus.close();
+    }
+
+    @Test
+    @DisplayName("A manager should notify observers directly once its bus is closed")
+    void testClosedBusFallsBackToDirectDelivery() throws InterruptedException {
+        CRMManager crm = new CRMManager(tempDir.resolve("customers.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+        RecordingObserver observer = new RecordingObserver(new CountDownLatch(0));
+        crm.addObserver(observer);
+        AsyncEventBus bus = new AsyncEventBus(16, 1, 8, AsyncEventBus.BackpressurePolicy.BLOCK);
+        crm.setAsyncDispatch(bus);
+        crm.notifyObservers("queued");
+        assertTrue(bus.awaitDelivery(5, TimeUnit.SECONDS));
+        bus.close();
+
+        crm.notifyObservers("direct");
+        assertEquals(List.of("queued", "direct"), observer.messages);
+        assertNull(crm.getAsyncDispatch());
+        assertThrows(IllegalStateException.class, () -> bus.notifyObservers("late"));
+        crm.close();
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class BulkImporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String dataFile() {
+        return tempDir.resolve("customers.txt").toString();
+    }
+
+    @Test
+    @DisplayName("Import should validate rows, link history and notify once")
+    void testImport() throws Exception {
+        CRMManager crm = new CRMManager(dataFile(), CRMManager.PersistenceMode.JOURNAL);
+        Customer existing = new Customer("Existing Person", "existing@example.com", "555-0000", "");
+        crm.addCustomer(existing);
+        List<String> messages = new ArrayList<>();
+        crm.addObserver(messages::add);
+
+        String customers = "name,id,email,phone,notes\n"
+                + "Alice Import,a1,alice@example.com,555-1111,\"Likes tea, not coffee\"\n"
+                + "\"Bob \"\"B\"\" Import\",b2,bob@example.com,555-2222,\n"
+                + ",c3,nobody@example.com,555-3333,missing name\n"
+                + "Carol Import,c4,not-an-email,555-4444,\n"
+                + "Dave Import,a1,dave@example.com,555-5555,duplicate id\n";
+        String communications = "customer_id,type,description,timestamp,tags\n"
+                + "a1,email,Welcome mail,2024-03-01 10:15,onboarding\n"
+                + "b2,phone,Intro call,2024-03-02T09:00,\n"
+                + existing.getId() + ",meeting,Review,2024-03-03,\n"
+                + "zz,email,Orphan,2024-03-01,\n";
+        String tasks = "customer_id,description,due_date,priority,completed\n"
+                + "a1,Send contract,2030-01-01,high,false\n"
+                + "b2,Follow up,2020-01-01 12:00,low,true\n"
+                + "b2,Bad date,someday,low,false\n";
+
+        BulkImporter.Result result = new BulkImporter(crm).importAll(
+                new StringReader(customers), new StringReader(communications), new StringReader(tasks));
+
+        assertEquals(2, result.customers);
+        assertEquals(3, result.communications);
+        assertEquals(2, result.tasks);
+        assertEquals(5, result.rejected);
+        assertTrue(result.errors.contains("customers line 4: missing name"));
+        assertTrue(result.errors.contains("communications line 5: unknown customer zz"));
+        assertEquals(List.of(result.toString()), messages);
+
+        Customer alice = crm.searchCustomers("alice@example").get(0);
+        assertEquals("Likes tea, not coffee", alice.getNotes());
+        assertNotEquals(existing.getId(), alice.getId());
+        assertEquals("Bob \"B\" Import", crm.searchCustomers("bob@").get(0).getName());
+        assertEquals(1, alice.getCommunications().size());
+        assertEquals(1, crm.findCustomerById(existing.getId()).getCommunications().size());
+        assertEquals(3, crm.getTotalCommunications());
+        assertEquals(1, crm.getCompletedTasks());
+
+        // Everything was saved in one go and comes back on load
+        CRMManager reloaded = new CRMManager(dataFile(), CRMManager.PersistenceMode.JOURNAL);
+        assertEquals(3, reloaded.getAllCustomers().size());
+        assertEquals(3, reloaded.getTotalCommunications());
+        assertEquals(2, reloaded.getTotalTasks());
+    }
+
+    @Test
+    @DisplayName("Import should handle files larger than one batch")
+    void testLargeImport() throws Exception {
+        CRMManager crm = new CRMManager(dataFile(), CRMManager.PersistenceMode.SNAPSHOT);
+        int count = BulkImporter.BATCH_SIZE * 3 + 17;
+        StringBuilder customers = new StringBuilder("id,name,email,phone\n");
+        StringBuilder communications = new StringBuilder("customer_id,type,description\n");
+        for (int i = 0; i < count; i++) {
+            customers.append("s").append(i).append(",Person ").append(i).append(",p").append(i)
+                    .append("@example.com,555-").append(i).append('\n');
+            communications.append("s").append(i).append(",email,Hello ").append(i).append('\n');
+        }
+
+        BulkImporter.Result result = new BulkImporter(crm).importAll(
+                new StringReader(customers.toString()), new StringReader(communications.toString()), null);
+
+        assertEquals(count, result.customers);
+        assertEquals(count, result.communications);
+        assertEquals(0, result.rejected);
+        assertEquals(1, crm.searchCustomers("p12345@example").size());
+        CRMManager reloaded = new CRMManager(dataFile(), CRMManager.PersistenceMode.SNAPSHOT);
+        assertEquals(count, reloaded.getTotalCommunications());
+    }
+}
@@ -0,0 +1,213 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+class CRMManagerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String dataFile() {
+        return tempDir.resolve("customers.txt").toString();
+    }
+
+    private CRMManager newManager() {
+        return new CRMManager(dataFile(), CRMManager.PersistenceMode.JOURNAL);
+    }
+
+    @Test
+    @DisplayName("Journaled changes should be replayed on load")
+    void testJournalReplay() {
+        CRMManager crm = newManager();
+        Customer customer = new Customer("John Doe", "john@example.com", "123-456-7890", "");
+        crm.addCustomer(customer);
+        crm.addCommunicationToCustomer(customer.getId(), new Communication(customer.getId(), CommunicationType.EMAIL, "Hello", ""));
+        Task task = new Task(customer.getId(), "Call back", LocalDateTime.now().plusDays(1), TaskPriority.HIGH);
+        crm.addTaskToCustomer(customer.getId(), task);
+        assertTrue(crm.completeTask(customer.getId(), task.getId()));
+
+        assertFalse(new File(dataFile()).exists());
+        assertTrue(new File(dataFile() + ".journal").exists());
+
+        CRMManager reloaded = newManager();
+        Customer loaded = reloaded.findCustomerById(customer.getId());
+        assertNotNull(loaded);
+        assertEquals("john@example.com", loaded.getEmail());
+        assertEquals(1, loaded.getCommunications().size());
+        assertEquals(1, loaded.getTasks().size());
+        assertEquals(task.getId(), loaded.getTasks().get(0).getId());
+        assertTrue(loaded.getTasks().get(0).isCompleted());
+    }
+
+    @Test
+    @DisplayName("Saving should fold the journal into the data file")
+    void testSaveClearsJournal() {
+        CRMManager crm = newManager();
+        Customer customer = new Customer("Jane Smith", "jane@example.com", "987-654-3210", "Regular");
+        crm.addCustomer(customer);
+        crm.saveToFile();
+
+        assertTrue(new File(dataFile()).exists());
+        assertFalse(new File(dataFile() + ".journal").exists());
+
+        CRMManager reloaded = newManager();
+        assertNotNull(reloaded.findCustomerById(customer.getId()));
+        assertEquals(1, reloaded.getAllCustomers().size());
+    }
+
+    @Test
+    @DisplayName("Indexed search should match a plain substring scan")
+    void testSearchMatchesScan() {
+        CRMManager crm = newManager();
+        crm.addCustomer(new Customer("John Doe", "john@example.com", "123-456-7890", ""));
+        crm.addCustomer(new Customer("Jane Smith", "JANE@Example.org", "987-654-3210", ""));
+        crm.addCustomer(new Customer("Johnny Bravo", "bravo@test.com", "555-123-0000", ""));
+
+        String[] keywords = { "", "j", "oh", "john", "EXAMPLE", "smith", "123", "-0000", "xyz", "e@e" };
+        for (String keyword : keywords) {
+            List<Customer> expected = new ArrayList<>();
+            for (Customer c : crm.getAllCustomers()) {
+                if (c.getName().toLowerCase().contains(keyword.toLowerCase()) ||
+                    c.getEmail().toLowerCase().contains(keyword.toLowerCase()) ||
+                    c.getPhone().contains(keyword)) {
+                    expected.add(c);
+                }
+            }
+            assertEquals(expected, crm.searchCustomers(keyword), "keyword: " + keyword);
+        }
+    }
+
+    @Test
+    @DisplayName("Search should follow customer setters")
+    void testSearchAfterSetters() {
+        CRMManager crm = newManager();
+        Customer customer = new Customer("John Doe", "john@example.com", "123-456-7890", "");
+        crm.addCustomer(customer);
+
+        customer.setName("Alice Walker");
+        customer.setPhone("000-111-2222");
+
+        assertTrue(crm.searchCustomers("doe").isEmpty());
+        assertTrue(crm.searchCustomers("456").isEmpty());
+        assertEquals(1, crm.searchCustomers("walker").size());
+        assertEquals(1, crm.searchCustomers("john@").size());
+        assertEquals(1, crm.searchCustomers("111-2").size());
+    }
+
+    @Test
+    @DisplayName("Binary snapshot should round trip customers and history")
+    void testBinarySnapshotRoundTrip() {
+        CRMManager crm = new CRMManager(dataFile(), CRMManager.PersistenceMode.SNAPSHOT, CRMManager.StorageFormat.BINARY);
+        Customer customer = new Customer("Zo\u00eb \u00dcnal", "zoe@example.com", "123", "");
+        crm.addCustomer(customer);
+        crm.addCommunicationToCustomer(customer.getId(), new Communication(customer.getId(), CommunicationType.MEETING, "Kick-off", "sales,urgent"));
+        crm.addTaskToCustomer(customer.getId(), new Task(customer.getId(), "Send contract", LocalDateTime.of(2025, 1, 2, 3, 4, 5), TaskPriority.LOW));
+
+        assertTrue(new File(tempDir.resolve("customers.bin").toString()).exists());
+        assertFalse(new File(dataFile()).exists());
+
+        CRMManager reloaded = new CRMManager(dataFile(), CRMManager.PersistenceMode.SNAPSHOT, CRMManager.StorageFormat.BINARY);
+        Customer loaded = reloaded.findCustomerById(customer.getId());
+        assertEquals(customer.toFileString(), loaded.toFileString());
+    }
+
+    @Test
+    @DisplayName("Unknown types and priorities should be rejected on input and kept on load")
+    void testTypeAndPriorityValidation() throws Exception {
+        assertEquals(CommunicationType.EMAIL, CRMFactory.createCommunication(1, " Email", "Hi", "").getType());
+        assertThrows(IllegalArgumentException.class, () -> CRMFactory.createCommunication(1, "fax", "Hi", ""));
+        assertThrows(IllegalArgumentException.class, () -> CRMFactory.createCommunication(1, "other", "Hi", ""));
+        assertThrows(IllegalArgumentException.class,
+                () -> CRMFactory.createTask(1, "Call", LocalDateTime.now(), "urgent"));
+
+        // Labels an older version accepted as free text
+        Files.write(tempDir.resolve("customers.txt"), List.of(
+                "CUSTOMER|1|John Doe|john@example.com|123|",
+                "COMMUNICATION|1|1|sms|Text message|2024-01-01 10:00:00|",
+                "COMMUNICATION|2|1|Email |Follow-up|2024-01-02 10:00:00|",
+                "TASK|1|1|Call back|2024-01-03 10:00:00|urgent|false"));
+        CRMManager crm = new CRMManager(dataFile(), CRMManager.PersistenceMode.SNAPSHOT);
+        Customer loaded = crm.findCustomerById(1);
+        assertEquals(CommunicationType.OTHER, loaded.getCommunications().get(0).getType());
+        assertEquals(CommunicationType.EMAIL, loaded.getCommunications().get(1).getType());
+        assertEquals(TaskPriority.OTHER, loaded.getTasks().get(0).getPriority());
+
+        // The next save writes every record back, unknown labels as they were
+        crm.addCustomer(new Customer("Jane Smith", "jane@example.com", "456", ""));
+        List<String> lines = Files.readAllLines(tempDir.resolve("customers.txt"));
+        assertTrue(lines.contains("COMMUNICATION|1|1|sms|Text message|2024-01-01 10:00:00|"));
+        assertTrue(lines.contains("COMMUNICATION|2|1|email|Follow-up|2024-01-02 10:00:00|"));
+        assertTrue(lines.contains("TASK|1|1|Call back|2024-01-03 10:00:00|urgent|false"));
+    }
+
+    @Test
+    @DisplayName("Report totals should follow adds and task completion")
+    void testReportTotals() {
+        CRMManager crm = newManager();
+        Customer customer = new Customer("John Doe", "john@example.com", "123", "");
+        crm.addCustomer(customer);
+        crm.addCommunicationToCustomer(customer.getId(), new Communication(customer.getId(), CommunicationType.PHONE, "Intro", ""));
+        Task first = new Task(customer.getId(), "First", LocalDateTime.now(), TaskPriority.HIGH);
+        Task second = new Task(customer.getId(), "Second", LocalDateTime.now(), TaskPriority.LOW);
+        crm.addTaskToCustomer(customer.getId(), first);
+        crm.addTaskToCustomer(customer.getId(), second);
+
+        assertEquals(1, crm.getTotalCommunications());
+        assertEquals(2, crm.getTotalTasks());
+        assertEquals(0, crm.getCompletedTasks());
+
+        crm.completeTask(customer.getId(), first.getId());
+        // Completing outside the manager must be counted too
+        second.setCompleted(true);
+        second.setCompleted(true);
+        assertEquals(2, crm.getCompletedTasks());
+
+        first.setCompleted(false);
+        assertEquals(1, crm.getCompletedTasks());
+    }
+
+    @Test
+    @DisplayName("Write-behind should re-serialise only dirty customers")
+    void testWriteBehind() throws Exception {
+        CRMManager crm = new CRMManager(dataFile(), CRMManager.PersistenceMode.WRITE_BEHIND);
+        for (int i = 0; i < 20; i++) {
+            crm.addCustomer(new Customer("Customer " + i, "c" + i + "@example.com", "555-" + i, ""));
+        }
+        crm.saveToFile();
+        WriteBehindPersister persister = crm.getWriteBehind();
+        assertEquals(20, persister.getSerialisedCount());
+
+        // A burst of edits to one customer
+        Customer busy = crm.getAllCustomers().get(3);
+        long flushes = persister.getFlushCount();
+        long serialised = persister.getSerialisedCount();
+        for (int i = 0; i < 1000; i++) {
+            crm.addCommunicationToCustomer(busy.getId(), new Communication(busy.getId(), CommunicationType.EMAIL, "Note " + i, ""));
+        }
+        busy.setName("Renamed");
+        crm.close();
+
+        // Each flush serialised the busy customer once at most, nothing else,
+        // and the last one wrote its final state
+        assertTrue(persister.getSerialisedCount() - serialised <= persister.getFlushCount() - flushes);
+        assertFalse(new File(dataFile() + ".journal").exists());
+        List<String> lines = Files.readAllLines(Path.of(dataFile()));
+        assertTrue(lines.contains(busy.toFileString().split("\n")[0]));
+        assertEquals(1000, lines.stream().filter(line -> line.startsWith("COMMUNICATION|")).count());
+        assertEquals(20, lines.stream().filter(line -> line.startsWith("CUSTOMER|")).count());
+
+        CRMManager reloaded = new CRMManager(dataFile(), CRMManager.PersistenceMode.WRITE_BEHIND);
+        Customer loaded = reloaded.findCustomerById(busy.getId());
+        assertEquals("Renamed", loaded.getName());
+        assertEquals(1000, loaded.getCommunications().size());
+        assertEquals(20, reloaded.getAllCustomers().size());
+        reloaded.close();
+    }
+}
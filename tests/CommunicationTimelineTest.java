@@ -0,0 +1,111 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+class CommunicationTimelineTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    private static Communication at(int id, CommunicationType type, int hours) {
+        return new Communication(id, 1, type, "Contact " + id, START.plusHours(hours), "");
+    }
+
+    @Test
+    @DisplayName("Latest and range queries should follow timestamps, not insertion order")
+    void testOutOfOrderInserts() {
+        CommunicationTimeline timeline = new CommunicationTimeline();
+        timeline.add(at(1, CommunicationType.EMAIL, 5));
+        timeline.add(at(2, CommunicationType.PHONE, 1));
+        timeline.add(at(3, CommunicationType.EMAIL, 9));
+        timeline.add(at(4, CommunicationType.MEETING, 3));
+
+        List<Communication> latest = timeline.latest(2);
+        assertEquals(2, latest.size());
+        assertEquals(3, latest.get(0).getId());
+        assertEquals(1, latest.get(1).getId());
+
+        List<Communication> range = timeline.between(START.plusHours(1), START.plusHours(5));
+        assertEquals(2, range.size());
+        assertEquals(2, range.get(0).getId());
+        assertEquals(4, range.get(1).getId());
+
+        assertEquals(4, timeline.latest(10).size());
+        assertTrue(timeline.between(START.plusHours(10), START.plusHours(20)).isEmpty());
+        assertTrue(timeline.between(START.plusHours(5), START.plusHours(1)).isEmpty());
+    }
+
+    @Test
+    @DisplayName("A batch should be ordered like the same communications added one by one")
+    void testAddAll() {
+        CommunicationTimeline timeline = new CommunicationTimeline();
+        timeline.add(at(1, CommunicationType.EMAIL, 4));
+        timeline.addAll(List.of(at(2, CommunicationType.PHONE, 6), at(3, CommunicationType.EMAIL, 2),
+                at(4, CommunicationType.MEETING, 8), at(5, CommunicationType.EMAIL, 2)));
+        timeline.add(at(6, CommunicationType.PHONE, 7));
+
+        assertEquals(6, timeline.size());
+        List<Communication> all = timeline.all();
+        int[] expected = {3, 5, 1, 2, 6, 4};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], all.get(i).getId());
+        }
+    }
+
+    @Test
+    @DisplayName("A returned view should not change when more communications are added")
+    void testViewsAreStable() {
+        CommunicationTimeline timeline = new CommunicationTimeline();
+        timeline.add(at(1, CommunicationType.EMAIL, 2));
+        List<Communication> before = timeline.latest(5);
+        timeline.add(at(2, CommunicationType.EMAIL, 1));
+        timeline.add(at(3, CommunicationType.EMAIL, 3));
+
+        assertEquals(1, before.size());
+        assertEquals(1, before.get(0).getId());
+        assertThrows(UnsupportedOperationException.class, () -> before.add(at(4, CommunicationType.EMAIL, 4)));
+        assertEquals(3, timeline.all().size());
+        assertEquals(2, timeline.all().get(0).getId());
+    }
+
+    @Test
+    @DisplayName("Customers and the manager should answer timeline queries by type and by day")
+    void testCustomerAndGlobalTimelines() {
+        CRMManager crm = new CRMManager(tempDir.resolve("customers.txt").toString(),
+                CRMManager.PersistenceMode.JOURNAL);
+        Customer first = new Customer("John Doe", "john@example.com", "123", "");
+        Customer second = new Customer("Jane Smith", "jane@example.com", "456", "");
+        crm.addCustomer(first);
+        crm.addCustomer(second);
+        crm.addCommunicationToCustomer(first.getId(), new Communication(101, first.getId(), CommunicationType.EMAIL,
+                "Yesterday", START.minusDays(1), ""));
+        crm.addCommunicationToCustomer(first.getId(), new Communication(102, first.getId(), CommunicationType.PHONE,
+                "Morning call", START, ""));
+        crm.addCommunicationToCustomer(second.getId(), new Communication(103, second.getId(), CommunicationType.EMAIL,
+                "Afternoon mail", START.plusHours(6), ""));
+
+        List<Communication> emails = first.getLatestCommunications(CommunicationType.EMAIL, 10);
+        assertEquals(1, emails.size());
+        assertEquals(101, emails.get(0).getId());
+        assertTrue(second.getLatestCommunications(CommunicationType.MEETING, 10).isEmpty());
+        assertEquals(1, first.getCommunicationsBetween(CommunicationType.PHONE, START, START.plusDays(1)).size());
+
+        List<Communication> today = crm.getCommunicationsOn(LocalDate.of(2024, 3, 1));
+        assertEquals(2, today.size());
+        assertEquals(102, today.get(0).getId());
+        assertEquals(103, today.get(1).getId());
+        assertEquals(103, crm.getLatestCommunications(1).get(0).getId());
+
+        CRMManager reloaded = new CRMManager(tempDir.resolve("customers.txt").toString(),
+                CRMManager.PersistenceMode.JOURNAL);
+        assertEquals(2, reloaded.getCommunicationsOn(LocalDate.of(2024, 3, 1)).size());
+        assertEquals(101, reloaded.findCustomerById(first.getId()).getLatestCommunications(3).get(1).getId());
+    }
+}
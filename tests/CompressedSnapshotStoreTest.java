@@ -0,0 +1,102 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+class CompressedSnapshotStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String dataFile() {
+        return tempDir.resolve("customers.txt").toString();
+    }
+
+    private CRMManager compressedManager() {
+        return new CRMManager(dataFile(), CRMManager.PersistenceMode.SNAPSHOT, CRMManager.StorageFormat.COMPRESSED);
+    }
+
+    @Test
+    @DisplayName("Compressed blocks should load back to the same customers")
+    void testRoundTrip() throws Exception {
+        new DatasetGenerator(500, 8, 3, 1.0, 11).write(new File(dataFile()));
+        CRMManager text = new CRMManager(dataFile(), CRMManager.PersistenceMode.SNAPSHOT);
+        compressedManager().saveToFile();
+        CompressedSnapshotStore store = new CompressedSnapshotStore(CRMManager.compressedPath(dataFile()));
+        assertTrue(store.getBlockCount() > 1);
+        assertTrue(store.size() * 2 < new File(dataFile()).length());
+
+        CRMManager compressed = compressedManager();
+        List<Customer> expected = text.getAllCustomers();
+        List<Customer> actual = compressed.getAllCustomers();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toFileString(), actual.get(i).toFileString());
+        }
+        assertEquals(text.getTotalCommunications(), compressed.getTotalCommunications());
+        assertEquals(text.getTotalTasks(), compressed.getTotalTasks());
+        assertEquals(text.getCompletedTasks(), compressed.getCompletedTasks());
+    }
+
+    @Test
+    @DisplayName("A single customer should be read from its block")
+    void testReadRecord() throws Exception {
+        CRMManager crm = new CRMManager(dataFile(), CRMManager.PersistenceMode.JOURNAL);
+        for (int i = 0; i < 2000; i++) {
+            Customer customer = new Customer("Customer " + i, "c" + i + "@example.com", "555-" + i, "notes " + i);
+            crm.addCustomer(customer);
+            crm.addCommunicationToCustomer(customer.getId(),
+                    new Communication(customer.getId(), CommunicationType.EMAIL, "Hello " + i, "intro"));
+        }
+        CompressedSnapshotStore store = new CompressedSnapshotStore(CRMManager.compressedPath(dataFile()));
+        store.save(crm.getAllCustomers());
+
+        CompressedSnapshotStore reopened = new CompressedSnapshotStore(store.getPath());
+        assertTrue(reopened.getBlockCount() > 1);
+        List<Customer> customers = crm.getAllCustomers();
+        for (Customer customer : List.of(customers.get(0), customers.get(999), customers.get(customers.size() - 1))) {
+            assertEquals(customer.toFileString(), reopened.readRecord(customer.getId()));
+        }
+        assertNull(reopened.readRecord(customers.get(customers.size() - 1).getId() + 1));
+        assertNull(reopened.readRecord(-5));
+        crm.close();
+    }
+
+    @Test
+    @DisplayName("Reading a record while the file is being replaced should see one whole version")
+    void testReadRecordDuringSave() throws Exception {
+        CRMManager crm = new CRMManager(dataFile(), CRMManager.PersistenceMode.JOURNAL);
+        for (int i = 0; i < 1000; i++) {
+            crm.addCustomer(new Customer("Customer " + i, "c" + i + "@example.com", "555-" + i, "notes " + i));
+        }
+        List<Customer> before = crm.getAllCustomers();
+        Customer target = before.get(500);
+        String original = target.toFileString();
+        CompressedSnapshotStore store = new CompressedSnapshotStore(CRMManager.compressedPath(dataFile()));
+        store.save(before);
+
+        // Without the first customers every later block starts elsewhere
+        List<Customer> after = before.subList(100, before.size());
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread saver = new Thread(() -> {
+            try {
+                for (int i = 0; i < 20; i++) {
+                    store.save(i % 2 == 0 ? after : before);
+                }
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        saver.start();
+        while (saver.isAlive()) {
+            assertEquals(original, store.readRecord(target.getId()));
+        }
+        saver.join();
+        assertNull(failure.get());
+        crm.close();
+    }
+}
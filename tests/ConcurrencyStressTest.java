@@ -0,0 +1,189 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ConcurrencyStressTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 3000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Concurrent writers should not lose updates or share ids")
+    void testConcurrentWriters() throws Exception {
+        String dataFile = tempDir.resolve("customers.txt").toString();
+        CRMManager crm = new CRMManager(dataFile, CRMManager.PersistenceMode.JOURNAL);
+        // Small threshold so background compactions run while writers are busy
+        crm.setCompactionThreshold(64 * 1024);
+
+        Set<Integer> customerIds = ConcurrentHashMap.newKeySet();
+        Set<Integer> commIds = ConcurrentHashMap.newKeySet();
+        Set<Integer> taskIds = ConcurrentHashMap.newKeySet();
+        Set<Integer> completedIds = ConcurrentHashMap.newKeySet();
+        AtomicInteger customersCreated = new AtomicInteger();
+        AtomicInteger commsCreated = new AtomicInteger();
+        AtomicInteger tasksCreated = new AtomicInteger();
+
+        for (int i = 0; i < 10; i++) {
+            Customer seed = new Customer("Seed " + i, "seed" + i + "@example.com", "555-000" + i, "");
+            crm.addCustomer(seed);
+            customerIds.add(seed.getId());
+            customersCreated.incrementAndGet();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new java.util.ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Integer[] known = customerIds.toArray(new Integer[0]);
+                for (int i = 0; i < OPERATIONS; i++) {
+                    int customerId = known[random.nextInt(known.length)];
+                    switch (random.nextInt(5)) {
+                        case 0:
+                            Customer customer = new Customer("Name " + i, "user" + i + "@example.com", "555-" + i, "");
+                            crm.addCustomer(customer);
+                            assertTrue(customerIds.add(customer.getId()), "duplicate customer id");
+                            customersCreated.incrementAndGet();
+                            break;
+                        case 1:
+                            Communication comm = new Communication(customerId, CommunicationType.EMAIL, "Note " + i, "");
+                            crm.addCommunicationToCustomer(customerId, comm);
+                            assertTrue(commIds.add(comm.getId()), "duplicate communication id");
+                            commsCreated.incrementAndGet();
+                            break;
+                        case 2:
+                            Task task = new Task(customerId, "Task " + i, LocalDateTime.now(), TaskPriority.HIGH);
+                            crm.addTaskToCustomer(customerId, task);
+                            assertTrue(taskIds.add(task.getId()), "duplicate task id");
+                            tasksCreated.incrementAndGet();
+                            break;
+                        case 3:
+                            List<Task> tasks = crm.findCustomerById(customerId).getTasks();
+                            if (!tasks.isEmpty()) {
+                                Task target = tasks.get(random.nextInt(tasks.size()));
+                                if (crm.completeTask(customerId, target.getId())) {
+                                    completedIds.add(target.getId());
+                                }
+                            }
+                            break;
+                        default:
+                            crm.searchCustomers("example");
+                            crm.getAllCustomers();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(customersCreated.get(), customerIds.size());
+        assertEquals(commsCreated.get(), commIds.size());
+        assertEquals(tasksCreated.get(), taskIds.size());
+
+        assertCounts(crm, customersCreated.get(), commsCreated.get(), tasksCreated.get(), completedIds.size());
+
+        // Everything written concurrently must come back from the snapshot and journal.
+        // A compaction still running could delete the rotated journal mid-load.
+        crm.awaitCompaction();
+        CRMManager reloaded = new CRMManager(dataFile, CRMManager.PersistenceMode.JOURNAL);
+        assertCounts(reloaded, customersCreated.get(), commsCreated.get(), tasksCreated.get(), completedIds.size());
+    }
+
+    @Test
+    @DisplayName("A write held up in the indexes should not hold up writes to other customers")
+    void testWritesToDifferentCustomersOverlap() throws Exception {
+        CRMManager crm = new CRMManager(tempDir.resolve("customers.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+        Customer other = new Customer("Other", "other@example.com", "555-0001", "");
+        crm.addCustomer(other);
+
+        // Its name is first read by the search index, after the customer is in
+        // the maps and before it is published
+        CountDownLatch indexing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean armed = new AtomicBoolean(true);
+        Customer slow = new Customer("Slow", "slow@example.com", "555-0002", "") {
+            @Override
+            public String getName() {
+                if (armed.compareAndSet(true, false)) {
+                    indexing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.getName();
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<?> adding = pool.submit(() -> crm.addCustomer(slow));
+        assertTrue(indexing.await(5, TimeUnit.SECONDS));
+
+        Future<?> writing = pool.submit(() -> {
+            crm.addCommunicationToCustomer(other.getId(), new Communication(other.getId(), CommunicationType.PHONE, "Call", ""));
+            crm.addTaskToCustomer(other.getId(), new Task(other.getId(), "Follow up", LocalDateTime.now(), TaskPriority.HIGH));
+            other.setNotes("busy");
+        });
+        writing.get(5, TimeUnit.SECONDS);
+        try (CrmSnapshot snapshot = crm.openSnapshot()) {
+            assertEquals(1, snapshot.getCustomerCount());
+            assertNull(snapshot.findCustomerById(slow.getId()));
+        }
+
+        release.countDown();
+        adding.get(5, TimeUnit.SECONDS);
+        pool.shutdown();
+        assertEquals(2, crm.getCustomerCount());
+        assertEquals(List.of(slow), crm.searchCustomers("slow"));
+        assertEquals(1, crm.getTotalCommunications());
+        assertEquals(1, crm.getTotalTasks());
+        crm.close();
+    }
+
+    private void assertCounts(CRMManager crm, int customers, int comms, int tasks, int completed) {
+        List<Customer> all = crm.getAllCustomers();
+        assertEquals(customers, all.size());
+        int commCount = 0;
+        int taskCount = 0;
+        int completedCount = 0;
+        for (Customer customer : all) {
+            commCount += customer.getCommunications().size();
+            for (Task task : customer.getTasks()) {
+                taskCount++;
+                if (task.isCompleted()) {
+                    completedCount++;
+                }
+            }
+        }
+        assertEquals(comms, commCount);
+        assertEquals(tasks, taskCount);
+        assertEquals(completed, completedCount);
+        assertEquals(comms, crm.getTotalCommunications());
+        assertEquals(tasks, crm.getTotalTasks());
+        assertEquals(completed, crm.getCompletedTasks());
+    }
+}
@@ -0,0 +1,145 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+class CrmHttpServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private CRMManager crm;
+    private CrmHttpServer server;
+    private HttpClient client;
+    private URI base;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        crm = new CRMManager(tempDir.resolve("customers.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+        server = new CrmHttpServer(crm, new InetSocketAddress("localhost", 0));
+        server.start();
+        base = URI.create("http://localhost:" + server.getPort());
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(base.resolve(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String json) throws Exception {
+        return client.send(HttpRequest.newBuilder(base.resolve(path)).POST(HttpRequest.BodyPublishers.ofString(json)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static Map<String, Object> json(HttpResponse<String> response) {
+        return Json.parseObject(response.body());
+    }
+
+    @Test
+    @DisplayName("API should expose customers, history, tasks and reports")
+    void testApi() throws Exception {
+        HttpResponse<String> created = post("/customers",
+                "{\"name\":\"John Smith\",\"email\":\"john@example.com\",\"phone\":\"555-1234\",\"notes\":\"VIP\"}");
+        assertEquals(201, created.statusCode());
+        long id = (Long) json(created).get("id");
+        post("/customers", "{\"name\":\"Jane Smith\",\"email\":\"jane@example.com\"}");
+        post("/customers", "{\"name\":\"Ann Smithers\",\"email\":\"ann@example.com\"}");
+
+        assertEquals("John Smith", json(get("/customers/" + id)).get("name"));
+        assertEquals(404, get("/customers/9999").statusCode());
+        assertEquals(400, post("/customers", "{\"name\":\"Bad|Name\"}").statusCode());
+        assertEquals(400, post("/customers", "{not json").statusCode());
+        assertEquals(400, post("/customers", "[".repeat(100000)).statusCode());
+
+        // Search results come back a page at a time
+        Map<String, Object> page = json(get("/customers/search?q=smith&limit=2&sort=name"));
+        assertEquals(2, ((List<?>) page.get("items")).size());
+        assertEquals("Ann Smithers", ((Map<?, ?>) ((List<?>) page.get("items")).get(0)).get("name"));
+        Map<String, Object> next = json(get((String) page.get("next")));
+        assertEquals(1, ((List<?>) next.get("items")).size());
+        assertEquals("John Smith", ((Map<?, ?>) ((List<?>) next.get("items")).get(0)).get("name"));
+        assertNull(next.get("next"));
+        assertEquals(3L, json(get("/customers?limit=1")).get("total"));
+        assertEquals(400, get("/customers?sort=phone").statusCode());
+        assertEquals(400, get("/customers?offset=1").statusCode());
+
+        assertEquals(201, post("/customers/" + id + "/communications",
+                "{\"type\":\"phone\",\"description\":\"Intro call\",\"tags\":\"sales\"}").statusCode());
+        HttpResponse<String> task = post("/customers/" + id + "/tasks",
+                "{\"description\":\"Send quote\",\"dueDate\":\"2030-01-15\",\"priority\":\"high\"}");
+        assertEquals(201, task.statusCode());
+        long taskId = (Long) json(task).get("id");
+        assertEquals("2030-01-15T00:00", json(task).get("dueDate"));
+
+        HttpResponse<String> completed = post("/customers/" + id + "/tasks/" + taskId + "/complete", "");
+        assertEquals(200, completed.statusCode());
+        assertEquals(Boolean.TRUE, json(completed).get("completed"));
+        assertEquals(404, post("/customers/" + id + "/tasks/9999/complete", "").statusCode());
+
+        Map<String, Object> overall = json(get("/reports/overall"));
+        assertEquals(3L, overall.get("customers"));
+        assertEquals(1L, overall.get("communications"));
+        assertEquals(1L, overall.get("completedTasks"));
+        Map<String, Object> report = json(get("/reports/customers/" + id));
+        assertEquals(1, ((List<?>) report.get("communications")).size());
+        assertEquals(1, ((List<?>) report.get("tasks")).size());
+
+        // Tasks across customers by status and priority
+        HttpResponse<String> open = post("/customers/" + id + "/tasks",
+                "{\"description\":\"Follow up\",\"dueInDays\":3,\"priority\":\"low\"}");
+        long openId = (Long) json(open).get("id");
+        assertEquals(1L, json(get("/tasks?status=open")).get("total"));
+        assertEquals(0L, json(get("/tasks?status=open&priority=high")).get("total"));
+        assertEquals(1L, json(get("/tasks?status=completed&priority=high")).get("total"));
+        assertEquals(400, get("/tasks?status=late").statusCode());
+        HttpResponse<String> second = post("/customers/" + id + "/tasks",
+                "{\"description\":\"Send quote\",\"dueInDays\":4,\"priority\":\"low\"}");
+        long secondId = (Long) json(second).get("id");
+        Map<String, Object> firstPage = json(get("/tasks?status=open&limit=1"));
+        assertEquals(2L, firstPage.get("total"));
+        assertEquals(openId, ((Map<?, ?>) ((List<?>) firstPage.get("items")).get(0)).get("id"));
+        Map<String, Object> lastPage = json(get((String) firstPage.get("next")));
+        assertEquals(secondId, ((Map<?, ?>) ((List<?>) lastPage.get("items")).get(0)).get("id"));
+        assertNull(lastPage.get("next"));
+        assertEquals(400, get("/tasks?offset=1").statusCode());
+        assertEquals(200, post("/tasks/" + secondId + "/complete", "").statusCode());
+        assertEquals(200, post("/tasks/" + openId + "/complete", "").statusCode());
+        assertEquals(0L, json(get("/tasks")).get("total"));
+        assertEquals(404, post("/tasks/9999/complete", "").statusCode());
+
+        assertEquals(405, client.send(HttpRequest.newBuilder(base.resolve("/reports/overall"))
+                .DELETE().build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    @DisplayName("Load test against localhost should complete without errors")
+    void testLoadAgainstLocalhost() throws Exception {
+        new DatasetGenerator(50, 2, 1, 0, 5).write(tempDir.resolve("load.txt").toFile());
+        CRMManager loaded = new CRMManager(tempDir.resolve("load.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+        CrmHttpServer loadServer = new CrmHttpServer(loaded, new InetSocketAddress("localhost", 0));
+        loadServer.start();
+        try {
+            HttpLoadDriver driver = new HttpLoadDriver(URI.create("http://localhost:" + loadServer.getPort()));
+            HttpLoadDriver.Result result = driver.run(4, 400, 1);
+            assertEquals(400, result.requests);
+            assertEquals(0, result.errors);
+        } finally {
+            loadServer.stop();
+        }
+    }
+}
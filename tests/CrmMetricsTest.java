@@ -0,0 +1,116 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+class CrmMetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Histogram percentiles should be within a bucket of the recorded values")
+    void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(10000, histogram.count());
+        assertEquals(10_000_000, histogram.max());
+        assertEquals(5_000_500, histogram.mean(), 1);
+        assertEquals(5_000_000, histogram.percentile(0.5), 5_000_000 * 0.04);
+        assertEquals(9_900_000, histogram.percentile(0.99), 9_900_000 * 0.04);
+        assertEquals(10_000_000, histogram.percentile(1.0));
+
+        // Every value falls in the bucket whose range holds it
+        for (long value : new long[] {0, 31, 32, 33, 1000, 123_456_789, Long.MAX_VALUE / 2}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value <= LatencyHistogram.highestIn(bucket) || bucket == LatencyHistogram.bucketOf(Long.MAX_VALUE));
+            assertTrue(bucket == 0 || value > LatencyHistogram.highestIn(bucket - 1));
+        }
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(0.5));
+    }
+
+    @Test
+    @DisplayName("Manager operations, saves and loads should be counted")
+    void testOperationCounts() {
+        String file = tempDir.resolve("customers.txt").toString();
+        CRMManager crm = new CRMManager(file, CRMManager.PersistenceMode.JOURNAL);
+        CrmMetrics metrics = crm.getMetrics();
+        Customer customer = new Customer("John Doe", "john@example.com", "123-456-7890", "");
+        crm.addCustomer(customer);
+        crm.addCommunicationToCustomer(customer.getId(),
+                new Communication(customer.getId(), CommunicationType.PHONE, "Intro", "sales"));
+        Task task = new Task(customer.getId(), "Call back", LocalDateTime.now(), TaskPriority.HIGH);
+        crm.addTaskToCustomer(customer.getId(), task);
+        crm.completeTask(customer.getId(), task.getId());
+        crm.findCustomerById(customer.getId());
+        crm.findCustomerById(-1);
+        crm.searchCustomers("john");
+
+        assertEquals(1, metrics.getCount("addCustomer"));
+        assertEquals(1, metrics.getCount("addComm"));
+        assertEquals(1, metrics.getCount("completeTask"));
+        // Lookups made inside other operations are not counted again
+        assertEquals(2, metrics.getCount("findCustomer"));
+        assertEquals(1, metrics.getCount("search"));
+        assertEquals(0, metrics.getCount("streamSearch"));
+        assertEquals(4, metrics.getCount("notify"));
+        assertTrue(metrics.getMaxMicros("addCustomer") > 0);
+        assertThrows(IllegalArgumentException.class, () -> metrics.getCount("nope"));
+
+        assertEquals(1, metrics.getCustomerCount());
+        assertEquals(1, metrics.getCommunicationIndexSize());
+        assertEquals(1, metrics.getTaskIndexSize());
+        assertEquals(1, metrics.getTagCount());
+        assertTrue(metrics.getTrigramCount() > 0);
+
+        crm.saveToFile();
+        assertEquals(1, metrics.getSaves());
+        assertTrue(metrics.getLastSaveBytes() > 0);
+
+        CRMManager reloaded = new CRMManager(file, CRMManager.PersistenceMode.JOURNAL);
+        assertEquals(1, reloaded.getMetrics().getLoads());
+        assertEquals(metrics.getLastSaveBytes(), reloaded.getMetrics().getLastLoadBytes());
+
+        String report = metrics.getReport();
+        assertTrue(report.contains("addCustomer"));
+        assertTrue(report.contains("Indexes: customers 1"));
+        assertFalse(report.contains("tagSearch"));
+
+        // Streams are recorded when read to the end or closed
+        Stream<Customer> stream = crm.streamCustomers();
+        assertEquals(0, metrics.getCount("streamCustomers"));
+        assertEquals(1, stream.count());
+        assertEquals(1, metrics.getCount("streamCustomers"));
+        crm.streamSearch("john").findFirst();
+        assertEquals(0, metrics.getCount("streamSearch"));
+        try (Stream<Customer> matches = crm.streamSearch("john")) {
+            matches.findFirst();
+        }
+        assertEquals(1, metrics.getCount("streamSearch"));
+        crm.countTasks(true);
+        crm.countTasks(TaskPriority.HIGH, false);
+        crm.getCommunicationsOn(LocalDate.now());
+        crm.getTagFrequency("sales");
+        crm.getTopTags(3);
+        assertEquals(2, metrics.getCount("countTasks"));
+        assertEquals(1, metrics.getCount("commsOn"));
+        assertEquals(0, metrics.getCount("commsBetween"));
+        assertEquals(1, metrics.getCount("tagFrequency"));
+        assertEquals(1, metrics.getCount("topTags"));
+
+        metrics.reset();
+        assertEquals(0, metrics.getCount("addCustomer"));
+        assertEquals(0, metrics.getSavedBytes());
+        crm.close();
+        reloaded.close();
+    }
+}
@@ -0,0 +1,149 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+class CrmSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    private CRMManager newManager() {
+        return new CRMManager(tempDir.resolve("customers.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+    }
+
+    @Test
+    @DisplayName("A snapshot should not see changes made after it was opened")
+    void testSnapshotIsolation() {
+        CRMManager crm = newManager();
+        Customer customer = new Customer("John Doe", "john@example.com", "123-456-7890", "");
+        crm.addCustomer(customer);
+        crm.addCommunicationToCustomer(customer.getId(),
+                new Communication(customer.getId(), CommunicationType.PHONE, "Intro", "sales"));
+        Task task = new Task(customer.getId(), "Call back", LocalDateTime.now(), TaskPriority.HIGH);
+        crm.addTaskToCustomer(customer.getId(), task);
+
+        try (CrmSnapshot snapshot = crm.openSnapshot()) {
+            customer.setName("Alice Walker");
+            crm.addCommunicationToCustomer(customer.getId(),
+                    new Communication(customer.getId(), CommunicationType.EMAIL, "Follow up", ""));
+            crm.completeTask(customer.getId(), task.getId());
+            Customer other = new Customer("Jane Smith", "jane@example.com", "555", "");
+            crm.addCustomer(other);
+
+            Customer seen = snapshot.findCustomerById(customer.getId());
+            assertEquals("John Doe", seen.getName());
+            assertEquals(1, seen.getCommunications().size());
+            assertEquals("Intro", seen.getLatestCommunications(5).get(0).getDescription());
+            assertEquals(1, seen.getLatestCommunications(5).size());
+            assertFalse(seen.getTasks().get(0).isCompleted());
+            assertNull(snapshot.findCustomerById(other.getId()));
+            assertEquals(1, snapshot.streamCustomers().count());
+            assertEquals(1, snapshot.getCustomerCount());
+            assertEquals(1, snapshot.getTotalCommunications());
+            assertEquals(0, snapshot.getCompletedTasks());
+            assertThrows(UnsupportedOperationException.class, () -> seen.setName("Nope"));
+
+            // Search goes by the values the snapshot sees, not the current index
+            assertEquals(1, snapshot.searchCustomers("doe").size());
+            assertTrue(snapshot.searchCustomers("walker").isEmpty());
+            assertTrue(crm.searchCustomers("doe").isEmpty());
+
+            // The live data moved on
+            assertEquals("Alice Walker", customer.getName());
+            assertEquals(2, customer.getCommunications().size());
+            assertTrue(task.isCompleted());
+            assertEquals(2, crm.getTotalCommunications());
+            assertEquals(1, crm.getCompletedTasks());
+        }
+
+        try (CrmSnapshot snapshot = crm.openSnapshot()) {
+            assertEquals("Alice Walker", snapshot.findCustomerById(customer.getId()).getName());
+            assertEquals(2, snapshot.getCustomerCount());
+            assertTrue(snapshot.findCustomerById(customer.getId()).getTasks().get(0).isCompleted());
+        }
+    }
+
+    @Test
+    @DisplayName("Snapshots taken during writes should always add up")
+    void testConsistentUnderWrites() throws Exception {
+        CRMManager crm = newManager();
+        Customer[] customers = new Customer[5];
+        for (int i = 0; i < customers.length; i++) {
+            customers[i] = new Customer("Customer " + i, "c" + i + "@example.com", "555-" + i, "");
+            crm.addCustomer(customers[i]);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                Customer customer = customers[i % customers.length];
+                crm.addCommunicationToCustomer(customer.getId(),
+                        new Communication(customer.getId(), CommunicationType.EMAIL, "Note " + i, ""));
+                Task task = new Task(customer.getId(), "Task " + i, LocalDateTime.now(), TaskPriority.LOW);
+                crm.addTaskToCustomer(customer.getId(), task);
+                if (i % 2 == 0) {
+                    crm.completeTask(customer.getId(), task.getId());
+                }
+            }
+            done.set(true);
+        });
+        writer.start();
+        int snapshots = 0;
+        while (!done.get() || snapshots == 0) {
+            try (CrmSnapshot snapshot = crm.openSnapshot()) {
+                long communications = 0;
+                long tasks = 0;
+                long completed = 0;
+                for (Customer customer : (Iterable<Customer>) snapshot.streamCustomers()::iterator) {
+                    communications += customer.getCommunications().size();
+                    List<Task> customerTasks = customer.getTasks();
+                    tasks += customerTasks.size();
+                    for (Task task : customerTasks) {
+                        if (task.isCompleted()) {
+                            completed++;
+                        }
+                    }
+                }
+                assertEquals(snapshot.getTotalCommunications(), communications);
+                assertEquals(snapshot.getTotalTasks(), tasks);
+                assertEquals(snapshot.getCompletedTasks(), completed);
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+                break;
+            }
+            snapshots++;
+        }
+        writer.join();
+        if (failure.get() != null) {
+            fail(failure.get());
+        }
+        assertEquals(2000, crm.getTotalCommunications());
+        assertEquals(1000, crm.getCompletedTasks());
+    }
+
+    @Test
+    @DisplayName("A snapshot on one manager should not hold back another manager's versions")
+    void testManagersHaveTheirOwnClock() {
+        CRMManager first = newManager();
+        CRMManager second = new CRMManager(tempDir.resolve("other.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+        Customer customer = new Customer("John Doe", "john@example.com", "123", "");
+        second.addCustomer(customer);
+
+        try (CrmSnapshot snapshot = first.openSnapshot()) {
+            long secondVersion = second.getVersionClock().published();
+            customer.setName("Alice Walker");
+            assertEquals(VersionClock.LATEST, second.getVersionClock().oldestReader());
+            assertEquals(secondVersion + 1, second.getVersionClock().published());
+            assertEquals(snapshot.getVersion(), first.getVersionClock().published());
+        }
+        assertEquals(VersionClock.LATEST, first.getVersionClock().oldestReader());
+        first.close();
+        second.close();
+    }
+}
@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+class CustomerPageTest {
+
+    @TempDir
+    Path tempDir;
+
+    private CRMManager newManager() {
+        CRMManager crm = new CRMManager(tempDir.resolve("customers.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+        Random random = new Random(7);
+        String[] names = { "Smith", "Jones", "smithers", "Brown", "Taylor" };
+        for (int i = 0; i < 57; i++) {
+            // Repeated names and emails so the id tiebreak matters
+            String name = names[random.nextInt(names.length)] + " " + random.nextInt(10);
+            crm.addCustomer(new Customer(name, "c" + random.nextInt(20) + "@example.com", "555-" + i, ""));
+        }
+        return crm;
+    }
+
+    private static List<Customer> allPages(CRMManager crm, String keyword, int limit, CustomerPage.Sort sort) {
+        List<Customer> seen = new ArrayList<>();
+        int after = 0;
+        while (true) {
+            CustomerPage page = keyword == null
+                    ? crm.getCustomerPage(after, limit, sort)
+                    : crm.searchCustomerPage(keyword, after, limit, sort);
+            assertTrue(page.getItems().size() <= limit);
+            seen.addAll(page.getItems());
+            if (!page.hasNext()) {
+                return seen;
+            }
+            assertEquals(limit, page.getItems().size());
+            after = page.getNextAfter();
+        }
+    }
+
+    @Test
+    @DisplayName("Paging through customers should visit each once in sort order")
+    void testPagesCoverAllInOrder() {
+        CRMManager crm = newManager();
+        for (CustomerPage.Sort sort : CustomerPage.Sort.values()) {
+            List<Customer> expected = crm.getAllCustomers();
+            expected.sort(sort.comparator());
+            for (int limit : new int[] { 1, 10, 57, 100 }) {
+                assertEquals(expected, allPages(crm, null, limit, sort), sort + " limit " + limit);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Paged and streamed search should match the full search")
+    void testSearchPages() {
+        CRMManager crm = newManager();
+        for (String keyword : new String[] { "smith", "SMITH", "1", "c1@", "555-4", "nobody" }) {
+            List<Customer> expected = crm.searchCustomers(keyword);
+            assertEquals(expected, crm.streamSearch(keyword).collect(Collectors.toList()));
+            for (CustomerPage.Sort sort : CustomerPage.Sort.values()) {
+                List<Customer> sorted = new ArrayList<>(expected);
+                sorted.sort(sort.comparator());
+                assertEquals(sorted, allPages(crm, keyword, 4, sort), keyword + " " + sort);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Id paging should carry on past customers added between pages")
+    void testKeysetStableUnderInserts() {
+        CRMManager crm = newManager();
+        CustomerPage first = crm.getCustomerPage(0, 10, CustomerPage.Sort.ID);
+        crm.addCustomer(new Customer("Zed New", "zed@example.com", "555-999", ""));
+        CustomerPage second = crm.getCustomerPage(first.getNextAfter(), 10, CustomerPage.Sort.ID);
+        assertEquals(first.getItems().get(9).getId() + 1, second.getItems().get(0).getId());
+
+        assertEquals(58, crm.streamCustomers().count());
+        assertThrows(IllegalArgumentException.class, () -> crm.getCustomerPage(0, 0, CustomerPage.Sort.ID));
+        assertThrows(IllegalArgumentException.class, () -> crm.getCustomerPage(99999, 5, CustomerPage.Sort.NAME));
+    }
+}
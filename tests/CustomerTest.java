@@ -14,8 +14,8 @@ class CustomerTest {
     void setUp() {
         Customer.setNextId(1); // Reset ID counter for consistent testing
         customer = new Customer("John Doe", "john@example.com", "123-456-7890", "VIP Customer");
-        communication = new Communication(1, "email", "Follow-up call", "urgent");
-        task = new Task(1, "Call customer", LocalDateTime.now().plusDays(1), "high");
+        communication = new Communication(1, CommunicationType.EMAIL, "Follow-up call", "urgent");
+        task = new Task(1, "Call customer", LocalDateTime.now().plusDays(1), TaskPriority.HIGH);
     }
     
     @Test
@@ -74,8 +74,8 @@ class CustomerTest {
     @Test
     @DisplayName("Adding multiple communications and tasks should work")
     void testMultipleAdditions() {
-        Communication comm2 = new Communication(1, "phone", "Initial contact", "sales");
-        Task task2 = new Task(1, "Send proposal", LocalDateTime.now().plusDays(2), "medium");
+        Communication comm2 = new Communication(1, CommunicationType.PHONE, "Initial contact", "sales");
+        Task task2 = new Task(1, "Send proposal", LocalDateTime.now().plusDays(2), TaskPriority.MEDIUM);
         
         customer.addCommunication(communication);
         customer.addCommunication(comm2);
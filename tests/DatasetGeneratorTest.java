@@ -0,0 +1,64 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class DatasetGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Generated files should load and follow the requested skew")
+    void testGeneratedFileLoads() throws Exception {
+        File file = tempDir.resolve("customers.txt").toFile();
+        long[] counts = new DatasetGenerator(500, 8, 2, 1.0, 7).write(file);
+
+        CRMManager crm = new CRMManager(file.getPath(), CRMManager.PersistenceMode.JOURNAL);
+        List<Customer> customers = crm.getAllCustomers();
+        assertEquals(500, customers.size());
+        assertEquals(counts[1], crm.getTotalCommunications());
+        assertEquals(counts[2], crm.getTotalTasks());
+        // The expected total is 500 * 8; rounding moves it only a little
+        assertEquals(4000, counts[1], 200);
+
+        // With skew the first customers get far more history than the last
+        assertTrue(customers.get(0).getCommunications().size() > 10 * customers.get(499).getCommunications().size());
+
+        // Same arguments, same file
+        File again = tempDir.resolve("again.txt").toFile();
+        new DatasetGenerator(500, 8, 2, 1.0, 7).write(again);
+        assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(again.toPath()));
+    }
+
+    @Test
+    @DisplayName("Workload driver should run the requested mix")
+    void testWorkloadDriver() throws Exception {
+        File file = tempDir.resolve("customers.txt").toFile();
+        new DatasetGenerator(200, 3, 1, 0, 1).write(file);
+        CRMManager crm = new CRMManager(file.getPath(), CRMManager.PersistenceMode.JOURNAL);
+        long communicationsBefore = crm.getTotalCommunications();
+
+        WorkloadDriver driver = new WorkloadDriver(crm,
+                WorkloadDriver.parseMix("create=1,search=1,communication=2,report=1"), 0.8, 3);
+        WorkloadDriver.Result result = driver.run(1000, 2);
+
+        assertEquals(1000, result.operations);
+        int total = 0;
+        for (WorkloadDriver.OperationStats stats : result.stats) {
+            total += stats.count;
+            assertTrue(stats.p50 <= stats.p99 && stats.p99 <= stats.max);
+            if (stats.operation == WorkloadDriver.Operation.TASK) {
+                assertEquals(0, stats.count);
+            }
+            if (stats.operation == WorkloadDriver.Operation.COMMUNICATION) {
+                assertEquals(communicationsBefore + stats.count, crm.getTotalCommunications());
+            }
+        }
+        assertEquals(1000, total);
+    }
+}
@@ -0,0 +1,97 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class FastLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    // Several megabytes so the file is split into more than one chunk
+    private String sampleData() {
+        StringBuilder sb = new StringBuilder();
+        int commId = 1;
+        int taskId = 1;
+        for (int id = 1; id <= 20000; id++) {
+            sb.append("CUSTOMER|").append(id).append("|Customer ").append(id).append("|c").append(id)
+              .append("@example.com|555-").append(id).append("|").append(id % 7 == 0 ? "" : "notes").append("\n");
+            for (int j = 0; j < 3; j++) {
+                sb.append("COMMUNICATION|").append(commId++).append("|").append(id).append("|email|Call number ")
+                  .append(j).append("|2024-03-0").append(j + 1).append(" 10:15:3").append(j).append("|")
+                  .append(j == 0 ? "" : "urgent").append("\n");
+            }
+            sb.append("TASK|").append(taskId++).append("|").append(id).append("|Follow up|2024-12-31 23:59:00|high|")
+              .append(id % 2 == 0).append("\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    @DisplayName("Fast loader should produce the same state as line by line replay")
+    void testMatchesLineReplay() throws IOException {
+        String data = sampleData();
+        Path fast = Files.createDirectory(tempDir.resolve("fast"));
+        Path slow = Files.createDirectory(tempDir.resolve("slow"));
+        Files.write(fast.resolve("customers.txt"), data.getBytes());
+        // A journal is replayed line by line with the plain parser
+        Files.write(slow.resolve("customers.txt.journal"), data.getBytes());
+
+        CRMManager fastCrm = new CRMManager(fast.resolve("customers.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+        int nextCustomerId = new Customer("a", "b", "c", "d").getId();
+        int nextCommId = new Communication(1, CommunicationType.EMAIL, "x", "").getId();
+        int nextTaskId = new Task(1, "x", null, TaskPriority.LOW).getId();
+
+        CRMManager slowCrm = new CRMManager(slow.resolve("customers.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+        assertEquals(nextCustomerId, new Customer("a", "b", "c", "d").getId());
+        assertEquals(nextCommId, new Communication(1, CommunicationType.EMAIL, "x", "").getId());
+        assertEquals(nextTaskId, new Task(1, "x", null, TaskPriority.LOW).getId());
+
+        List<Customer> expected = slowCrm.getAllCustomers();
+        List<Customer> actual = fastCrm.getAllCustomers();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toFileString(), actual.get(i).toFileString());
+        }
+    }
+
+    @Test
+    @DisplayName("Records with non-canonical labels should be kept by every loader")
+    void testNonCanonicalLabels() throws IOException {
+        List<String> data = List.of(
+                "CUSTOMER|1|John Doe|john@example.com|123|",
+                "COMMUNICATION|1|1|sms|Text message|2024-01-01 10:00:00|",
+                "COMMUNICATION|2|1| MEETING|Visit|2024-01-02 10:00:00|",
+                "TASK|1|1|Call back|2024-01-03 10:00:00|Urgent|false",
+                "TASK|2|1|Send quote|2024-01-04 10:00:00|low |true");
+        Path fast = Files.createDirectory(tempDir.resolve("fast"));
+        Path slow = Files.createDirectory(tempDir.resolve("slow"));
+        Files.write(fast.resolve("customers.txt"), data);
+        Files.write(slow.resolve("customers.txt.journal"), data);
+        CRMManager fastCrm = new CRMManager(fast.resolve("customers.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+        CRMManager slowCrm = new CRMManager(slow.resolve("customers.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+
+        String expected = "CUSTOMER|1|John Doe|john@example.com|123|\n"
+                + "COMMUNICATION|1|1|sms|Text message|2024-01-01 10:00:00|\n"
+                + "COMMUNICATION|2|1|meeting|Visit|2024-01-02 10:00:00|\n"
+                + "TASK|1|1|Call back|2024-01-03 10:00:00|Urgent|false\n"
+                + "TASK|2|1|Send quote|2024-01-04 10:00:00|low|true\n";
+        assertEquals(expected, fastCrm.findCustomerById(1).toFileString());
+        assertEquals(expected, slowCrm.findCustomerById(1).toFileString());
+        Task urgent = fastCrm.findTaskById(1);
+        assertEquals(TaskPriority.OTHER, urgent.getPriority());
+        assertEquals(List.of(urgent), fastCrm.findTasks(TaskPriority.OTHER, false));
+
+        // The binary format keeps the labels too
+        String binaryFile = tempDir.resolve("binary").resolve("customers.txt").toString();
+        Files.createDirectory(tempDir.resolve("binary"));
+        new BinarySnapshotStore(CRMManager.binaryPath(binaryFile)).save(fastCrm.getAllCustomers());
+        CRMManager binaryCrm = new CRMManager(binaryFile,
+                CRMManager.PersistenceMode.JOURNAL, CRMManager.StorageFormat.BINARY);
+        assertEquals(expected, binaryCrm.findCustomerById(1).toFileString());
+    }
+}
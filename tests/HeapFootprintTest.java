@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Path;
+
+class HeapFootprintTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Loaded records should share their enum's label instead of holding a decoded copy")
+    void testKnownLabelsAreShared() throws Exception {
+        File data = tempDir.resolve("customers.txt").toFile();
+        new DatasetGenerator(500, 8, 4, 1.0, 17).write(data);
+        CRMManager crm = new CRMManager(data.getPath(), CRMManager.PersistenceMode.SNAPSHOT);
+
+        int records = 0;
+        for (Customer customer : crm.getAllCustomers()) {
+            for (Communication comm : customer.getCommunications()) {
+                assertNotSame(CommunicationType.OTHER, comm.getType());
+                assertSame(comm.getType().label(), comm.getTypeLabel());
+                records++;
+            }
+            for (Task task : customer.getTasks()) {
+                assertNotSame(TaskPriority.OTHER, task.getPriority());
+                assertSame(task.getPriority().label(), task.getPriorityLabel());
+                records++;
+            }
+        }
+        assertEquals(crm.getTotalCommunications() + crm.getTotalTasks(), records);
+    }
+
+    @Test
+    @DisplayName("Only a label outside the enum should be kept per record")
+    void testOtherLabelsAreKept() throws Exception {
+        File data = tempDir.resolve("customers.txt").toFile();
+        try (FileWriter writer = new FileWriter(data)) {
+            writer.write("CUSTOMER|1|John Doe|john@example.com|555-1|\n");
+            writer.write("COMMUNICATION|1|1|sms|Texted|2024-01-01 10:00:00|\n");
+            writer.write("COMMUNICATION|2|1|EMAIL|Mailed|2024-01-01 11:00:00|\n");
+            writer.write("TASK|1|1|Call back|2024-01-02 10:00:00|urgent|false\n");
+        }
+        CRMManager crm = new CRMManager(data.getPath(), CRMManager.PersistenceMode.SNAPSHOT);
+        Customer customer = crm.findCustomerById(1);
+
+        Communication sms = customer.getCommunications().get(0);
+        assertSame(CommunicationType.OTHER, sms.getType());
+        assertEquals("sms", sms.getTypeLabel());
+        Communication email = customer.getCommunications().get(1);
+        assertSame(CommunicationType.EMAIL, email.getType());
+        assertSame(CommunicationType.EMAIL.label(), email.getTypeLabel());
+        Task task = customer.getTasks().get(0);
+        assertSame(TaskPriority.OTHER, task.getPriority());
+        assertEquals("urgent", task.getPriorityLabel());
+    }
+}
@@ -0,0 +1,42 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+class IntMapTest {
+
+    @Test
+    @DisplayName("Put and get should work across resizes")
+    void testPutAndGet() {
+        IntMap<String> map = new IntMap<>();
+        for (int i = 0; i < 10000; i++) {
+            map.put(i, "value" + i);
+        }
+        assertEquals(10000, map.size());
+        assertEquals("value0", map.get(0));
+        assertEquals("value9999", map.get(9999));
+        assertNull(map.get(10000));
+    }
+
+    @Test
+    @DisplayName("Random puts and removes should match HashMap")
+    void testMatchesHashMap() {
+        IntMap<Integer> map = new IntMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 50000; i++) {
+            int key = random.nextInt(2000) - 100;
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = -100; key < 1900; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+}
@@ -0,0 +1,247 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+class LazyHistoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final long CACHE_RECORDS = 200;
+
+    private String dataFile() {
+        return tempDir.resolve("customers.txt").toString();
+    }
+
+    private CRMManager lazyManager() {
+        return new CRMManager(dataFile(), CRMManager.PersistenceMode.JOURNAL, CRMManager.StorageFormat.TEXT,
+                false, CACHE_RECORDS);
+    }
+
+    private void generate() throws Exception {
+        DatasetGenerator generator = new DatasetGenerator(300, 8, 3, 1.0, 42);
+        generator.write(new File(dataFile()));
+    }
+
+    @Test
+    @DisplayName("Histories should be read on demand and match a full load")
+    void testPagesInOnDemand() throws Exception {
+        generate();
+        CRMManager eager = new CRMManager(dataFile(), CRMManager.PersistenceMode.JOURNAL);
+        CRMManager lazy = lazyManager();
+        LazyHistoryStore store = (LazyHistoryStore) lazy.getStore();
+
+        assertEquals(eager.getCustomerCount(), lazy.getCustomerCount());
+        assertEquals(eager.getTotalCommunications(), lazy.getTotalCommunications());
+        assertEquals(eager.getTotalTasks(), lazy.getTotalTasks());
+        assertEquals(eager.getCompletedTasks(), lazy.getCompletedTasks());
+        assertEquals(0, store.residentRecords());
+
+        for (Customer customer : eager.getAllCustomers()) {
+            Customer paged = lazy.findCustomerById(customer.getId());
+            assertEquals(customer.toFileString(), paged.toFileString());
+            assertTrue(store.residentRecords() <= CACHE_RECORDS + paged.getCommunications().size()
+                    + paged.getTasks().size());
+        }
+        Customer first = lazy.getAllCustomers().get(0);
+        assertFalse(first.isHistoryLoaded());
+        assertEquals(first.getCommunications().size(), eager.findCustomerById(first.getId()).getCommunications().size());
+        assertTrue(first.isHistoryLoaded());
+    }
+
+    @Test
+    @DisplayName("Changed histories should stay in memory and be saved")
+    void testChangedHistoriesArePinned() throws Exception {
+        generate();
+        CRMManager lazy = lazyManager();
+        Customer customer = lazy.getAllCustomers().get(5);
+        int before = customer.getCommunications().size();
+        Communication comm = new Communication(customer.getId(), CommunicationType.PHONE, "Pinned call", "");
+        lazy.addCommunicationToCustomer(customer.getId(), comm);
+        Task task = new Task(customer.getId(), "Pinned task", LocalDateTime.now().plusDays(1), TaskPriority.HIGH);
+        lazy.addTaskToCustomer(customer.getId(), task);
+
+        Customer other = null;
+        for (Customer c : lazy.getAllCustomers()) {
+            if (c != customer && !c.getTasks().isEmpty() && !c.getTasks().get(0).isCompleted()) {
+                other = c;
+                break;
+            }
+        }
+        assertNotNull(other);
+        Task stored = other.getTasks().get(0);
+        assertTrue(lazy.completeTask(other.getId(), stored.getId()));
+
+        // Touching every other history pushes the changed ones past the cache bound
+        for (Customer c : lazy.getAllCustomers()) {
+            c.getCommunications();
+        }
+        assertTrue(customer.isHistoryLoaded());
+        assertEquals(before + 1, customer.getCommunications().size());
+        assertSame(comm, lazy.findCommunicationById(comm.getId()));
+        assertTrue(other.getTasks().get(0).isCompleted());
+
+        CRMManager replayed = lazyManager();
+        assertEquals(before + 1, replayed.findCustomerById(customer.getId()).getCommunications().size());
+        assertTrue(replayed.findCustomerById(other.getId()).getTasks().get(0).isCompleted());
+        assertEquals(lazy.getCompletedTasks(), replayed.getCompletedTasks());
+
+        lazy.saveToFile();
+        CRMManager reloaded = lazyManager();
+        Customer loaded = reloaded.findCustomerById(customer.getId());
+        assertEquals(customer.toFileString(), loaded.toFileString());
+        assertEquals(lazy.getTotalTasks(), reloaded.getTotalTasks());
+        assertEquals(lazy.getCompletedTasks(), reloaded.getCompletedTasks());
+        // Histories read after a save come from the new file at the new offsets
+        for (Customer c : lazy.getAllCustomers()) {
+            assertEquals(c.toFileString(), reloaded.findCustomerById(c.getId()).toFileString());
+        }
+
+        // The save unpinned the changed histories, so they can be paged out again
+        for (Customer c : lazy.getAllCustomers()) {
+            if (c != customer && c != other) {
+                c.getCommunications();
+            }
+        }
+        assertFalse(customer.isHistoryLoaded());
+        assertFalse(other.isHistoryLoaded());
+        assertEquals(before + 1, customer.getCommunications().size());
+        assertTrue(lazy.findCustomerById(other.getId()).getTasks().get(0).isCompleted());
+    }
+
+    @Test
+    @DisplayName("A save should copy unchanged histories without paging them in")
+    void testSaveCopiesStoredHistories() throws Exception {
+        generate();
+        CRMManager eager = new CRMManager(dataFile(), CRMManager.PersistenceMode.JOURNAL);
+        CRMManager lazy = lazyManager();
+        LazyHistoryStore store = (LazyHistoryStore) lazy.getStore();
+        // Two small histories, so neither pushes the other out of the cache
+        List<Customer> small = new ArrayList<>();
+        for (Customer customer : eager.getAllCustomers()) {
+            if (small.size() < 2 && customer.getCommunications().size() + customer.getTasks().size() <= 10) {
+                small.add(lazy.findCustomerById(customer.getId()));
+            }
+        }
+        Customer hot = small.get(0);
+        Customer changed = small.get(1);
+        hot.getCommunications();
+        changed.setName("Renamed Customer");
+        lazy.addCommunicationToCustomer(changed.getId(),
+                new Communication(changed.getId(), CommunicationType.EMAIL, "Saved with the copy", ""));
+
+        long resident = store.residentRecords();
+        lazy.saveToFile();
+        assertEquals(resident, store.residentRecords());
+        assertTrue(hot.isHistoryLoaded());
+        for (Customer customer : lazy.getAllCustomers()) {
+            if (customer != hot && customer != changed) {
+                assertFalse(customer.isHistoryLoaded());
+            }
+        }
+
+        CRMManager reloaded = lazyManager();
+        for (Customer customer : eager.getAllCustomers()) {
+            Customer saved = reloaded.findCustomerById(customer.getId());
+            if (customer.getId() == changed.getId()) {
+                assertEquals("Renamed Customer", saved.getName());
+                assertEquals(customer.getCommunications().size() + 1, saved.getCommunications().size());
+            } else {
+                assertEquals(customer.toFileString(), saved.toFileString());
+            }
+        }
+        // A second save copies from the file the first one wrote
+        lazy.saveToFile();
+        assertEquals(changed.toFileString(), lazyManager().findCustomerById(changed.getId()).toFileString());
+    }
+
+    @Test
+    @DisplayName("The scan should read task status and priority the way a full load does")
+    void testScanParsesLikeFullLoad() throws Exception {
+        Files.write(tempDir.resolve("customers.txt"), List.of(
+                "CUSTOMER|1|Ada Lovelace|ada@example.com|555-0100|",
+                "TASK|1|1|Call back|2024-03-01 09:00:00|HIGH|TRUE",
+                "TASK|2|1|Send quote|2024-03-02 09:00:00|LOW|True",
+                "TASK|3|1|Follow up|2024-03-03 09:00:00|HIGH|false"));
+        CRMManager eager = new CRMManager(dataFile(), CRMManager.PersistenceMode.JOURNAL);
+        CRMManager lazy = lazyManager();
+
+        assertEquals(2, eager.getCompletedTasks());
+        assertEquals(eager.getCompletedTasks(), lazy.getCompletedTasks());
+        assertEquals(1, lazy.countTasks(TaskPriority.HIGH, true));
+        assertEquals(1, lazy.countTasks(TaskPriority.HIGH, false));
+        assertEquals(1, lazy.countTasks(TaskPriority.LOW, true));
+        assertFalse(lazy.findCustomerById(1).isHistoryLoaded());
+    }
+
+    @Test
+    @DisplayName("Timeline, tag search and due-date alerts should cover paged-out histories")
+    void testWholeHistoryFeaturesCoverPagedHistories() throws Exception {
+        generate();
+        CRMManager eager = new CRMManager(dataFile(), CRMManager.PersistenceMode.JOURNAL);
+        CRMManager lazy = lazyManager();
+        LazyHistoryStore store = (LazyHistoryStore) lazy.getStore();
+
+        assertEquals(ids(eager.getLatestCommunications(50)), ids(lazy.getLatestCommunications(50)));
+        LocalDateTime from = eager.getLatestCommunications(200).get(199).getTimestamp();
+        LocalDateTime to = eager.getLatestCommunications(20).get(19).getTimestamp();
+        assertEquals(ids(eager.getCommunicationsBetween(from, to)), ids(lazy.getCommunicationsBetween(from, to)));
+
+        assertEquals(eager.getTopTags(5), lazy.getTopTags(5));
+        String tag = eager.getTopTags(1).keySet().iterator().next();
+        assertEquals(eager.getTagFrequency(tag), lazy.getTagFrequency(tag));
+        assertEquals(ids(eager.findCommunicationsByTags(List.of(tag), false)),
+                ids(lazy.findCommunicationsByTags(List.of(tag), false)));
+
+        TaskScheduler eagerTasks = eager.getTaskScheduler();
+        TaskScheduler lazyTasks = lazy.getTaskScheduler();
+        assertEquals(eagerTasks.openCount(), lazyTasks.openCount());
+        List<Task> due = lazyTasks.nextDue(5);
+        assertEquals(taskIds(eagerTasks.nextDue(5)), taskIds(due));
+        assertEquals(eagerTasks.nextDue(5).get(0).getDescription(), due.get(0).getDescription());
+
+        // Completing a paged-out task takes it off the schedule
+        assertTrue(lazy.completeTask(due.get(0).getId()));
+        assertEquals(eagerTasks.openCount() - 1, lazyTasks.openCount());
+
+        List<String> eagerAlerts = new ArrayList<>();
+        List<String> lazyAlerts = new ArrayList<>();
+        eager.completeTask(due.get(0).getId());
+        eager.addObserver(eagerAlerts::add);
+        lazy.addObserver(lazyAlerts::add);
+        LocalDateTime now = LocalDateTime.of(2025, 1, 1, 0, 0);
+        eagerTasks.check(now);
+        lazyTasks.check(now);
+        assertFalse(lazyAlerts.isEmpty());
+        assertEquals(eagerAlerts, lazyAlerts);
+
+        // Whatever these queries read in is still bounded by the cache
+        assertTrue(store.residentRecords() <= CACHE_RECORDS + 100);
+        lazy.generateOverallReport();
+        lazy.close();
+        eager.close();
+    }
+
+    private static List<Integer> ids(List<Communication> comms) {
+        List<Integer> ids = new ArrayList<>();
+        for (Communication comm : comms) {
+            ids.add(comm.getId());
+        }
+        return ids;
+    }
+
+    private static List<Integer> taskIds(List<Task> tasks) {
+        List<Integer> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+}
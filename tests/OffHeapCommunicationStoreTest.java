@@ -0,0 +1,120 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+class OffHeapCommunicationStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Flyweights should return the fields that were appended")
+    void testRoundTrip() {
+        OffHeapCommunicationStore store = new OffHeapCommunicationStore();
+        LocalDateTime time = LocalDateTime.of(2024, 5, 6, 7, 8, 9, 123_456_789);
+        Communication original = new Communication(42, 7, CommunicationType.MEETING,
+                "Caf\u00e9 visit \u2013 \u00f6zet", time, "vip, #urgent");
+        Communication stored = store.append(original);
+
+        assertEquals(42, stored.getId());
+        assertEquals(7, stored.getCustomerId());
+        assertEquals(CommunicationType.MEETING, stored.getType());
+        assertEquals(time, stored.getTimestamp());
+        assertEquals("Caf\u00e9 visit \u2013 \u00f6zet", stored.getDescription());
+        assertEquals("vip, #urgent", stored.getTags());
+        assertEquals(original.toFileString(), stored.toFileString());
+        assertEquals(original.toString(), stored.toString());
+
+        Communication empty = store.append(new Communication(43, 7, null, null, time, null));
+        assertNull(empty.getType());
+        assertNull(empty.getDescription());
+        assertNull(empty.getTags());
+    }
+
+    @Test
+    @DisplayName("A flyweight should stay the size its comment gives")
+    void testFlyweightSize() {
+        Communication stored = new OffHeapCommunicationStore().append(
+                new Communication(1, 1, CommunicationType.EMAIL, "Hello", LocalDateTime.now(), ""));
+        assertEquals(48, shallowSize(stored.getClass()));
+    }
+
+    // Instance size with compressed references: a 12 byte header and the
+    // fields, rounded up to 8 bytes. Enough to catch a field being added.
+    private static int shallowSize(Class<?> type) {
+        int size = 12;
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                Class<?> t = field.getType();
+                if (t == long.class || t == double.class) {
+                    size += 8;
+                } else if (t == byte.class || t == boolean.class) {
+                    size += 1;
+                } else if (t == short.class || t == char.class) {
+                    size += 2;
+                } else {
+                    size += 4;
+                }
+            }
+        }
+        return (size + 7) & ~7;
+    }
+
+    @Test
+    @DisplayName("Rows and strings should survive crossing block and chunk boundaries")
+    void testManyRows() {
+        OffHeapCommunicationStore store = new OffHeapCommunicationStore();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        String longText = "x".repeat(3 << 20);
+        Communication[] stored = new Communication[40_000];
+        for (int i = 0; i < stored.length; i++) {
+            String description = i == 20_000 ? longText : "Note " + i;
+            stored[i] = store.append(new Communication(i + 1, i % 100, CommunicationType.EMAIL, description,
+                    start.plusMinutes(i), "tag" + (i % 7)));
+        }
+        assertEquals(40_000, store.size());
+        for (int i = 0; i < stored.length; i += 997) {
+            assertEquals(i + 1, stored[i].getId());
+            assertEquals(start.plusMinutes(i), stored[i].getTimestamp());
+            assertEquals("Note " + i, stored[i].getDescription());
+            assertEquals("tag" + (i % 7), stored[i].getTags());
+        }
+        assertEquals(longText, stored[20_000].getDescription());
+        assertEquals("Note 20001", stored[20_001].getDescription());
+        assertTrue(store.offHeapBytes() > longText.length());
+    }
+
+    @Test
+    @DisplayName("A manager with off-heap history should index, save and reload normally")
+    void testManagerWithOffHeapHistory() {
+        String dataFile = tempDir.resolve("customers.txt").toString();
+        CRMManager crm = new CRMManager(dataFile, CRMManager.PersistenceMode.SNAPSHOT,
+                CRMManager.StorageFormat.TEXT, true);
+        Customer customer = new Customer("John Doe", "john@example.com", "123", "");
+        crm.addCustomer(customer);
+        Communication comm = new Communication(customer.getId(), CommunicationType.PHONE, "Intro call", "sales");
+        crm.addCommunicationToCustomer(customer.getId(), comm);
+
+        Communication stored = crm.findCommunicationById(comm.getId());
+        assertNotSame(comm, stored);
+        assertEquals(comm.toFileString(), stored.toFileString());
+        assertEquals(1, crm.getOffHeapHistory().size());
+        assertEquals(1, crm.findCommunicationsByTags(List.of("sales"), true).size());
+        assertEquals(1, crm.getCommunicationsOn(LocalDate.now()).size());
+
+        CRMManager reloaded = new CRMManager(dataFile, CRMManager.PersistenceMode.SNAPSHOT,
+                CRMManager.StorageFormat.TEXT, true);
+        assertEquals(1, reloaded.getOffHeapHistory().size());
+        assertEquals(customer.toFileString(), reloaded.findCustomerById(customer.getId()).toFileString());
+    }
+}
@@ -0,0 +1,99 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+class ShardedSnapshotStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String dataFile() {
+        return tempDir.resolve("customers.txt").toString();
+    }
+
+    private CRMManager shardedManager(CRMManager.PersistenceMode mode) {
+        return new CRMManager(dataFile(), mode, CRMManager.StorageFormat.SHARDED);
+    }
+
+    private void generate() throws Exception {
+        new DatasetGenerator(300, 6, 3, 1.0, 7).write(new File(dataFile()));
+    }
+
+    @Test
+    @DisplayName("Shards should load back to the same customers and id counters")
+    void testRoundTrip() throws Exception {
+        generate();
+        CRMManager text = new CRMManager(dataFile(), CRMManager.PersistenceMode.SNAPSHOT);
+        CRMManager converted = shardedManager(CRMManager.PersistenceMode.SNAPSHOT);
+        converted.saveToFile();
+        ShardedSnapshotStore store = (ShardedSnapshotStore) converted.getStore();
+        for (int shard = 0; shard < store.getShardCount(); shard++) {
+            assertTrue(store.shardFile(shard).exists());
+        }
+
+        CRMManager sharded = shardedManager(CRMManager.PersistenceMode.SNAPSHOT);
+        List<Customer> expected = text.getAllCustomers();
+        List<Customer> actual = sharded.getAllCustomers();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toFileString(), actual.get(i).toFileString());
+        }
+        assertEquals(text.getTotalCommunications(), sharded.getTotalCommunications());
+        assertEquals(text.getCompletedTasks(), sharded.getCompletedTasks());
+
+        int highest = expected.get(expected.size() - 1).getId();
+        Customer added = new Customer("New Customer", "new@example.com", "555", "");
+        assertEquals(highest + 1, added.getId());
+    }
+
+    @Test
+    @DisplayName("A save should only rewrite the shards whose customers changed")
+    void testRewritesDirtyShardsOnly() throws Exception {
+        generate();
+        CRMManager crm = shardedManager(CRMManager.PersistenceMode.JOURNAL);
+        crm.saveToFile();
+        ShardedSnapshotStore store = (ShardedSnapshotStore) crm.getStore();
+        for (int shard = 0; shard < store.getShardCount(); shard++) {
+            assertTrue(store.shardFile(shard).setLastModified(0));
+        }
+
+        Customer customer = crm.getAllCustomers().get(10);
+        crm.addCommunicationToCustomer(customer.getId(),
+                new Communication(customer.getId(), CommunicationType.EMAIL, "Only this shard", ""));
+        crm.saveToFile();
+        int changed = store.shardOf(customer.getId());
+        for (int shard = 0; shard < store.getShardCount(); shard++) {
+            assertEquals(shard == changed, store.shardFile(shard).lastModified() != 0, "shard " + shard);
+        }
+        crm.close();
+
+        CRMManager reloaded = shardedManager(CRMManager.PersistenceMode.JOURNAL);
+        assertEquals("Only this shard",
+                reloaded.findCustomerById(customer.getId()).getLatestCommunications(1).get(0).getDescription());
+    }
+
+    @Test
+    @DisplayName("Changes replayed from the journal should be written by the next save")
+    void testJournalReplayMarksShards() throws Exception {
+        generate();
+        CRMManager crm = shardedManager(CRMManager.PersistenceMode.JOURNAL);
+        crm.saveToFile();
+        Customer customer = crm.getAllCustomers().get(3);
+        crm.addCommunicationToCustomer(customer.getId(),
+                new Communication(customer.getId(), CommunicationType.PHONE, "From the journal", ""));
+        crm.close();
+
+        CRMManager replayed = shardedManager(CRMManager.PersistenceMode.JOURNAL);
+        replayed.saveToFile();
+        replayed.close();
+        assertFalse(new File(dataFile() + ".journal").exists() && new File(dataFile() + ".journal").length() > 0);
+
+        CRMManager reloaded = shardedManager(CRMManager.PersistenceMode.JOURNAL);
+        assertEquals("From the journal",
+                reloaded.findCustomerById(customer.getId()).getLatestCommunications(1).get(0).getDescription());
+    }
+}
@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class TagIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Communication tagged(int id, String tags) {
+        return new Communication(id, 1, CommunicationType.EMAIL, "Message " + id, LocalDateTime.of(2024, 1, 1, 12, 0), tags);
+    }
+
+    @Test
+    @DisplayName("Tags should be split, lowercased and stripped of '#'")
+    void testParse() {
+        assertEquals(Set.of("urgent", "vip", "follow-up"), TagIndex.parse(" Urgent, #VIP;follow-up  urgent"));
+        assertTrue(TagIndex.parse("").isEmpty());
+        assertTrue(TagIndex.parse(null).isEmpty());
+    }
+
+    @Test
+    @DisplayName("AND and OR queries and frequencies should reflect the indexed tags")
+    void testQueries() {
+        TagIndex index = new TagIndex();
+        index.add(tagged(3, "urgent,vip"));
+        index.add(tagged(1, "urgent"));
+        index.add(tagged(2, "vip, billing"));
+        index.addAll(List.of(tagged(4, "urgent vip billing"), tagged(5, "")));
+
+        assertArrayEquals(new int[] {3, 4}, index.all(List.of("urgent", "VIP")).toArray());
+        assertArrayEquals(new int[] {1, 2, 3, 4}, index.any(List.of("urgent", "billing")).toArray());
+        assertTrue(index.all(List.of("urgent", "missing")).isEmpty());
+        assertEquals(3, index.frequency("#urgent"));
+        assertEquals(0, index.frequency("missing"));
+
+        Map<String, Integer> top = index.topTags(2);
+        assertEquals(Arrays.asList("urgent", "vip"), List.copyOf(top.keySet()));
+        assertEquals(3, top.get("vip"));
+    }
+
+    @Test
+    @DisplayName("The manager should keep the tag index current and rebuild it on load")
+    void testManagerIndexesAndReloads() {
+        String dataFile = tempDir.resolve("customers.txt").toString();
+        CRMManager crm = new CRMManager(dataFile, CRMManager.PersistenceMode.JOURNAL);
+        Customer first = new Customer("John Doe", "john@example.com", "123", "");
+        Customer second = new Customer("Jane Smith", "jane@example.com", "456", "");
+        crm.addCustomer(first);
+        crm.addCustomer(second);
+        crm.addCommunicationToCustomer(first.getId(), new Communication(first.getId(), CommunicationType.EMAIL, "A", "urgent"));
+        crm.addCommunicationToCustomer(second.getId(), new Communication(second.getId(), CommunicationType.PHONE, "B", "urgent, vip"));
+        crm.addCommunicationToCustomer(first.getId(), new Communication(first.getId(), CommunicationType.MEETING, "C", "vip"));
+
+        assertEquals(1, crm.findCommunicationsByTags(List.of("urgent", "vip"), true).size());
+        assertEquals(3, crm.findCommunicationsByTags(List.of("urgent", "vip"), false).size());
+        assertEquals(2, crm.getTagFrequency("vip"));
+
+        crm.saveToFile();
+        CRMManager reloaded = new CRMManager(dataFile, CRMManager.PersistenceMode.JOURNAL);
+        List<Communication> urgent = reloaded.findCommunicationsByTags(List.of("urgent"), true);
+        assertEquals(2, urgent.size());
+        assertEquals("A", urgent.get(0).getDescription());
+        assertEquals(2, reloaded.getTagFrequency("vip"));
+    }
+}
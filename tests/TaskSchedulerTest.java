@@ -0,0 +1,58 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+class TaskSchedulerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Scheduler should order open tasks and alert once per task")
+    void testDueAlerts() {
+        CRMManager crm = new CRMManager(tempDir.resolve("customers.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+        List<String> messages = new ArrayList<>();
+        Customer customer = new Customer("John Doe", "john@example.com", "123", "");
+        crm.addCustomer(customer);
+        crm.addObserver(messages::add);
+
+        LocalDateTime now = LocalDateTime.of(2025, 6, 1, 12, 0);
+        Task overdue = new Task(customer.getId(), "Overdue", now.minusDays(2), TaskPriority.HIGH);
+        Task soon = new Task(customer.getId(), "Soon", now.plusHours(3), TaskPriority.MEDIUM);
+        Task later = new Task(customer.getId(), "Later", now.plusDays(10), TaskPriority.LOW);
+        Task done = new Task(customer.getId(), "Done", now.minusDays(5), TaskPriority.LOW);
+        crm.addTaskToCustomer(customer.getId(), later);
+        crm.addTaskToCustomer(customer.getId(), soon);
+        crm.addTaskToCustomer(customer.getId(), overdue);
+        crm.addTaskToCustomer(customer.getId(), done);
+        crm.completeTask(customer.getId(), done.getId());
+
+        TaskScheduler scheduler = crm.getTaskScheduler();
+        assertEquals(List.of(overdue, soon, later), scheduler.nextDue(10));
+        assertEquals(List.of(overdue), scheduler.overdue(now, 10));
+        assertEquals(List.of(soon), scheduler.nextDueAfter(now, 1));
+
+        messages.clear();
+        scheduler.check(now);
+        assertEquals(2, messages.size());
+        assertTrue(messages.contains("Task overdue for John Doe: Overdue"));
+        assertTrue(messages.stream().anyMatch(m -> m.startsWith("Task due soon for John Doe: Soon")));
+
+        // Alerts are not repeated
+        messages.clear();
+        scheduler.check(now);
+        assertTrue(messages.isEmpty());
+
+        // Completing a task removes it before its overdue alert
+        crm.completeTask(customer.getId(), soon.getId());
+        messages.clear();
+        scheduler.check(now.plusDays(1));
+        assertTrue(messages.isEmpty());
+        assertEquals(List.of(overdue, later), scheduler.nextDue(10));
+    }
+}
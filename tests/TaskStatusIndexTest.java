@@ -0,0 +1,155 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class TaskStatusIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private CRMManager newManager() {
+        return new CRMManager(tempDir.resolve("customers.txt").toString(), CRMManager.PersistenceMode.JOURNAL);
+    }
+
+    private static List<Integer> ids(List<Task> tasks) {
+        List<Integer> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    @DisplayName("Tasks should be found by status and priority and move when completed")
+    void testFindByStatusAndPriority() {
+        CRMManager crm = newManager();
+        Customer first = new Customer("John Doe", "john@example.com", "555-1", "");
+        Customer second = new Customer("Jane Smith", "jane@example.com", "555-2", "");
+        crm.addCustomer(first);
+        crm.addCustomer(second);
+        Task low = new Task(first.getId(), "Send brochure", LocalDateTime.now(), TaskPriority.LOW);
+        Task high = new Task(second.getId(), "Call back", LocalDateTime.now(), TaskPriority.HIGH);
+        Task urgent = new Task(first.getId(), "Fix invoice", LocalDateTime.now(), TaskPriority.HIGH);
+        crm.addTaskToCustomer(first.getId(), low);
+        crm.addTaskToCustomer(second.getId(), high);
+        crm.addTaskToCustomer(first.getId(), urgent);
+
+        assertEquals(List.of(high.getId(), urgent.getId()), ids(crm.findTasks(TaskPriority.HIGH, false)));
+        assertEquals(List.of(high.getId(), urgent.getId(), low.getId()), ids(crm.findTasks(false)));
+        assertTrue(crm.findTasks(true).isEmpty());
+
+        assertTrue(crm.completeTask(high.getId()));
+        assertFalse(crm.completeTask(9999));
+        assertEquals(List.of(urgent.getId()), ids(crm.findTasks(TaskPriority.HIGH, false)));
+        assertEquals(List.of(high.getId()), ids(crm.findTasks(TaskPriority.HIGH, true)));
+
+        // Changing the flag on the task itself keeps the index in step too
+        high.setCompleted(false);
+        assertEquals(2, crm.countTasks(TaskPriority.HIGH, false));
+        assertEquals(0, crm.countTasks(TaskPriority.HIGH, true));
+        crm.completeTask(low.getId());
+        crm.saveToFile();
+        crm.close();
+
+        CRMManager reloaded = newManager();
+        assertEquals(List.of(high.getId(), urgent.getId()), ids(reloaded.findTasks(false)));
+        assertEquals(List.of(low.getId()), ids(reloaded.findTasks(TaskPriority.LOW, true)));
+        reloaded.close();
+    }
+
+    @Test
+    @DisplayName("A moving task should keep its customer and never be listed twice")
+    void testMovesAreAtomic() throws Exception {
+        Task task = new Task(1, "Flip", LocalDateTime.now(), TaskPriority.MEDIUM);
+        TaskStatusIndex index = new TaskStatusIndex();
+        index.add(task);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) {
+                index.statusChanged(task, i % 2 == 0);
+            }
+            done.set(true);
+        });
+        writer.start();
+        while (!done.get()) {
+            assertEquals(1, index.customerOf(task.getId()));
+            assertTrue(index.find(false, 0, 10).size() <= 1);
+            assertTrue(index.find(TaskPriority.MEDIUM, true, 0, 10).size() <= 1);
+        }
+        writer.join();
+        assertEquals(1, index.count(TaskPriority.MEDIUM, false));
+        assertEquals(0, index.count(true));
+        assertEquals(List.of(task.getId()), List.copyOf(index.find(false, 0, 10).keySet()));
+    }
+
+    @Test
+    @DisplayName("Pages should follow priority then id and carry on after the cursor task")
+    void testPages() {
+        TaskStatusIndex index = new TaskStatusIndex();
+        index.add(5, 1, TaskPriority.LOW, false);
+        index.add(2, 1, TaskPriority.HIGH, false);
+        index.add(9, 2, TaskPriority.HIGH, false);
+        index.add(3, 2, TaskPriority.MEDIUM, false);
+        index.add(4, 2, TaskPriority.MEDIUM, true);
+        index.add(1, 3, null, false);
+
+        assertEquals(List.of(2, 9), List.copyOf(index.find(false, 0, 2).keySet()));
+        assertEquals(List.of(3, 5), List.copyOf(index.find(false, 9, 2).keySet()));
+        assertEquals(List.of(1), List.copyOf(index.find(false, 5, 2).keySet()));
+        assertTrue(index.find(false, 1, 2).isEmpty());
+        assertEquals(List.of(9), List.copyOf(index.find(TaskPriority.HIGH, false, 2, 5).keySet()));
+        assertEquals(Integer.valueOf(2), index.find(TaskPriority.HIGH, false, 2, 5).get(9));
+        assertThrows(IllegalArgumentException.class, () -> index.find(false, 42, 2));
+        assertEquals(5, index.count(false));
+        assertEquals(1, index.count(true));
+    }
+
+    @Test
+    @DisplayName("Tasks in paged-out histories should be found and completed by id")
+    void testLazyHistory() throws Exception {
+        String dataFile = tempDir.resolve("customers.txt").toString();
+        new DatasetGenerator(300, 8, 3, 1.0, 42).write(new File(dataFile));
+        CRMManager eager = new CRMManager(dataFile, CRMManager.PersistenceMode.JOURNAL);
+        CRMManager lazy = new CRMManager(dataFile, CRMManager.PersistenceMode.JOURNAL, CRMManager.StorageFormat.TEXT,
+                false, 200);
+
+        for (TaskPriority priority : TaskPriority.values()) {
+            assertEquals(eager.countTasks(priority, false), lazy.countTasks(priority, false));
+            assertEquals(ids(eager.findTasks(priority, true)), ids(lazy.findTasks(priority, true)));
+        }
+        assertEquals(ids(eager.findTasks(false)), ids(lazy.findTasks(false)));
+
+        // Paging through every customer leaves the first ones' histories in the file
+        for (Customer customer : lazy.getAllCustomers()) {
+            customer.getTasks();
+        }
+        Task open = null;
+        for (Task task : eager.findTasks(TaskPriority.HIGH, false)) {
+            if (!lazy.findCustomerById(task.getCustomerId()).isHistoryLoaded()) {
+                open = task;
+                break;
+            }
+        }
+        assertNotNull(open);
+        assertEquals(open.toFileString(), lazy.findTaskById(open.getId()).toFileString());
+        assertTrue(lazy.completeTask(open.getId()));
+        assertFalse(ids(lazy.findTasks(TaskPriority.HIGH, false)).contains(open.getId()));
+        assertTrue(ids(lazy.findTasks(TaskPriority.HIGH, true)).contains(open.getId()));
+        assertTrue(lazy.findTaskById(open.getId()).isCompleted());
+        lazy.close();
+
+        CRMManager reloaded = new CRMManager(dataFile, CRMManager.PersistenceMode.JOURNAL,
+                CRMManager.StorageFormat.TEXT, false, 200);
+        assertTrue(ids(reloaded.findTasks(TaskPriority.HIGH, true)).contains(open.getId()));
+        assertTrue(reloaded.findTaskById(open.getId()).isCompleted());
+        reloaded.close();
+        eager.close();
+    }
+}